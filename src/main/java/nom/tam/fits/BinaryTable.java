@@ -208,8 +208,6 @@ public class BinaryTable extends AbstractTableData {
      */
     private boolean heapReadFromStream = true;
 
-    private boolean warnedOnVariableConversion = false;
-
     /**
      * A list describing each of the columns in the table
      */
@@ -257,6 +255,9 @@ public class BinaryTable extends AbstractTableData {
      *
      * @param tabIn
      *            the column table to create the binary table from
+     * @throws IllegalStateException
+     *             if the heap of the table could not be copied, e.g. because
+     *             it is read on demand and reading it failed.
      */
     public BinaryTable(ColumnTable<?> tabIn) {
         @SuppressWarnings("unchecked")
@@ -271,10 +272,10 @@ public class BinaryTable extends AbstractTableData {
         }
         try {
             this.table = tab.copy();
+            this.heap = extra.heap.copy();
         } catch (Exception e) {
             throw new IllegalStateException("Unexpected Exception", e);
         }
-        this.heap = extra.heap.copy();
         this.nRow = tab.getNRows();
         saveExtraState();
     }
@@ -293,14 +294,10 @@ public class BinaryTable extends AbstractTableData {
         if (heapOffsetL > MAX_INTEGER_VALUE) {
             throw new FitsException("Heap Offset > 2GB");
         }
-        if (heapSizeL > MAX_INTEGER_VALUE) {
-            throw new FitsException("Heap size > 2 GB");
-        }
-        if (heapSizeL - heapOffsetL > MAX_INTEGER_VALUE) {
-            throw new FitsException("Unable to allocate heap > 2GB");
+        if (heapSizeL > FitsHeap.MAXIMUM_SIZE) {
+            throw new FitsException("Heap size > " + FitsHeap.MAXIMUM_SIZE);
         }
         this.heapOffset = (int) heapOffsetL;
-        int heapSize = (int) heapSizeL;
         int rwsz = myHeader.getIntValue(NAXIS1);
         this.nRow = myHeader.getIntValue(NAXIS2);
 
@@ -310,11 +307,11 @@ public class BinaryTable extends AbstractTableData {
             this.heapOffset -= this.nRow * rwsz;
         }
 
-        if (this.heapOffset < 0 || this.heapOffset > heapSize) {
+        if (this.heapOffset < 0 || this.heapOffset > heapSizeL) {
             throw new FitsException("Inconsistent THEAP and PCOUNT");
         }
 
-        this.heap = new FitsHeap(heapSize - this.heapOffset);
+        this.heap = new FitsHeap(heapSizeL - this.heapOffset);
         int nCol = myHeader.getIntValue(TFIELDS);
         this.rowLen = 0;
         for (int col = 0; col < nCol; col++) {
@@ -596,7 +593,7 @@ public class BinaryTable extends AbstractTableData {
             h.setNaxes(2);
             h.setNaxis(1, this.rowLen);
             h.setNaxis(2, this.nRow);
-            h.addValue(PCOUNT, this.heap.size());
+            h.addValue(PCOUNT, this.heap.getSize());
             h.addValue(GCOUNT, 1);
             Cursor<String, HeaderCard> iter = h.iterator();
             iter.setKey(GCOUNT.key());
@@ -700,11 +697,74 @@ public class BinaryTable extends AbstractTableData {
         return ele;
     }
 
+    /**
+     * Get one value of an element of a fixed size numeric column without
+     * creating any arrays, e.g. for scanning large tables. The values of
+     * complex columns are the real and imaginary parts, one after the other.
+     *
+     * @param row
+     *            The row of the element.
+     * @param col
+     *            The column of the element.
+     * @param idx
+     *            The index of the value within the (flattened) element.
+     * @return the value converted to a double
+     * @throws FitsException
+     *             if the column is not a fixed size numeric column or the
+     *             data could not be read.
+     */
+    public double getDouble(int row, int col, int idx) throws FitsException {
+        checkNumericElement(row, col);
+        return this.table.getDouble(row, col, idx);
+    }
+
+    /**
+     * Copy the values of an element of a fixed size numeric column into an
+     * array without creating any arrays, e.g. for scanning large tables.
+     *
+     * @param row
+     *            The row of the element.
+     * @param col
+     *            The column of the element.
+     * @param dst
+     *            The array to fill, at least as long as the (flattened)
+     *            element.
+     * @return the number of values copied
+     * @throws FitsException
+     *             if the column is not a fixed size numeric column or the
+     *             data could not be read.
+     */
+    public int getDoubles(int row, int col, double[] dst) throws FitsException {
+        checkNumericElement(row, col);
+        return this.table.getDoubles(row, col, dst);
+    }
+
     public Object[] getFlatColumns() {
         ensureDataSilent();
         return this.table.getColumns();
     }
 
+    /**
+     * Copy the values of an element of a fixed size numeric column into an
+     * array without creating any arrays, e.g. for scanning large tables.
+     *
+     * @param row
+     *            The row of the element.
+     * @param col
+     *            The column of the element.
+     * @param dst
+     *            The array to fill, at least as long as the (flattened)
+     *            element.
+     * @return the number of values copied
+     * @throws FitsException
+     *             if the column is not a fixed size numeric column or the
+     *             data could not be read.
+     */
+    public int getFloats(int row, int col, float[] dst) throws FitsException {
+        checkNumericElement(row, col);
+        return this.table.getFloats(row, col, dst);
+    }
+
     /**
      * @return column in flattened format. For large tables getting a column in
      *         standard format can be inefficient because a separate object is
@@ -734,10 +794,43 @@ public class BinaryTable extends AbstractTableData {
 
     /**
      * @return the size of the heap -- including the offset from the end of the
-     *         table data.
+     *         table data, see {@link #getHeapLSize()} for heaps larger than
+     *         2GB.
      */
     public int getHeapSize() {
-        return this.heapOffset + this.heap.size();
+        long size = getHeapLSize();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("FITS heap > 2 G, use getHeapLSize()");
+        }
+        return (int) size;
+    }
+
+    /**
+     * @return the size of the heap -- including the offset from the end of the
+     *         table data.
+     */
+    public long getHeapLSize() {
+        return this.heapOffset + this.heap.getSize();
+    }
+
+    /**
+     * Get one value of an element of a fixed size integer column without
+     * creating any arrays, e.g. for scanning large tables.
+     *
+     * @param row
+     *            The row of the element.
+     * @param col
+     *            The column of the element.
+     * @param idx
+     *            The index of the value within the (flattened) element.
+     * @return the value converted to a long
+     * @throws FitsException
+     *             if the column is not a fixed size numeric column or the
+     *             data could not be read.
+     */
+    public long getLong(int row, int col, int idx) throws FitsException {
+        checkNumericElement(row, col);
+        return this.table.getLong(row, col, idx);
     }
 
     /**
@@ -820,8 +913,8 @@ public class BinaryTable extends AbstractTableData {
     @Override
     public long getTrueSize() {
         long len = (long) this.nRow * this.rowLen;
-        if (this.heap.size() > 0) {
-            len += this.heap.size() + this.heapOffset;
+        if (this.heap.getSize() > 0) {
+            len += this.heap.getSize() + this.heapOffset;
         }
         return len;
     }
@@ -874,6 +967,113 @@ public class BinaryTable extends AbstractTableData {
         }
     }
 
+    /**
+     * Read only some columns of the table. If the data of a table in a random
+     * access file was not read yet, only the bytes of the selected columns are
+     * read from each row and the other columns are never decoded, so the time
+     * and memory needed depend on the selected columns and not on the width of
+     * the table. The table itself stays unread. Otherwise the columns are
+     * taken from the table in memory, reading it if needed.
+     *
+     * @param cols
+     *            the indexes of the columns to read
+     * @return the columns in the same form as {@link #getColumn(int)} returns
+     *         them, in the order of the indexes.
+     * @throws FitsException
+     *             if a column does not exist or the data could not be read.
+     */
+    public Object[] readColumns(int... cols) throws FitsException {
+        for (int col : cols) {
+            if (!validColumn(col)) {
+                throw new FitsException("Invalid column " + col);
+            }
+        }
+        Object[] columns = new Object[cols.length];
+        if (this.table == null && this.currInput instanceof RandomAccess) {
+            readFileColumns(cols, columns);
+        } else {
+            for (int index = 0; index < cols.length; index++) {
+                columns[index] = getColumn(cols[index]);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Get the descriptors of a variable length column, i.e. the number of
+     * elements and the offset in the heap of the array of each row, without
+     * the arrays themselves. If the data of a table in a random access file
+     * was not read yet, only the descriptors are read from the rows and the
+     * table stays unread.
+     *
+     * @param col
+     *            the index of the variable length column
+     * @return the number of elements and the heap offset for each row, one
+     *         pair after the other.
+     * @throws FitsException
+     *             if the column is not a variable length column or the data
+     *             could not be read.
+     */
+    public long[] getDescriptors(int col) throws FitsException {
+        if (!validColumn(col) || !this.columnList.get(col).isVarying) {
+            throw new FitsException("Column " + col + " is not a variable length column");
+        }
+        Object descriptors;
+        if (this.table == null && this.currInput instanceof RandomAccess) {
+            Object[] columns = new Object[1];
+            readRawFileColumns(new int[]{
+                col
+            }, columns);
+            descriptors = columns[0];
+        } else {
+            ensureData();
+            descriptors = this.table.getColumn(col);
+        }
+        if (descriptors instanceof long[]) {
+            return ((long[]) descriptors).clone();
+        }
+        return (long[]) ArrayFuncs.convertArray(descriptors, long.class);
+    }
+
+    /**
+     * Read an array of a variable length column from the heap, using the
+     * length and heap offset from its descriptor, see
+     * {@link #getDescriptors(int)}. If the data of a table in a random access
+     * file was not read yet, only the bytes of the array are read from the heap
+     * in the file, independent of {@link FitsFactory#isDeferredHeapReads()},
+     * and the table stays unread.
+     *
+     * @param col
+     *            the index of the variable length column
+     * @param offset
+     *            the offset of the array in the heap
+     * @param length
+     *            the number of elements of the array
+     * @return the array with the elements of the type of the column.
+     * @throws FitsException
+     *             if the column is not a variable length column of numbers or
+     *             booleans or the data could not be read.
+     */
+    public Object readHeapArray(int col, long offset, int length) throws FitsException {
+        ColumnDesc colDesc = validColumn(col) ? this.columnList.get(col) : null;
+        if (colDesc == null || !colDesc.isVarying || colDesc.isComplex || colDesc.isString) {
+            throw new FitsException("Cannot read the arrays of column " + col + " from the heap");
+        }
+        Object array = ArrayFuncs.newInstance(colDesc.base, length);
+        if (length > 0) {
+            if (this.table == null && this.currInput instanceof RandomAccess) {
+                if (!this.heapReadFromStream) {
+                    this.heap.defer((RandomAccess) this.currInput, heapFileOffset());
+                    this.heapReadFromStream = true;
+                }
+            } else {
+                ensureData();
+            }
+            this.heap.getData(offset, array);
+        }
+        return array;
+    }
+
     /**
      * Replace a column in the table.
      *
@@ -914,8 +1114,7 @@ public class BinaryTable extends AbstractTableData {
             int size = Array.getLength(o);
             // The offset for the row is the offset to the heap plus the
             // offset within the heap.
-            int offset = (int) this.heap.getSize();
-            this.heap.putData(o);
+            long offset = this.heap.putData(o);
             if (colDesc.isLongVary) {
                 this.table.setElement(i, j, new long[]{
                     size,
@@ -924,7 +1123,7 @@ public class BinaryTable extends AbstractTableData {
             } else {
                 this.table.setElement(i, j, new int[]{
                     size,
-                    offset
+                    pointerOffset(offset)
                 });
             }
 
@@ -1020,7 +1219,7 @@ public class BinaryTable extends AbstractTableData {
             }
 
             // Now check if we need to write the heap
-            if (this.heap.size() > 0) {
+            if (this.heap.getSize() > 0) {
                 this.heap.write(os);
             }
 
@@ -1078,9 +1277,6 @@ public class BinaryTable extends AbstractTableData {
                 }
                 o = xo;
             }
-            // Write all rows of data onto the heap.
-            int offset = this.heap.putData(o);
-            int blen = ArrayFuncs.getBaseLength(o);
             // Handle an addRow of a variable length element.
             // In this case we only get a one-d array, but we just
             // make is 1 x n to get the second dimension.
@@ -1089,34 +1285,26 @@ public class BinaryTable extends AbstractTableData {
                     o
                 };
             }
+            Object[] x = (Object[]) o;
+            int nrow = x.length;
+            // Write all rows of data onto the heap.
+            long[] offsets = new long[nrow];
+            this.heap.putData(x, offsets);
             // Create the array descriptors
-            int nrow = Array.getLength(o);
-            int factor = 1;
-            if (added.isComplex) {
-                factor = 2;
-            }
             if (added.isLongVary) {
                 long[] descrip = new long[2 * nrow];
-                Object[] x = (Object[]) o;
                 // Fill the descriptor for each row.
                 for (int i = 0; i < nrow; i++) {
-                    int len = Array.getLength(x[i]);
-                    descrip[2 * i] = len;
-                    descrip[2 * i + 1] = offset;
-                    offset += len * blen * factor;
+                    descrip[2 * i] = Array.getLength(x[i]);
+                    descrip[2 * i + 1] = offsets[i];
                 }
                 o = descrip;
             } else {
                 int[] descrip = new int[2 * nrow];
-
-                Object[] x = (Object[]) o;
-
                 // Fill the descriptor for each row.
                 for (int i = 0; i < nrow; i++) {
-                    int len = Array.getLength(x[i]);
-                    descrip[2 * i] = len;
-                    descrip[2 * i + 1] = offset;
-                    offset += len * blen * factor;
+                    descrip[2 * i] = Array.getLength(x[i]);
+                    descrip[2 * i + 1] = pointerOffset(offsets[i]);
                 }
                 o = descrip;
             }
@@ -1124,6 +1312,19 @@ public class BinaryTable extends AbstractTableData {
         return o;
     }
 
+    /**
+     * @return the heap offset for a 32 bit (P) array descriptor.
+     * @throws FitsException
+     *             if the offset does not fit, the column needs 64 bit (Q)
+     *             descriptors.
+     */
+    private static int pointerOffset(long offset) throws FitsException {
+        if (offset > Integer.MAX_VALUE) {
+            throw new FitsException("Heap offset " + offset + " > 2GB, use a column with 64 bit (Q) descriptors");
+        }
+        return (int) offset;
+    }
+
     // Check if this is consistent with a varying
     // complex row. That requires
     // The second index varies.
@@ -1167,6 +1368,20 @@ public class BinaryTable extends AbstractTableData {
         return varying;
     }
 
+    /**
+     * Check that the element exists and is in a fixed size numeric column.
+     */
+    private void checkNumericElement(int row, int col) throws FitsException {
+        if (!validRow(row) || !validColumn(col)) {
+            throw new FitsException("No such element (" + row + "," + col + ")");
+        }
+        ColumnDesc colDesc = this.columnList.get(col);
+        if (colDesc.isVarying || colDesc.isString || colDesc.isBoolean) {
+            throw new FitsException("Column " + col + " is not a fixed size numeric column");
+        }
+        ensureData();
+    }
+
     /**
      * Convert data from binary table representation to external Java
      * representation. * @throws FitsException if the operation failed
@@ -1184,17 +1399,11 @@ public class BinaryTable extends AbstractTableData {
             if (!this.heapReadFromStream) {
                 readHeap(this.currInput);
             }
-            int[] descrip;
+            long[] descrip;
             if (colDesc.isLongVary) {
-                // Convert longs to int's. This is dangerous.
-                if (!this.warnedOnVariableConversion) {
-                    LOG.log(Level.WARNING, "Warning: converting long variable array pointers to int's");
-                    this.warnedOnVariableConversion = true;
-
-                }
-                descrip = (int[]) ArrayFuncs.convertArray(o, int.class);
+                descrip = (long[]) o;
             } else {
-                descrip = (int[]) o;
+                descrip = (long[]) ArrayFuncs.convertArray(o, long.class);
             }
             int nrow = descrip.length / 2;
             Object[] res; // Res will be the result of extracting from the heap.
@@ -1230,8 +1439,8 @@ public class BinaryTable extends AbstractTableData {
             // Now read in each requested row.
             for (int i = 0; i < nrow; i++) {
                 Object row;
-                int offset = descrip[2 * i + 1];
-                int dim = descrip[2 * i];
+                long offset = descrip[2 * i + 1];
+                int dim = (int) descrip[2 * i];
                 if (colDesc.isComplex) {
                     dims[0] = dim;
                     row = ArrayFuncs.newInstance(colDesc.base, dims);
@@ -1402,6 +1611,85 @@ public class BinaryTable extends AbstractTableData {
         return data;
     }
 
+    /**
+     * read the selected columns from the file, row by row only the bytes of
+     * the columns are read. Reading the parts of the rows that are in the
+     * buffer of the input only moves the position in the buffer.
+     */
+    private void readFileColumns(int[] cols, Object[] columns) throws FitsException {
+        readRawFileColumns(cols, columns);
+        for (int index = 0; index < cols.length; index++) {
+            ColumnDesc colDesc = this.columnList.get(cols[index]);
+            columns[index] = encurl(columnToArray(colDesc, columns[index], this.nRow), cols[index], this.nRow);
+        }
+    }
+
+    /**
+     * read the selected columns from the file as they are stored in the rows,
+     * e.g. the descriptors of variable length columns instead of their arrays.
+     */
+    private void readRawFileColumns(int[] cols, Object[] columns) throws FitsException {
+        RandomAccess input = (RandomAccess) this.currInput;
+        long[] offsets = new long[cols.length];
+        int[] sizes = new int[cols.length];
+        for (int index = 0; index < cols.length; index++) {
+            for (int col = 0; col < cols[index]; col++) {
+                ColumnDesc colDesc = this.columnList.get(col);
+                offsets[index] += colDesc.size * ArrayFuncs.getBaseLength(colDesc.model);
+            }
+            sizes[index] = this.columnList.get(cols[index]).size;
+            columns[index] = this.columnList.get(cols[index]).newInstance(this.nRow);
+        }
+        long currentOffset = input.getFilePointer();
+        try {
+            for (int row = 0; row < this.nRow; row++) {
+                long rowOffset = this.fileOffset + (long) row * this.rowLen;
+                for (int index = 0; index < cols.length; index++) {
+                    input.seek(rowOffset + offsets[index]);
+                    readElement(input, columns[index], row * sizes[index], sizes[index]);
+                }
+            }
+            input.seek(currentOffset);
+        } catch (IOException e) {
+            throw new FitsException("Error in deferred column read", e);
+        }
+    }
+
+    /**
+     * read the values of one element of a column into its place in the
+     * flattened column.
+     */
+    private static void readElement(ArrayDataInput input, Object column, int start, int length) throws IOException {
+        int bytes;
+        int read;
+        if (column instanceof byte[]) {
+            input.readFully((byte[]) column, start, length);
+            bytes = length;
+            read = length;
+        } else if (column instanceof short[]) {
+            bytes = length * FitsIO.BYTES_IN_SHORT;
+            read = input.read((short[]) column, start, length);
+        } else if (column instanceof char[]) {
+            bytes = length * FitsIO.BYTES_IN_CHAR;
+            read = input.read((char[]) column, start, length);
+        } else if (column instanceof int[]) {
+            bytes = length * FitsIO.BYTES_IN_INTEGER;
+            read = input.read((int[]) column, start, length);
+        } else if (column instanceof long[]) {
+            bytes = length * FitsIO.BYTES_IN_LONG;
+            read = input.read((long[]) column, start, length);
+        } else if (column instanceof float[]) {
+            bytes = length * FitsIO.BYTES_IN_FLOAT;
+            read = input.read((float[]) column, start, length);
+        } else {
+            bytes = length * FitsIO.BYTES_IN_DOUBLE;
+            read = input.read((double[]) column, start, length);
+        }
+        if (read < bytes) {
+            throw new EOFException("Only " + read + " of " + bytes + " bytes of the column could be read");
+        }
+    }
+
     /**
      * Get a row from memory. * @throws FitsException if the operation failed
      */
@@ -1634,6 +1922,13 @@ public class BinaryTable extends AbstractTableData {
         return new ColumnTable<SaveState>(arrCol, sizes);
     }
 
+    /**
+     * @return the position of the heap in the file.
+     */
+    private long heapFileOffset() {
+        return this.fileOffset + (long) this.nRow * this.rowLen + this.heapOffset;
+    }
+
     /**
      * Read the heap which contains the data for variable length arrays. A.
      * Kovacs (4/1/08) Separated heap reading, s.t. the heap can be properly
@@ -1646,8 +1941,12 @@ public class BinaryTable extends AbstractTableData {
      *             if the heap could not be read from the stream
      */
     protected void readHeap(ArrayDataInput input) throws FitsException {
-        FitsUtil.reposition(input, this.fileOffset + this.nRow * this.rowLen + this.heapOffset);
-        this.heap.read(input);
+        if (input instanceof RandomAccess && FitsFactory.isDeferredHeapReads()) {
+            this.heap.defer((RandomAccess) input, heapFileOffset());
+        } else {
+            FitsUtil.reposition(input, heapFileOffset());
+            this.heap.read(input);
+        }
         this.heapReadFromStream = true;
     }
 
@@ -1663,7 +1962,12 @@ public class BinaryTable extends AbstractTableData {
         try {
             this.table.read(i);
             i.skipAllBytes(this.heapOffset);
-            this.heap.read(i);
+            if (i instanceof RandomAccess && FitsFactory.isDeferredHeapReads()) {
+                this.heap.defer((RandomAccess) i, ((RandomAccess) i).getFilePointer());
+                i.skipAllBytes(this.heap.getSize());
+            } else {
+                this.heap.read(i);
+            }
             this.heapReadFromStream = true;
 
         } catch (IOException e) {
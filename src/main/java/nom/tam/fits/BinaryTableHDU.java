@@ -191,15 +191,15 @@ public class BinaryTableHDU extends TableHDU<BinaryTable> {
         stream.println("      Data Information:");
         if (myData == null || this.myData.getNRows() == 0 || this.myData.getNCols() == 0) {
             stream.println("         No data present");
-            if (this.myData.getHeapSize() > 0) {
-                stream.println("         Heap size is: " + this.myData.getHeapSize() + " bytes");
+            if (this.myData.getHeapLSize() > 0) {
+                stream.println("         Heap size is: " + this.myData.getHeapLSize() + " bytes");
             }
         } else {
 
             stream.println("          Number of rows=" + this.myData.getNRows());
             stream.println("          Number of columns=" + this.myData.getNCols());
-            if (this.myData.getHeapSize() > 0) {
-                stream.println("          Heap size is: " + this.myData.getHeapSize() + " bytes");
+            if (this.myData.getHeapLSize() > 0) {
+                stream.println("          Heap size is: " + this.myData.getHeapLSize() + " bytes");
             }
             Object[] cols = this.myData.getFlatColumns();
             for (int i = 0; i < cols.length; i += 1) {
@@ -289,20 +289,35 @@ public class BinaryTableHDU extends TableHDU<BinaryTable> {
         return status;
     }
 
+    /**
+     * Read only some columns of the table, without reading the other columns
+     * if the table is in a random access file and was not read yet, see
+     * {@link BinaryTable#readColumns(int...)}.
+     *
+     * @param cols
+     *            the indexes of the columns to read
+     * @return the columns, in the order of the indexes.
+     * @throws FitsException
+     *             if a column does not exist or the data could not be read.
+     */
+    public Object[] readColumns(int... cols) throws FitsException {
+        return this.myData.readColumns(cols);
+    }
+
     // Need to tell header about the Heap before writing.
     @Override
     public void write(ArrayDataOutput ado) throws FitsException {
 
-        int oldSize = this.myHeader.getIntValue(PCOUNT);
-        if (oldSize != this.myData.getHeapSize()) {
-            this.myHeader.addValue(PCOUNT, this.myData.getHeapSize());
+        long oldSize = this.myHeader.getLongValue(PCOUNT);
+        if (oldSize != this.myData.getHeapLSize()) {
+            this.myHeader.addValue(PCOUNT, this.myData.getHeapLSize());
         }
 
-        if (this.myHeader.getIntValue(PCOUNT) == 0) {
+        if (this.myHeader.getLongValue(PCOUNT) == 0) {
             this.myHeader.deleteKey(THEAP);
         } else {
             this.myHeader.getIntValue(TFIELDS);
-            int offset = this.myHeader.getIntValue(NAXIS1) * this.myHeader.getIntValue(NAXIS2) + this.myData.getHeapOffset();
+            long offset = (long) this.myHeader.getIntValue(NAXIS1) * this.myHeader.getIntValue(NAXIS2) + this.myData.getHeapOffset();
             this.myHeader.addValue(THEAP, offset);
         }
 
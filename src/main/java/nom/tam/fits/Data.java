@@ -156,7 +156,7 @@ public abstract class Data implements FitsElement {
 
     @Override
     public boolean rewriteable() {
-        return this.input != null && this.fileOffset >= 0
+        return this.input instanceof ArrayDataOutput && this.fileOffset >= 0
                 && (getTrueSize() + FITS_BLOCK_SIZE_MINUS_ONE) / FitsFactory.FITS_BLOCK_SIZE == (this.dataSize + FITS_BLOCK_SIZE_MINUS_ONE) / FitsFactory.FITS_BLOCK_SIZE;
     }
 
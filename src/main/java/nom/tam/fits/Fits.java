@@ -31,6 +31,9 @@ package nom.tam.fits;
  * #L%
  */
 
+import static nom.tam.fits.header.Standard.EXTNAME;
+import static nom.tam.fits.header.Standard.EXTVER;
+
 import java.io.Closeable;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
@@ -41,9 +44,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -55,7 +65,9 @@ import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.BufferedDataInputStream;
 import nom.tam.util.BufferedDataOutputStream;
 import nom.tam.util.BufferedFile;
+import nom.tam.util.MappedFile;
 import nom.tam.util.RandomAccess;
+import nom.tam.util.ReadAheadInputStream;
 import nom.tam.util.SafeClose;
 
 /**
@@ -143,6 +155,13 @@ public class Fits implements Closeable {
      */
     private final List<BasicHDU<?>> hduList = new ArrayList<BasicHDU<?>>();
 
+    /**
+     * The number in the input of each HDU in {@link #hduList}, -1 for HDUs
+     * that were not read from the current input. The HDUs of the input that
+     * are not read yet follow the list in the order of the input.
+     */
+    private final List<Integer> hduNumbers = new ArrayList<Integer>();
+
     /**
      * Has the input stream reached the EOF?
      */
@@ -154,6 +173,45 @@ public class Fits implements Closeable {
      */
     private long lastFileOffset = -1;
 
+    /**
+     * The number of HDUs read (or skipped) from the input so far.
+     */
+    private int hdusRead;
+
+    /**
+     * The offset of the first HDU in the input.
+     */
+    private long firstHDUOffset;
+
+    /**
+     * The index of the HDUs in a random access input, built on first use.
+     */
+    private HduIndex hduIndex;
+
+    /**
+     * The index cache of the file, if enabled with
+     * {@link FitsFactory#setUseIndexCache(boolean)}.
+     */
+    private HduIndexCache indexCache;
+
+    /**
+     * HDUs read through the index ahead of the sequential reading, by their
+     * number in the input. They are moved to the HDU list once the sequential
+     * reading reaches them, see {@link #readIndexedHDUs()}.
+     */
+    private final Map<Integer, BasicHDU<?>> indexedHDUs = new HashMap<Integer, BasicHDU<?>>();
+
+    /**
+     * One more than the highest number of an HDU read through the index.
+     */
+    private int indexedLimit;
+
+    /**
+     * The file of a random access input, used to open independent handles for
+     * parallel reading.
+     */
+    private File randomAccessFile;
+
     /**
      * Create an empty Fits object which is not associated with an input stream.
      */
@@ -206,6 +264,32 @@ public class Fits implements Closeable {
         streamInit(str);
     }
 
+    /**
+     * Create a Fits object associated with the given data stream, which is
+     * read ahead in a background thread. This is useful for sequential scans
+     * of slow sources, as the I/O then overlaps with the parsing of headers
+     * and data. Compression is determined from the first few bytes of the
+     * stream. The Fits object must be closed with {@link #close()} when it is
+     * not read to the end, to stop the background thread and release the
+     * stream.
+     * 
+     * @param str
+     *            The data stream. The content of this stream will not be read
+     *            into the Fits object until the user makes some explicit
+     *            request.
+     * @param readAheadBlockSize
+     *            the size of the blocks read ahead.
+     * @param readAheadDepth
+     *            the number of blocks that may be read ahead of the one
+     *            currently consumed.
+     * @throws FitsException
+     *             if the operation failed
+     */
+    public Fits(InputStream str, int readAheadBlockSize, int readAheadDepth) throws FitsException {
+        InputStream decompressed = CompressionManager.decompress(str);
+        this.dataStr = new BufferedDataInputStream(new ReadAheadInputStream(decompressed, readAheadBlockSize, readAheadDepth), readAheadBlockSize);
+    }
+
     /**
      * Create a Fits object associated with a data stream.
      * 
@@ -434,11 +518,13 @@ public class Fits implements Closeable {
      *             if the HDU could not be deleted.
      */
     public void deleteHDU(int n) throws FitsException {
+        readIndexedHDUs();
         int size = getNumberOfHDUs();
         if (n < 0 || n >= size) {
             throw new FitsException("Attempt to delete non-existent HDU:" + n);
         }
         this.hduList.remove(n);
+        this.hduNumbers.remove(n);
         if (n == 0 && size > 1) {
             BasicHDU<?> newFirst = this.hduList.get(0);
             if (newFirst.canBePrimary()) {
@@ -475,7 +561,10 @@ public class Fits implements Closeable {
     /**
      * @return the n'th HDU. If the HDU is already read simply return a pointer
      *         to the cached data. Otherwise read the associated stream until
-     *         the n'th HDU is read.
+     *         the n'th HDU is read. On random access inputs the HDU is found
+     *         through the HDU index (see {@link #getHduIndex()}) and read
+     *         directly, the HDUs in between are only read when they are needed
+     *         (e.g. for writing or modifying the list of HDUs).
      * @param n
      *            The index of the HDU to be read. The primary HDU is index 0.
      * @return The n'th HDU or null if it could not be found.
@@ -485,7 +574,15 @@ public class Fits implements Closeable {
      *             if the underlying buffer threw an error
      */
     public BasicHDU<?> getHDU(int n) throws FitsException, IOException {
-        int size = getNumberOfHDUs();
+        int size = this.hduList.size();
+        if (n >= size) {
+            BasicHDU<?> hdu = readIndexedHDU(hduNumber(n));
+            if (hdu != null) {
+                return hdu;
+            }
+            readIndexedHDUs();
+            size = this.hduList.size();
+        }
         for (int i = size; i <= n; i += 1) {
             BasicHDU<?> hdu = readHDU();
             if (hdu == null) {
@@ -495,13 +592,75 @@ public class Fits implements Closeable {
         return this.hduList.get(n);
     }
 
+    /**
+     * Get an extension by name and version. HDUs already read are searched
+     * first, then the input is searched, through the HDU index on random
+     * access inputs and by reading further HDUs otherwise.
+     * 
+     * @param extname
+     *            the value of the EXTNAME keyword.
+     * @param extver
+     *            the value of the EXTVER keyword, an extension without EXTVER
+     *            has version 1.
+     * @return the first matching HDU or null if there is none.
+     * @throws FitsException
+     *             if the header could not be read
+     * @throws IOException
+     *             if the underlying buffer threw an error
+     */
+    public BasicHDU<?> getHDU(String extname, int extver) throws FitsException, IOException {
+        for (BasicHDU<?> hdu : this.hduList) {
+            if (isExtension(hdu, extname, extver)) {
+                return hdu;
+            }
+        }
+        HduIndex index = getHduIndex();
+        if (index != null) {
+            int found = index.find(extname, extver, this.hdusRead);
+            if (found < 0) {
+                return null;
+            }
+            return getHDU(hduPosition(found));
+        }
+        BasicHDU<?> hdu;
+        while ((hdu = readHDU()) != null) {
+            if (isExtension(hdu, extname, extver)) {
+                return hdu;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the index of the HDUs of the input. The index is built on the first
+     * call with a fast scan of the headers, which only looks at the keywords
+     * describing the size of the data.
+     * 
+     * @return the index of the HDUs or null if the input does not support
+     *         random access.
+     * @throws IOException
+     *             if the input could not be scanned
+     * @throws FitsException
+     *             if a header has an invalid NAXIS value
+     */
+    public HduIndex getHduIndex() throws IOException, FitsException {
+        if (this.hduIndex == null && this.dataStr instanceof RandomAccess) {
+            long start = this.firstHDUOffset;
+            if (this.hdusRead == 0) {
+                start = FitsUtil.findOffset(this.dataStr);
+            }
+            this.hduIndex = HduIndex.scan((RandomAccess) this.dataStr, start);
+        }
+        return this.hduIndex;
+    }
+
     /**
      * Get the current number of HDUs in the Fits object.
      * 
      * @return The number of HDU's in the object.
      */
     public int getNumberOfHDUs() {
-        return this.hduList.size();
+        return this.hduList.size() + Math.max(0, this.indexedLimit - this.hdusRead);
     }
 
     /**
@@ -529,6 +688,7 @@ public class Fits implements Closeable {
         if (myHDU == null) {
             return;
         }
+        readIndexedHDUs();
         if (position < 0 || position > getNumberOfHDUs()) {
             throw new FitsException("Attempt to insert HDU at invalid location: " + position);
         }
@@ -544,14 +704,17 @@ public class Fits implements Closeable {
                 if (myHDU.canBePrimary()) {
                     myHDU.setPrimaryHDU(true);
                     this.hduList.add(0, myHDU);
+                    this.hduNumbers.add(0, -1);
                 } else {
                     insertHDU(BasicHDU.getDummyHDU(), 0);
                     myHDU.setPrimaryHDU(false);
                     this.hduList.add(1, myHDU);
+                    this.hduNumbers.add(1, -1);
                 }
             } else {
                 myHDU.setPrimaryHDU(false);
                 this.hduList.add(position, myHDU);
+                this.hduNumbers.add(position, -1);
             }
         } catch (NoSuchElementException e) {
             throw new FitsException("hduList inconsistency in insertHDU", e);
@@ -560,7 +723,11 @@ public class Fits implements Closeable {
 
     /**
      * Initialize using buffered random access. This implies that the data is
-     * uncompressed.
+     * uncompressed. If {@link FitsFactory#isUseMappedFiles()} is set the file
+     * is memory mapped (read only) instead. If
+     * {@link FitsFactory#isUseIndexCache()} is set the headers are restored
+     * from the index cache file (see {@link HduIndexCache}), which is created
+     * first if needed.
      * 
      * @param file
      *            the file to open
@@ -577,8 +744,19 @@ public class Fits implements Closeable {
             permissions += "w";
         }
         try {
-            this.dataStr = new BufferedFile(file, permissions);
-            ((BufferedFile) this.dataStr).seek(0);
+            RandomAccess randomAccess;
+            if (FitsFactory.isUseMappedFiles()) {
+                randomAccess = new MappedFile(file);
+            } else {
+                randomAccess = new BufferedFile(file, permissions);
+            }
+            randomAccess.seek(0);
+            this.dataStr = randomAccess;
+            this.randomAccessFile = file;
+            if (FitsFactory.isUseIndexCache()) {
+                this.indexCache = HduIndexCache.open(file, randomAccess);
+                this.hduIndex = this.indexCache.getIndex();
+            }
         } catch (IOException e) {
             throw new FitsException("Unable to open file " + file.getPath(), e);
         }
@@ -602,6 +780,118 @@ public class Fits implements Closeable {
         return this.hduList.toArray(new BasicHDU<?>[size]);
     }
 
+    /**
+     * Return all HDUs for the Fits object, reading the remaining HDUs of a
+     * random access file in parallel. The HDU boundaries are taken from the
+     * HDU index (see {@link #getHduIndex()}), then every HDU is read and
+     * decoded by a task of the executor through its own handle on the file.
+     * The data of these HDUs is held in memory rather than read on demand.
+     * The tasks read with the {@link FitsFactory} settings of the calling
+     * thread. Inputs that are not random access files are read sequentially
+     * like {@link #read()}.
+     * 
+     * @param executor
+     *            the executor that reads the HDUs.
+     * @return an array of all HDUs in the Fits object.
+     * @throws FitsException
+     *             if the reading failed.
+     */
+    public BasicHDU<?>[] readAll(ExecutorService executor) throws FitsException {
+        HduIndex index = null;
+        if (this.randomAccessFile != null && !this.atEOF) {
+            try {
+                index = getHduIndex();
+            } catch (IOException e) {
+                throw new FitsException("Unable to index the file " + this.randomAccessFile.getPath(), e);
+            }
+        }
+        if (index == null) {
+            return read();
+        }
+        List<Future<BasicHDU<?>>> futures = new ArrayList<Future<BasicHDU<?>>>();
+        for (int number = this.hdusRead; number < index.size(); number++) {
+            if (this.indexedHDUs.containsKey(number)) {
+                futures.add(null);
+            } else {
+                // each task gets its own copy, reading a header may change
+                // the settings, e.g. enable long strings.
+                futures.add(executor.submit(new ParallelHDURead(this.randomAccessFile, index.getHeaderOffset(number), FitsFactory.settingsSnapshot())));
+            }
+        }
+        List<BasicHDU<?>> hdus = new ArrayList<BasicHDU<?>>(futures.size());
+        try {
+            for (Future<BasicHDU<?>> future : futures) {
+                hdus.add(future == null ? this.indexedHDUs.get(this.hdusRead + hdus.size()) : future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FitsException("Interrupted while reading the HDUs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FitsException) {
+                throw (FitsException) e.getCause();
+            }
+            throw new FitsException("IO error: " + e.getCause(), e);
+        } finally {
+            if (hdus.size() < futures.size()) {
+                for (Future<BasicHDU<?>> future : futures) {
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        }
+        this.hduList.addAll(hdus);
+        for (int number = 0; number < hdus.size(); number++) {
+            this.hduNumbers.add(this.hdusRead + number);
+        }
+        this.hdusRead += hdus.size();
+        this.indexedHDUs.clear();
+        this.indexedLimit = 0;
+        if (this.hdusRead > 0) {
+            this.lastFileOffset = index.getNextOffset(this.hdusRead - 1);
+        }
+        this.atEOF = true;
+        return this.hduList.toArray(new BasicHDU<?>[this.hduList.size()]);
+    }
+
+    /**
+     * Reads a single HDU of a file through its own stream, with its own copy
+     * of the settings of the thread that started the read.
+     */
+    private static final class ParallelHDURead implements Callable<BasicHDU<?>> {
+
+        private final File file;
+
+        private final long offset;
+
+        private final FitsFactory.FitsSettings settings;
+
+        private ParallelHDURead(File file, long offset, FitsFactory.FitsSettings settings) {
+            this.file = file;
+            this.offset = offset;
+            this.settings = settings;
+        }
+
+        @Override
+        public BasicHDU<?> call() throws Exception {
+            FitsFactory.FitsSettings previous = FitsFactory.installSettings(this.settings);
+            FileInputStream fileIn = null;
+            try {
+                fileIn = new FileInputStream(this.file);
+                fileIn.getChannel().position(this.offset);
+                BufferedDataInputStream in = new BufferedDataInputStream(fileIn);
+                Header hdr = Header.readHeader(in);
+                if (hdr == null) {
+                    throw new FitsException("No header found at offset " + this.offset + " of " + this.file.getPath());
+                }
+                return FitsFactory.hduFactory(hdr, readData(hdr, in));
+            } finally {
+                SafeClose.close(fileIn);
+                FitsFactory.installSettings(previous);
+            }
+        }
+    }
+
     /**
      * Read a FITS file from an InputStream object.
      * 
@@ -637,27 +927,303 @@ public class Fits implements Closeable {
             }
             return null;
         }
+        BasicHDU<?> indexed = this.indexedHDUs.remove(this.hdusRead);
+        if (indexed != null) {
+            this.lastFileOffset = this.hduIndex.getNextOffset(this.hdusRead);
+            this.hduNumbers.add(this.hdusRead);
+            this.hdusRead++;
+            this.hduList.add(indexed);
+            return indexed;
+        }
         if (this.dataStr instanceof RandomAccess && this.lastFileOffset > 0) {
             FitsUtil.reposition(this.dataStr, this.lastFileOffset);
         }
-        Header hdr = Header.readHeader(this.dataStr);
-        if (hdr == null) {
+        markFirstHDU();
+        BasicHDU<?> nextHDU = readHDUAtCurrentPosition(this.hdusRead);
+        if (nextHDU == null) {
             this.atEOF = true;
             return null;
         }
+        this.lastFileOffset = FitsUtil.findOffset(this.dataStr);
+        this.hduNumbers.add(this.hdusRead);
+        this.hdusRead++;
+        this.hduList.add(nextHDU);
+        return nextHDU;
+    }
+
+    /**
+     * Read the HDU that starts at the current position of the input.
+     * 
+     * @param number
+     *            the number of the HDU in the input.
+     * @return the HDU read, or null if an EOF was detected at the beginning of
+     *         the header.
+     * @throws FitsException
+     *             if the header could not be read
+     * @throws IOException
+     *             if the underlying buffer threw an error
+     */
+    private BasicHDU<?> readHDUAtCurrentPosition(int number) throws FitsException, IOException {
+        Header hdr = readHeaderAtCurrentPosition(number);
+        if (hdr == null) {
+            return null;
+        }
+        return FitsFactory.hduFactory(hdr, readDataAtCurrentPosition(hdr));
+    }
+
+    /**
+     * Read the header that starts at the current position of the input, from
+     * the index cache if there is one.
+     * 
+     * @param number
+     *            the number of the HDU in the input.
+     * @return the header read, or null if an EOF was detected at the beginning
+     *         of the header.
+     * @throws FitsException
+     *             if the header could not be read
+     * @throws IOException
+     *             if the underlying buffer threw an error
+     */
+    private Header readHeaderAtCurrentPosition(int number) throws FitsException, IOException {
+        Header hdr = null;
+        if (this.indexCache != null) {
+            hdr = this.indexCache.restoreHeader(number, this.dataStr);
+        }
+        if (hdr == null) {
+            hdr = Header.readHeader(this.dataStr);
+        }
+        return hdr;
+    }
+
+    /**
+     * Read the data described by the header from the current position of the
+     * input.
+     * 
+     * @param hdr
+     *            the header of the HDU.
+     * @return the data read.
+     * @throws FitsException
+     *             if the data could not be read
+     */
+    private Data readDataAtCurrentPosition(Header hdr) throws FitsException {
+        return readData(hdr, this.dataStr);
+    }
+
+    /**
+     * Read the data described by the header from the input.
+     * 
+     * @param hdr
+     *            the header of the HDU.
+     * @param in
+     *            the input positioned at the start of the data.
+     * @return the data read.
+     * @throws FitsException
+     *             if the data could not be read
+     */
+    private static Data readData(Header hdr, ArrayDataInput in) throws FitsException {
         Data data = hdr.makeData();
         try {
-            data.read(this.dataStr);
+            data.read(in);
         } catch (PaddingException e) {
             e.updateHeader(hdr);
             if (!FitsFactory.getAllowTerminalJunk()) {
                 throw e;
             }
         }
+        return data;
+    }
+
+    /**
+     * Read the header of the next HDU for a {@link HduStream}. The HDU is not
+     * added to the list of HDUs of this object.
+     * 
+     * @return the header read, or null at the end of the input.
+     * @throws FitsException
+     *             if the header could not be read
+     * @throws IOException
+     *             if the underlying buffer threw an error
+     */
+    Header readStreamedHeader() throws FitsException, IOException {
+        if (this.dataStr == null || this.atEOF) {
+            return null;
+        }
+        if (this.dataStr instanceof RandomAccess && this.lastFileOffset > 0) {
+            FitsUtil.reposition(this.dataStr, this.lastFileOffset);
+        }
+        markFirstHDU();
+        Header hdr;
+        try {
+            hdr = readHeaderAtCurrentPosition(this.hdusRead);
+        } catch (EOFException e) {
+            if (FitsFactory.getAllowTerminalJunk() && //
+                    e.getCause() instanceof TruncatedFileException && //
+                    this.hdusRead > 0) {
+                hdr = null;
+            } else {
+                throw e;
+            }
+        }
+        if (hdr == null) {
+            this.atEOF = true;
+        }
+        return hdr;
+    }
+
+    /**
+     * Read the data following a header returned by
+     * {@link #readStreamedHeader()}.
+     * 
+     * @param hdr
+     *            the header of the HDU.
+     * @return the data read.
+     * @throws FitsException
+     *             if the data could not be read
+     */
+    Data readStreamedData(Header hdr) throws FitsException {
+        Data data = readDataAtCurrentPosition(hdr);
+        streamedHDUDone();
+        return data;
+    }
+
+    /**
+     * Copy the data following a header returned by
+     * {@link #readStreamedHeader()} to an output without interpreting it.
+     * 
+     * @param hdr
+     *            the header of the HDU.
+     * @param out
+     *            the output to copy the data to.
+     * @return the number of bytes copied, including the padding.
+     * @throws FitsException
+     *             if the data could not be copied
+     */
+    long copyStreamedData(Header hdr, ArrayDataOutput out) throws FitsException {
+        long size = hdr.getDataSize();
+        try {
+            FitsUtil.copy(this.dataStr, out, size);
+        } catch (IOException e) {
+            throw new FitsException("Error copying the data of HDU " + this.hdusRead, e);
+        }
+        streamedHDUDone();
+        return size;
+    }
+
+    /**
+     * Skip the data following a header returned by
+     * {@link #readStreamedHeader()}.
+     * 
+     * @param hdr
+     *            the header of the HDU.
+     * @throws IOException
+     *             if the underlying buffer threw an error
+     */
+    void skipStreamedData(Header hdr) throws IOException {
+        this.dataStr.skipAllBytes(hdr.getDataSize());
+        streamedHDUDone();
+    }
+
+    /**
+     * @return the number of the next HDU of the input.
+     */
+    int streamedHDUNumber() {
+        return this.hdusRead;
+    }
+
+    private void streamedHDUDone() {
         this.lastFileOffset = FitsUtil.findOffset(this.dataStr);
-        BasicHDU<Data> nextHDU = FitsFactory.hduFactory(hdr, data);
-        this.hduList.add(nextHDU);
-        return nextHDU;
+        this.indexedHDUs.remove(this.hdusRead);
+        this.hdusRead++;
+    }
+
+    /**
+     * Read an HDU of a random access input through the HDU index, without
+     * moving the input.
+     * 
+     * @param number
+     *            the number of the HDU in the input.
+     * @return the HDU or null if it is not in the index.
+     * @throws FitsException
+     *             if the header could not be read
+     * @throws IOException
+     *             if the underlying buffer threw an error
+     */
+    private BasicHDU<?> readIndexedHDU(int number) throws FitsException, IOException {
+        HduIndex index = getHduIndex();
+        if (index == null || number >= index.size()) {
+            return null;
+        }
+        BasicHDU<?> hdu = this.indexedHDUs.get(number);
+        if (hdu == null) {
+            RandomAccess in = (RandomAccess) this.dataStr;
+            long position = in.getFilePointer();
+            try {
+                in.seek(index.getHeaderOffset(number));
+                hdu = readHDUAtCurrentPosition(number);
+            } finally {
+                in.seek(position);
+            }
+            if (hdu != null) {
+                this.indexedHDUs.put(number, hdu);
+                this.indexedLimit = Math.max(this.indexedLimit, number + 1);
+            }
+        }
+        return hdu;
+    }
+
+    /**
+     * Read sequentially up to the last HDU read through the index, so that the
+     * list of HDUs is complete before it is written or modified.
+     * 
+     * @throws FitsException
+     *             if the reading failed.
+     */
+    private void readIndexedHDUs() throws FitsException {
+        try {
+            while (this.hdusRead < this.indexedLimit && readHDU() != null) {
+                continue;
+            }
+        } catch (IOException e) {
+            throw new FitsException("IO error: " + e, e);
+        }
+    }
+
+    /**
+     * @return the number in the input of the HDU at a position of the HDU
+     *         list, -1 for an HDU that was not read from the input.
+     */
+    private int hduNumber(int position) {
+        if (position < this.hduNumbers.size()) {
+            return this.hduNumbers.get(position);
+        }
+        return this.hdusRead + position - this.hduNumbers.size();
+    }
+
+    /**
+     * @return the position in the HDU list of the HDU with a number in the
+     *         input, -1 if the HDU was deleted or skipped.
+     */
+    private int hduPosition(int number) {
+        int position = this.hduNumbers.indexOf(number);
+        if (position < 0 && number >= this.hdusRead) {
+            position = this.hduNumbers.size() + number - this.hdusRead;
+        }
+        return position;
+    }
+
+    private static boolean isExtension(BasicHDU<?> hdu, String extname, int extver) {
+        Header header = hdu.getHeader();
+        String name = header.getStringValue(EXTNAME);
+        return name != null && extname.equals(name.trim()) && extver == header.getIntValue(EXTVER, 1);
+    }
+
+    /**
+     * Remember where the first HDU of the input starts, the HDU index is built
+     * from there.
+     */
+    private void markFirstHDU() {
+        if (this.hdusRead == 0) {
+            this.firstHDUOffset = FitsUtil.findOffset(this.dataStr);
+        }
     }
 
     /**
@@ -687,6 +1253,19 @@ public class Fits implements Closeable {
         }
     }
 
+    /**
+     * Stream the remaining HDUs of the input one at a time. Unlike
+     * {@link #readHDU()} the HDUs are not added to this object, so the memory
+     * used stays bounded by the largest single HDU rather than growing with
+     * the input. The data of each HDU is only read on request and skipped
+     * otherwise.
+     * 
+     * @return a single pass stream over the remaining HDUs.
+     */
+    public HduStream stream() {
+        return new HduStream(this);
+    }
+
     /**
      * Add or Modify the CHECKSUM keyword in all headers. by R J Mathar
      * 
@@ -711,6 +1290,13 @@ public class Fits implements Closeable {
         this.dataStr = stream;
         this.atEOF = false;
         this.lastFileOffset = -1;
+        this.hdusRead = 0;
+        Collections.fill(this.hduNumbers, -1);
+        this.hduIndex = null;
+        this.indexCache = null;
+        this.indexedHDUs.clear();
+        this.indexedLimit = 0;
+        this.randomAccessFile = null;
     }
 
     /**
@@ -749,13 +1335,25 @@ public class Fits implements Closeable {
     public void skipHDU() throws FitsException, IOException {
         if (this.atEOF) {
             return;
+        } else if (this.hduIndex != null && this.hdusRead < this.hduIndex.size()) {
+            // the index already knows where the next HDU starts.
+            this.lastFileOffset = this.hduIndex.getNextOffset(this.hdusRead);
+            FitsUtil.reposition(this.dataStr, this.lastFileOffset);
+            this.indexedHDUs.remove(this.hdusRead);
+            this.hdusRead++;
         } else {
+            if (this.dataStr instanceof RandomAccess && this.lastFileOffset > 0) {
+                FitsUtil.reposition(this.dataStr, this.lastFileOffset);
+            }
+            markFirstHDU();
             Header hdr = new Header(this.dataStr);
-            int dataSize = (int) hdr.getDataSize();
+            long dataSize = hdr.getDataSize();
             this.dataStr.skipAllBytes(dataSize);
             if (this.dataStr instanceof RandomAccess) {
                 this.lastFileOffset = ((RandomAccess) this.dataStr).getFilePointer();
             }
+            this.indexedHDUs.remove(this.hdusRead);
+            this.hdusRead++;
         }
     }
 
@@ -810,6 +1408,7 @@ public class Fits implements Closeable {
         } else {
             throw new FitsException("Cannot create ArrayDataOutput from class " + os.getClass().getName());
         }
+        readIndexedHDUs();
         for (BasicHDU<?> basicHDU : hduList) {
             basicHDU.write(obs);
         }
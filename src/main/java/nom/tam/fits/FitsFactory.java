@@ -1,5 +1,6 @@
 package nom.tam.fits;
 
+import java.io.File;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -68,6 +69,20 @@ public final class FitsFactory {
 
         private boolean skipBlankAfterAssign = false;
 
+        private boolean useMappedFiles = false;
+
+        private boolean useIndexCache = false;
+
+        private boolean lazyHeaderParsing = false;
+
+        private boolean deferredHeapReads = false;
+
+        private File indexCacheDirectory;
+
+        private ExecutorService threadPool;
+
+        private int maxTilesInFlight = 0;
+
         private IHierarchKeyFormatter hierarchKeyFormatter = new StandardIHierarchKeyFormatter();
 
         private FitsSettings copy() {
@@ -80,6 +95,13 @@ public final class FitsFactory {
             settings.hierarchKeyFormatter = this.hierarchKeyFormatter;
             settings.skipBlankAfterAssign = this.skipBlankAfterAssign;
             settings.allowHeaderRepairs = this.allowHeaderRepairs;
+            settings.useMappedFiles = this.useMappedFiles;
+            settings.useIndexCache = this.useIndexCache;
+            settings.lazyHeaderParsing = this.lazyHeaderParsing;
+            settings.deferredHeapReads = this.deferredHeapReads;
+            settings.indexCacheDirectory = this.indexCacheDirectory;
+            settings.threadPool = this.threadPool;
+            settings.maxTilesInFlight = this.maxTilesInFlight;
             return settings;
         }
 
@@ -115,13 +137,41 @@ public final class FitsFactory {
             return this.allowHeaderRepairs;
         }
 
+        protected boolean isUseMappedFiles() {
+            return this.useMappedFiles;
+        }
+
+        protected boolean isLazyHeaderParsing() {
+            return this.lazyHeaderParsing;
+        }
+
+        protected boolean isDeferredHeapReads() {
+            return this.deferredHeapReads;
+        }
+
+        protected boolean isUseIndexCache() {
+            return this.useIndexCache;
+        }
+
+        protected File getIndexCacheDirectory() {
+            return this.indexCacheDirectory;
+        }
+
+        protected int getMaxTilesInFlight() {
+            return this.maxTilesInFlight;
+        }
+
+        protected ExecutorService getThreadPool() {
+            return this.threadPool;
+        }
+
     }
 
     private static final FitsSettings GLOBAL_SETTINGS = new FitsSettings();
 
     private static final ThreadLocal<FitsSettings> LOCAL_SETTINGS = new ThreadLocal<FitsSettings>();
 
-    private static ExecutorService threadPool;
+    private static ExecutorService defaultThreadPool;
 
     public static final int FITS_BLOCK_SIZE = 2880;
 
@@ -172,6 +222,14 @@ public final class FitsFactory {
         return current().isAllowHeaderRepairs();
     }
 
+    /**
+     * @return the directory for the HDU index cache files, or null if they are
+     *         kept next to the FITS files.
+     */
+    public static File getIndexCacheDirectory() {
+        return current().indexCacheDirectory;
+    }
+
     /**
      * @return the formatter to use for hierarch keys.
      */
@@ -291,6 +349,31 @@ public final class FitsFactory {
 
     // CHECKSTYLE:ON
 
+    /**
+     * @return <code>true</code> If the values and comments of header cards are
+     *         parsed on first use instead of while reading the header.
+     */
+    public static boolean isLazyHeaderParsing() {
+        return current().lazyHeaderParsing;
+    }
+
+    /**
+     * @return <code>true</code> If the heap of binary tables in random access
+     *         files is read on demand instead of completely.
+     */
+    public static boolean isDeferredHeapReads() {
+        return current().deferredHeapReads;
+    }
+
+    /**
+     * @return the maximum number of tiles that are processed (compressed or
+     *         decompressed) at the same time by one operation, 0 means no
+     *         limit.
+     */
+    public static int getMaxTilesInFlight() {
+        return current().maxTilesInFlight;
+    }
+
     /**
      * @return <code>true</code> If long string support is enabled.
      */
@@ -298,6 +381,22 @@ public final class FitsFactory {
         return current().longStringsEnabled;
     }
 
+    /**
+     * @return <code>true</code> If the HDU index of files is kept in an index
+     *         cache file (see {@link HduIndexCache}).
+     */
+    public static boolean isUseIndexCache() {
+        return current().useIndexCache;
+    }
+
+    /**
+     * @return <code>true</code> If uncompressed files are read through memory
+     *         mapped windows instead of a buffered random access file.
+     */
+    public static boolean isUseMappedFiles() {
+        return current().useMappedFiles;
+    }
+
     /**
      * @return <code>true</code> If blanks after the assign are ommitted in the
      *         header.
@@ -351,6 +450,25 @@ public final class FitsFactory {
         current().hierarchKeyFormatter = formatter;
     }
 
+    /**
+     * Limit the number of tiles that one operation submits to the thread pool
+     * at the same time. When the limit is reached, the next tile is submitted
+     * as soon as any of the submitted tiles is done. This bounds the threads
+     * and the working memory of the tiles in process (e.g. the state of the
+     * compressor and the buffers of a tile), but not the buffers of the whole
+     * image or table: compressing still allocates the compressed data of all
+     * tiles and decompressing a whole image allocates all its pixels. Use the
+     * tiler or decompressTo of a compressed image HDU to decompress big images
+     * with bounded memory. Compressed HDUs can override this with their own
+     * setMaxTilesInFlight. Default 0, no limit.
+     *
+     * @param maxTilesInFlight
+     *            value to set, 0 (or less) for no limit
+     */
+    public static void setMaxTilesInFlight(int maxTilesInFlight) {
+        current().maxTilesInFlight = Math.max(0, maxTilesInFlight);
+    }
+
     /**
      * Enable/Disable longstring support.
      *
@@ -383,6 +501,73 @@ public final class FitsFactory {
         current().useAsciiTables = useAsciiTables;
     }
 
+    /**
+     * Parse the values and comments of header cards only when they are first
+     * used, instead of while reading the header. Reading a header then only
+     * extracts the keywords, which makes scanning many headers for a few
+     * keywords much faster. Note that an invalid value is only reported (with
+     * an {@link IllegalArgumentException}) when it is used. Disabled by
+     * default.
+     *
+     * @param lazyHeaderParsing
+     *            value to set
+     */
+    public static void setLazyHeaderParsing(boolean lazyHeaderParsing) {
+        current().lazyHeaderParsing = lazyHeaderParsing;
+    }
+
+    /**
+     * Read the variable length data of binary tables in random access files
+     * from the heap in the file when it is used, instead of reading the whole
+     * heap into memory first. This allows tables with very large heaps to be
+     * read, the heap is only loaded completely when it is modified. Disabled
+     * by default.
+     *
+     * @param deferredHeapReads
+     *            value to set
+     */
+    public static void setDeferredHeapReads(boolean deferredHeapReads) {
+        current().deferredHeapReads = deferredHeapReads;
+    }
+
+    /**
+     * Set the directory for the HDU index cache files. The directory must
+     * exist.
+     *
+     * @param indexCacheDirectory
+     *            the directory to use or null (the default) to keep the index
+     *            cache files next to the FITS files.
+     */
+    public static void setIndexCacheDirectory(File indexCacheDirectory) {
+        current().indexCacheDirectory = indexCacheDirectory;
+    }
+
+    /**
+     * Keep the HDU index and the headers of files opened for random access in
+     * an index cache file, so that later opens of the same unchanged file do
+     * not have to parse the headers again (see {@link HduIndexCache}).
+     * Disabled by default.
+     *
+     * @param useIndexCache
+     *            value to set
+     */
+    public static void setUseIndexCache(boolean useIndexCache) {
+        current().useIndexCache = useIndexCache;
+    }
+
+    /**
+     * Read uncompressed files through memory mapped windows (see
+     * {@link nom.tam.util.MappedFile}) instead of a buffered random access
+     * file. Mapped files are read only, so HDUs read from them can not be
+     * rewritten in place. Disabled by default.
+     *
+     * @param useMappedFiles
+     *            value to set
+     */
+    public static void setUseMappedFiles(boolean useMappedFiles) {
+        current().useMappedFiles = useMappedFiles;
+    }
+
     /**
      * Enable/Disable hierarchical keyword processing.
      *
@@ -393,11 +578,33 @@ public final class FitsFactory {
         current().useHierarch = useHierarch;
     }
 
+    /**
+     * Use an own thread pool for the processing of tiles instead of the shared
+     * default pool of the library, e.g. to limit the threads the library uses
+     * in a server. The pool is not shut down by the library. Compressed HDUs
+     * can override this with their own setThreadPool.
+     *
+     * @param threadPool
+     *            the thread pool to use or null to use the default pool again.
+     */
+    public static void setThreadPool(ExecutorService threadPool) {
+        current().threadPool = threadPool;
+    }
+
+    /**
+     * @return the thread pool to use for the processing of tiles, the one set
+     *         with {@link #setThreadPool(ExecutorService)} or else the default
+     *         pool with 2 threads per core.
+     */
     public static ExecutorService threadPool() {
-        if (threadPool == null) {
+        ExecutorService threadPool = current().threadPool;
+        if (threadPool != null) {
+            return threadPool;
+        }
+        if (defaultThreadPool == null) {
             initializeThreadPool();
         }
-        return threadPool;
+        return defaultThreadPool;
     }
 
     /**
@@ -416,11 +623,40 @@ public final class FitsFactory {
         }
     }
 
+    /**
+     * @return a copy of the settings of the current thread, that can be
+     *         installed in other threads with
+     *         {@link #installSettings(FitsSettings)}.
+     */
+    static FitsSettings settingsSnapshot() {
+        return current().copy();
+    }
+
+    /**
+     * Install the settings as the thread local settings of the current
+     * thread.
+     *
+     * @param settings
+     *            the settings to use, or null to share the global settings
+     *            again.
+     * @return the previous thread local settings of the current thread, or
+     *         null if it used the global settings.
+     */
+    static FitsSettings installSettings(FitsSettings settings) {
+        FitsSettings previous = LOCAL_SETTINGS.get();
+        if (settings == null) {
+            LOCAL_SETTINGS.remove();
+        } else {
+            LOCAL_SETTINGS.set(settings);
+        }
+        return previous;
+    }
+
     private static void initializeThreadPool() {
         synchronized (GLOBAL_SETTINGS) {
-            if (threadPool == null) {
+            if (defaultThreadPool == null) {
                 // 1.5 thread per core
-                threadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, //
+                defaultThreadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, //
                         new ThreadFactory() {
 
                             private int counter = 1;
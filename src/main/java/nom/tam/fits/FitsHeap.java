@@ -31,61 +31,105 @@ package nom.tam.fits;
  * #L%
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import nom.tam.util.ArrayDataInput;
 import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.ArrayFuncs;
-import nom.tam.util.BufferedDataInputStream;
-import nom.tam.util.BufferedDataOutputStream;
+import nom.tam.util.FitsIO;
+import nom.tam.util.RandomAccess;
+import nom.tam.util.type.PrimitiveTypeHandler;
 
 /**
  * This class supports the FITS heap. This is currently used for variable length
- * columns in binary tables.
+ * columns in binary tables. The heap is stored in chunks of at most
+ * {@value #CHUNK_SIZE} bytes with long offsets, so it can be larger than 2GB
+ * and growing it never copies more than one chunk. The heap of a table in a
+ * random access file can also be read on demand instead of all at once, see
+ * {@link #defer(RandomAccess, long)}.
  */
 public class FitsHeap implements FitsElement {
 
     private static final int MINIMUM_HEAP_SIZE = 16384;
 
+    private static final int CHUNK_BITS = 24;
+
+    /**
+     * The size of the chunks of the heap, only the last chunk may be smaller.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The largest heap that can be addressed with the chunks.
+     */
+    static final long MAXIMUM_SIZE = (long) Integer.MAX_VALUE << CHUNK_BITS;
+
     /**
-     * The storage buffer
+     * The storage buffer, in chunks.
      */
-    private byte[] heap;
+    private byte[][] chunks;
 
     /**
-     * The current used size of the buffer <= heap.length
+     * Big endian views of the chunks, the heap data is decoded with absolute
+     * gets so the order of the reads does not matter.
      */
-    private int heapSize;
+    private ByteBuffer[] chunkBuffers;
 
     /**
-     * Our current offset into the heap. When we read from the heap we use a
-     * byte array input stream. So long as we continue to read further into the
-     * heap, we can continue to use the same stream, but we need to recreate the
-     * stream whenever we skip backwards.
+     * The current used size of the heap.
      */
-    private int heapOffset = 0;
+    private long heapSize;
 
     /**
-     * A stream used to read the heap data
+     * Room for a single element that crosses the border between two chunks.
      */
-    private BufferedDataInputStream bstr;
+    private final ByteBuffer elementBuffer = ByteBuffer.allocate(FitsIO.BYTES_IN_LONG);
+
+    /**
+     * The file the heap is read from on demand, null if the heap is in memory.
+     */
+    private RandomAccess deferredInput;
+
+    /**
+     * The position of the heap in the file it is read from on demand.
+     */
+    private long deferredFileOffset;
 
     /**
      * Create a heap of a given size.
      */
     FitsHeap(int size) {
+        this((long) size);
+    }
+
+    /**
+     * Create a heap of a given size.
+     */
+    FitsHeap(long size) {
         this.heapSize = size;
-        if (size < 0) {
+        if (size < 0 || size > MAXIMUM_SIZE) {
             throw new IllegalArgumentException("Illegal size for FITS heap:" + size);
         }
     }
 
+    private static int chunkIndex(long offset) {
+        return (int) (offset >>> CHUNK_BITS);
+    }
+
+    private static int chunkPosition(long offset) {
+        return (int) (offset & CHUNK_MASK);
+    }
+
     private void allocate() {
-        if (this.heap == null) {
-            this.heap = new byte[this.heapSize];
+        if (this.chunks == null) {
+            this.chunks = new byte[0][];
+            ensureCapacity(this.heapSize, true);
         }
     }
 
@@ -94,37 +138,254 @@ public class FitsHeap implements FitsElement {
      * necessary if we wanted to copy an HDU that included variable length
      * columns.
      */
-    FitsHeap copy() {
+    FitsHeap copy() throws FitsException {
+        load();
         FitsHeap copy = new FitsHeap(0);
-        if (this.heap != null) {
-            copy.heap = this.heap.clone();
+        if (this.chunks != null) {
+            copy.chunks = new byte[this.chunks.length][];
+            for (int index = 0; index < this.chunks.length; index++) {
+                copy.chunks[index] = this.chunks[index].clone();
+            }
         }
         copy.heapSize = this.heapSize;
-        copy.heapOffset = this.heapOffset;
         return copy;
     }
 
+    private int decode(ByteBuffer source, int start, Object array, int length) {
+        if (array instanceof byte[]) {
+            System.arraycopy(source.array(), start, array, 0, length);
+        } else if (array instanceof boolean[]) {
+            boolean[] values = (boolean[]) array;
+            for (int index = 0; index < length; index++) {
+                values[index] = source.get(start + index) == 1;
+            }
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            for (int index = 0; index < length; index++) {
+                values[index] = source.getShort(start + index * FitsIO.BYTES_IN_SHORT);
+            }
+        } else if (array instanceof char[]) {
+            char[] values = (char[]) array;
+            for (int index = 0; index < length; index++) {
+                values[index] = source.getChar(start + index * FitsIO.BYTES_IN_CHAR);
+            }
+        } else if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int index = 0; index < length; index++) {
+                values[index] = source.getInt(start + index * FitsIO.BYTES_IN_INTEGER);
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int index = 0; index < length; index++) {
+                values[index] = source.getLong(start + index * FitsIO.BYTES_IN_LONG);
+            }
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            for (int index = 0; index < length; index++) {
+                values[index] = source.getFloat(start + index * FitsIO.BYTES_IN_FLOAT);
+            }
+        } else {
+            double[] values = (double[]) array;
+            for (int index = 0; index < length; index++) {
+                values[index] = source.getDouble(start + index * FitsIO.BYTES_IN_DOUBLE);
+            }
+        }
+        return length;
+    }
+
     /**
-     * Check if the Heap can accommodate a given requirement. If not expand the
-     * heap.
+     * decode the data at the offset into the array.
+     *
+     * @return the offset after the data.
      */
-    void expandHeap(int need) {
+    private long decode(long offset, Object array) throws FitsException {
+        if (array instanceof Object[]) {
+            long position = offset;
+            for (Object element : (Object[]) array) {
+                position = decode(position, element);
+            }
+            return position;
+        }
+        Class<?> type = array.getClass().getComponentType();
+        if (type == null || !type.isPrimitive()) {
+            throw new FitsException("Invalid type for heap data " + array.getClass().getName());
+        }
+        int length = Array.getLength(array);
+        int size = length * PrimitiveTypeHandler.valueOf(type).size();
+        long end = offset + size;
+        if (offset < 0 || end > this.heapSize) {
+            throw new FitsException("Error decoding heap area at offset=" + offset + ", the data is not within the heap of size " + this.heapSize);
+        }
+        if (size == 0) {
+            return end;
+        }
+        int chunk = chunkIndex(offset);
+        int position = chunkPosition(offset);
+        if (position + size <= this.chunks[chunk].length) {
+            decode(chunkBuffer(chunk), position, array, length);
+        } else {
+            // the data crosses the border of a chunk.
+            byte[] bytes = new byte[size];
+            long from = offset;
+            int done = 0;
+            while (done < size) {
+                int count = Math.min(size - done, this.chunks[chunkIndex(from)].length - chunkPosition(from));
+                System.arraycopy(this.chunks[chunkIndex(from)], chunkPosition(from), bytes, done, count);
+                done += count;
+                from += count;
+            }
+            decode(ByteBuffer.wrap(bytes), 0, array, length);
+        }
+        return end;
+    }
 
-        // Invalidate any existing input stream to the heap.
-        this.bstr = null;
-        allocate();
+    /**
+     * append the array to the end of the heap, the heap must already have room
+     * for it.
+     */
+    private void encode(Object array) throws FitsException {
+        if (array instanceof Object[]) {
+            for (Object element : (Object[]) array) {
+                encode(element);
+            }
+            return;
+        }
+        Class<?> type = array.getClass().getComponentType();
+        if (type == null || !type.isPrimitive()) {
+            throw new FitsException("Invalid type for heap data " + array.getClass().getName());
+        }
+        if (array instanceof byte[]) {
+            byte[] values = (byte[]) array;
+            encodeBytes(values, 0, values.length);
+            return;
+        }
+        int length = Array.getLength(array);
+        int size = PrimitiveTypeHandler.valueOf(type).size();
+        int index = 0;
+        while (index < length) {
+            int chunk = chunkIndex(this.heapSize);
+            int position = chunkPosition(this.heapSize);
+            int count = Math.min(length - index, (this.chunks[chunk].length - position) / size);
+            if (count == 0) {
+                // the element crosses the border of a chunk.
+                this.elementBuffer.clear();
+                encode(this.elementBuffer, array, index, 1);
+                encodeBytes(this.elementBuffer.array(), 0, size);
+                index++;
+            } else {
+                ByteBuffer target = chunkBuffer(chunk);
+                target.clear();
+                target.position(position);
+                encode(target, array, index, count);
+                this.heapSize += (long) count * size;
+                index += count;
+            }
+        }
+    }
+
+    private void encode(ByteBuffer target, Object array, int start, int length) {
+        if (array instanceof boolean[]) {
+            boolean[] values = (boolean[]) array;
+            for (int index = start; index < start + length; index++) {
+                target.put(values[index] ? (byte) 1 : (byte) 0);
+            }
+        } else if (array instanceof short[]) {
+            target.asShortBuffer().put((short[]) array, start, length);
+        } else if (array instanceof char[]) {
+            target.asCharBuffer().put((char[]) array, start, length);
+        } else if (array instanceof int[]) {
+            target.asIntBuffer().put((int[]) array, start, length);
+        } else if (array instanceof long[]) {
+            target.asLongBuffer().put((long[]) array, start, length);
+        } else if (array instanceof float[]) {
+            target.asFloatBuffer().put((float[]) array, start, length);
+        } else {
+            target.asDoubleBuffer().put((double[]) array, start, length);
+        }
+    }
+
+    private void encodeBytes(byte[] bytes, int offset, int length) {
+        int done = 0;
+        while (done < length) {
+            int chunk = chunkIndex(this.heapSize);
+            int position = chunkPosition(this.heapSize);
+            int count = Math.min(length - done, this.chunks[chunk].length - position);
+            System.arraycopy(bytes, offset + done, this.chunks[chunk], position, count);
+            this.heapSize += count;
+            done += count;
+        }
+    }
+
+    private ByteBuffer chunkBuffer(int chunk) {
+        if (this.chunkBuffers == null || this.chunkBuffers.length != this.chunks.length) {
+            this.chunkBuffers = new ByteBuffer[this.chunks.length];
+        }
+        if (this.chunkBuffers[chunk] == null) {
+            this.chunkBuffers[chunk] = ByteBuffer.wrap(this.chunks[chunk]);
+        }
+        return this.chunkBuffers[chunk];
+    }
+
+    /**
+     * Read the data of the heap from the file on demand, instead of keeping the
+     * whole heap in memory. The heap is only loaded completely when it is
+     * changed or copied.
+     *
+     * @param input
+     *            the file with the heap
+     * @param fileOffset
+     *            the position of the heap in the file
+     */
+    void defer(RandomAccess input, long fileOffset) {
+        this.deferredInput = input;
+        this.deferredFileOffset = fileOffset;
+        this.chunks = null;
+        this.chunkBuffers = null;
+    }
 
-        if (this.heapSize + need > this.heap.length) {
-            int newlen = (this.heapSize + need) * 2;
-            if (newlen < MINIMUM_HEAP_SIZE) {
-                newlen = MINIMUM_HEAP_SIZE;
+    /**
+     * make sure the heap has room for the data of at least the required size,
+     * the last chunk is allocated with the exact size or with room to grow.
+     */
+    private void ensureCapacity(long required, boolean exact) {
+        if (required == 0) {
+            return;
+        }
+        int lastChunk = chunkIndex(required - 1);
+        // all but the last existing chunk are already complete.
+        int firstChunk = Math.max(0, this.chunks.length - 1);
+        if (this.chunks.length <= lastChunk) {
+            this.chunks = Arrays.copyOf(this.chunks, lastChunk + 1);
+        }
+        for (int index = firstChunk; index <= lastChunk; index++) {
+            int needed = index < lastChunk ? CHUNK_SIZE : chunkPosition(required - 1) + 1;
+            byte[] chunk = this.chunks[index];
+            if (chunk == null || chunk.length < needed) {
+                int length = CHUNK_SIZE;
+                if (index == lastChunk && !exact) {
+                    length = (int) Math.min(CHUNK_SIZE, Math.max(MINIMUM_HEAP_SIZE, 2L * needed));
+                } else if (index == lastChunk) {
+                    length = needed;
+                }
+                byte[] newChunk = new byte[length];
+                if (chunk != null) {
+                    System.arraycopy(chunk, 0, newChunk, 0, chunk.length);
+                }
+                this.chunks[index] = newChunk;
+                this.chunkBuffers = null;
             }
-            byte[] newHeap = new byte[newlen];
-            System.arraycopy(this.heap, 0, newHeap, 0, this.heapSize);
-            this.heap = newHeap;
         }
     }
 
+    /**
+     * Check if the Heap can accommodate a given requirement. If not expand the
+     * heap.
+     */
+    void expandHeap(long need) {
+        allocate();
+        ensureCapacity(this.heapSize + need, false);
+    }
+
     /**
      * Get data from the heap.
      * 
@@ -136,21 +397,26 @@ public class FitsHeap implements FitsElement {
      *             if the operation failed
      */
     public void getData(int offset, Object array) throws FitsException {
-        allocate();
-        try {
-            // Can we reuse the existing byte stream?
-            if (this.bstr == null || this.heapOffset > offset) {
-                this.heapOffset = 0;
-                this.bstr = new BufferedDataInputStream(new ByteArrayInputStream(this.heap));
-            }
-
-            this.bstr.skipAllBytes(offset - this.heapOffset);
-            this.heapOffset = offset;
-            this.heapOffset += this.bstr.readLArray(array);
+        getData((long) offset, array);
+    }
 
-        } catch (IOException e) {
-            throw new FitsException("Error decoding heap area at offset=" + offset + ".  Exception: Exception " + e);
+    /**
+     * Get data from the heap, also for heaps larger than 2GB.
+     * 
+     * @param offset
+     *            The offset at which the data begins.
+     * @param array
+     *            The array to be extracted.
+     * @throws FitsException
+     *             if the operation failed
+     */
+    public void getData(long offset, Object array) throws FitsException {
+        if (this.chunks == null && this.deferredInput != null) {
+            readDeferred(offset, array);
+            return;
         }
+        allocate();
+        decode(offset, array);
     }
 
     /**
@@ -166,56 +432,103 @@ public class FitsHeap implements FitsElement {
      */
     @Override
     public long getSize() {
-        return size();
+        return this.heapSize;
     }
 
     /**
-     * Add some data to the heap.
+     * @return true if the heap is read from the file on demand.
      */
-    int putData(Object data) throws FitsException {
-
-        long lsize = ArrayFuncs.computeLSize(data);
-        if (lsize > Integer.MAX_VALUE) {
-            throw new FitsException("FITS Heap > 2 G");
-        }
-        int size = (int) lsize;
-        expandHeap(size);
-        ByteArrayOutputStream bo = new ByteArrayOutputStream(size);
+    boolean isDeferred() {
+        return this.chunks == null && this.deferredInput != null;
+    }
 
-        try {
-            BufferedDataOutputStream o = new BufferedDataOutputStream(bo);
-            o.writeArray(data);
-            o.flush();
-            o.close();
-        } catch (IOException e) {
-            throw new FitsException("Unable to write variable column length data", e);
+    /**
+     * load a heap that is read on demand completely into memory.
+     */
+    private void load() throws FitsException {
+        if (isDeferred()) {
+            RandomAccess input = this.deferredInput;
+            try {
+                long current = input.getFilePointer();
+                input.seek(this.deferredFileOffset);
+                read(input);
+                input.seek(current);
+            } catch (IOException e) {
+                throw new FitsException("Error reading heap " + e.getMessage(), e);
+            }
         }
+    }
 
-        System.arraycopy(bo.toByteArray(), 0, this.heap, this.heapSize, size);
-        int oldOffset = this.heapSize;
-        this.heapSize += size;
-
+    /**
+     * Add some data to the heap. The data is encoded directly into the heap
+     * storage.
+     *
+     * @return the offset of the data in the heap
+     */
+    long putData(Object data) throws FitsException {
+        load();
+        long oldOffset = this.heapSize;
+        expandHeap(ArrayFuncs.computeLSize(data));
+        encode(data);
         return oldOffset;
     }
 
+    /**
+     * Add the data of many rows to the heap at once, the heap is only expanded
+     * once for all of them.
+     *
+     * @param rows
+     *            the data of the rows
+     * @param offsets
+     *            filled with the offset of the data of each row in the heap
+     * @throws FitsException
+     *             if the data could not be added.
+     */
+    void putData(Object[] rows, long[] offsets) throws FitsException {
+        load();
+        expandHeap(ArrayFuncs.computeLSize(rows));
+        for (int index = 0; index < rows.length; index++) {
+            offsets[index] = this.heapSize;
+            encode(rows[index]);
+        }
+    }
+
     /**
      * Read the heap
      */
     @SuppressFBWarnings(value = "RR_NOT_CHECKED", justification = "this read will never return less than the requested length")
     @Override
     public void read(ArrayDataInput str) throws FitsException {
+        this.deferredInput = null;
+        this.chunks = null;
+        this.chunkBuffers = null;
         if (this.heapSize > 0) {
             allocate();
             try {
-                if (str.read(this.heap, 0, this.heapSize) < this.heapSize) {
-                    throw new FitsException("Error reading heap, no more data");
+                for (byte[] chunk : this.chunks) {
+                    if (str.read(chunk, 0, chunk.length) < chunk.length) {
+                        throw new FitsException("Error reading heap, no more data");
+                    }
                 }
             } catch (IOException e) {
                 throw new FitsException("Error reading heap " + e.getMessage(), e);
             }
         }
+    }
 
-        this.bstr = null;
+    private void readDeferred(long offset, Object array) throws FitsException {
+        long size = ArrayFuncs.computeLSize(array);
+        if (offset < 0 || offset + size > this.heapSize) {
+            throw new FitsException("Error decoding heap area at offset=" + offset + ", the data is not within the heap of size " + this.heapSize);
+        }
+        try {
+            long current = this.deferredInput.getFilePointer();
+            this.deferredInput.seek(this.deferredFileOffset + offset);
+            this.deferredInput.readLArray(array);
+            this.deferredInput.seek(current);
+        } catch (IOException e) {
+            throw new FitsException("Error reading heap area at offset=" + offset, e);
+        }
     }
 
     @Override
@@ -234,10 +547,14 @@ public class FitsHeap implements FitsElement {
     }
 
     /**
-     * @return the size of the Heap
+     * @return the size of the Heap, see {@link #getSize()} for heaps larger
+     *         than 2GB.
      */
     public int size() {
-        return this.heapSize;
+        if (this.heapSize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("FITS heap > 2 G, use getSize()");
+        }
+        return (int) this.heapSize;
     }
 
     /**
@@ -245,9 +562,15 @@ public class FitsHeap implements FitsElement {
      */
     @Override
     public void write(ArrayDataOutput str) throws FitsException {
+        load();
         allocate();
         try {
-            str.write(this.heap, 0, this.heapSize);
+            long remaining = this.heapSize;
+            for (byte[] chunk : this.chunks) {
+                int count = (int) Math.min(remaining, chunk.length);
+                str.write(chunk, 0, count);
+                remaining -= count;
+            }
         } catch (IOException e) {
             throw new FitsException("Error writing heap:" + e.getMessage(), e);
         }
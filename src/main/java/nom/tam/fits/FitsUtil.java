@@ -32,18 +32,25 @@ package nom.tam.fits;
  */
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import nom.tam.util.ArrayDataInput;
 import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.AsciiFuncs;
+import nom.tam.util.BufferedFile;
 import nom.tam.util.RandomAccess;
 
 /**
@@ -56,6 +63,8 @@ public final class FitsUtil {
 
     private static final int BYTE_REPRESENTING_MAX_ASCII_VALUE = 126;
 
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
     /**
      * the logger to log to.
      */
@@ -187,6 +196,62 @@ public final class FitsUtil {
         return bool;
     }
 
+    /**
+     * Copy bytes from an input to an output without interpreting them. If the
+     * input is a file the bytes are transferred by its channel, which lets the
+     * operating system move the bytes directly; otherwise they are copied in
+     * blocks, so the memory used does not depend on the number of bytes.
+     *
+     * @param in
+     *            the input to copy from, at the position of the first byte
+     * @param out
+     *            the output to copy to
+     * @param size
+     *            the number of bytes to copy
+     * @throws IOException
+     *             if the input ends early or the output could not be written
+     */
+    public static void copy(ArrayDataInput in, ArrayDataOutput out, long size) throws IOException {
+        if (in instanceof BufferedFile) {
+            out.flush();
+            BufferedFile inFile = (BufferedFile) in;
+            WritableByteChannel target = null;
+            long outStart = 0;
+            if (out instanceof BufferedFile) {
+                BufferedFile outFile = (BufferedFile) out;
+                outStart = outFile.getFilePointer();
+                target = outFile.getChannel().position(outStart);
+            } else if (out instanceof OutputStream) {
+                target = Channels.newChannel((OutputStream) out);
+            }
+            if (target != null) {
+                FileChannel source = inFile.getChannel();
+                long start = inFile.getFilePointer();
+                long done = 0;
+                while (done < size) {
+                    long count = source.transferTo(start + done, size - done, target);
+                    if (count <= 0) {
+                        throw new EOFException("Only " + done + " of " + size + " bytes could be copied");
+                    }
+                    done += count;
+                }
+                inFile.seek(start + size);
+                if (out instanceof BufferedFile) {
+                    ((BufferedFile) out).seek(outStart + size);
+                }
+                return;
+            }
+        }
+        byte[] buffer = new byte[(int) Math.min(size, COPY_BUFFER_SIZE)];
+        long done = 0;
+        while (done < size) {
+            int count = (int) Math.min(size - done, buffer.length);
+            in.readFully(buffer, 0, count);
+            out.write(buffer, 0, count);
+            done += count;
+        }
+    }
+
     /**
      * @return Find out where we are in a random access file .
      * @param o
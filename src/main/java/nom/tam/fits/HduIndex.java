@@ -0,0 +1,395 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import nom.tam.util.AsciiFuncs;
+import nom.tam.util.FitsIO;
+import nom.tam.util.RandomAccess;
+
+/**
+ * A compact index of the HDUs of a random accessible FITS file. It is built
+ * in one fast pass over the headers, which only looks at the keywords that
+ * are needed to find the size of the data (and the keywords identifying the
+ * extension). With it every HDU can be reached with a single seek.
+ * <p>
+ * The scan stops quietly at the end of the file, at a truncated header and at
+ * anything that does not look like a FITS header, so that reading the HDU
+ * sequentially still reports the real problem. Only a NAXIS value outside
+ * of 0..999, which would make the scan allocate absurd axis arrays, is
+ * reported right away.
+ */
+public final class HduIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int KEYWORD_LENGTH = 8;
+
+    private static final int VALUE_START = 10;
+
+    /** the largest number of axes FITS allows. */
+    private static final int MAX_NAXIS = 999;
+
+    private int size;
+
+    private long[] headerOffsets = new long[INITIAL_CAPACITY];
+
+    private long[] dataOffsets = new long[INITIAL_CAPACITY];
+
+    private long[] dataSizes = new long[INITIAL_CAPACITY];
+
+    private String[] xtensions = new String[INITIAL_CAPACITY];
+
+    private String[] extnames = new String[INITIAL_CAPACITY];
+
+    private int[] extvers = new int[INITIAL_CAPACITY];
+
+    HduIndex() {
+    }
+
+    /**
+     * Scan the headers of the input, starting at the specified offset. The
+     * file pointer of the input is restored afterwards.
+     * 
+     * @param in
+     *            the input to scan
+     * @param start
+     *            the offset of the first header
+     * @return the index of the HDUs found
+     * @throws IOException
+     *             if the input could not be read
+     * @throws FitsException
+     *             if a header has an invalid NAXIS value
+     */
+    public static HduIndex scan(RandomAccess in, long start) throws IOException, FitsException {
+        HduIndex index = new HduIndex();
+        long position = in.getFilePointer();
+        try {
+            byte[] block = new byte[FitsFactory.FITS_BLOCK_SIZE];
+            long headerOffset = start;
+            while (true) {
+                in.seek(headerOffset);
+                HeaderSummary summary = new HeaderSummary();
+                long dataOffset = headerOffset;
+                boolean end = false;
+                while (!end) {
+                    if (!readBlock(in, block)) {
+                        return index;
+                    }
+                    end = summary.parseBlock(block, dataOffset == headerOffset);
+                    dataOffset += block.length;
+                    if (!summary.valid) {
+                        return index;
+                    }
+                }
+                index.add(headerOffset, dataOffset, summary.dataSize(), summary.xtension, summary.extname, summary.extver);
+                headerOffset = dataOffset + FitsUtil.addPadding(summary.dataSize());
+            }
+        } finally {
+            in.seek(position);
+        }
+    }
+
+    /**
+     * Find an extension by name and version.
+     * 
+     * @param extname
+     *            the value of the EXTNAME keyword
+     * @param extver
+     *            the value of the EXTVER keyword, where a missing EXTVER
+     *            counts as 1
+     * @param from
+     *            the first HDU number to consider
+     * @return the number of the HDU or -1 if there is none.
+     */
+    public int find(String extname, int extver, int from) {
+        for (int index = Math.max(0, from); index < this.size; index++) {
+            if (extname.equals(this.extnames[index]) && extver == this.extvers[index]) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the offset of the data of an HDU.
+     * @param hdu
+     *            the HDU number
+     */
+    public long getDataOffset(int hdu) {
+        return this.dataOffsets[checkIndex(hdu)];
+    }
+
+    /**
+     * @return the size of the data of an HDU, without padding.
+     * @param hdu
+     *            the HDU number
+     */
+    public long getDataSize(int hdu) {
+        return this.dataSizes[checkIndex(hdu)];
+    }
+
+    /**
+     * @return the EXTNAME of an HDU or null if there is none.
+     * @param hdu
+     *            the HDU number
+     */
+    public String getExtname(int hdu) {
+        return this.extnames[checkIndex(hdu)];
+    }
+
+    /**
+     * @return the EXTVER of an HDU, 1 if there is none.
+     * @param hdu
+     *            the HDU number
+     */
+    public int getExtver(int hdu) {
+        return this.extvers[checkIndex(hdu)];
+    }
+
+    /**
+     * @return the offset of the header of an HDU.
+     * @param hdu
+     *            the HDU number
+     */
+    public long getHeaderOffset(int hdu) {
+        return this.headerOffsets[checkIndex(hdu)];
+    }
+
+    /**
+     * @return the offset just behind the (padded) data of an HDU, where the
+     *         next HDU starts.
+     * @param hdu
+     *            the HDU number
+     */
+    public long getNextOffset(int hdu) {
+        return getDataOffset(hdu) + FitsUtil.addPadding(getDataSize(hdu));
+    }
+
+    /**
+     * @return the XTENSION of an HDU or null for the primary HDU.
+     * @param hdu
+     *            the HDU number
+     */
+    public String getXtension(int hdu) {
+        return this.xtensions[checkIndex(hdu)];
+    }
+
+    /**
+     * @return the number of HDUs in the index.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    void add(long headerOffset, long dataOffset, long dataSize, String xtension, String extname, int extver) {
+        if (this.size == this.headerOffsets.length) {
+            int capacity = this.size * 2;
+            this.headerOffsets = Arrays.copyOf(this.headerOffsets, capacity);
+            this.dataOffsets = Arrays.copyOf(this.dataOffsets, capacity);
+            this.dataSizes = Arrays.copyOf(this.dataSizes, capacity);
+            this.xtensions = Arrays.copyOf(this.xtensions, capacity);
+            this.extnames = Arrays.copyOf(this.extnames, capacity);
+            this.extvers = Arrays.copyOf(this.extvers, capacity);
+        }
+        this.headerOffsets[this.size] = headerOffset;
+        this.dataOffsets[this.size] = dataOffset;
+        this.dataSizes[this.size] = dataSize;
+        this.xtensions[this.size] = xtension;
+        this.extnames[this.size] = extname;
+        this.extvers[this.size] = extver;
+        this.size++;
+    }
+
+    private int checkIndex(int hdu) {
+        if (hdu < 0 || hdu >= this.size) {
+            throw new IndexOutOfBoundsException("No HDU " + hdu + " in index of " + this.size);
+        }
+        return hdu;
+    }
+
+    private static boolean readBlock(RandomAccess in, byte[] block) throws IOException {
+        try {
+            in.readFully(block);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The keywords of a header that are needed for the index.
+     */
+    private static final class HeaderSummary {
+
+        private boolean valid = true;
+
+        private String xtension;
+
+        private String extname;
+
+        private int extver = 1;
+
+        private int bitpix;
+
+        private long[] axes = new long[0];
+
+        private boolean groups;
+
+        private long pcount;
+
+        private long gcount = 1;
+
+        /**
+         * Same rules as {@link Header#trueDataSize()}.
+         * 
+         * @return the size of the data without padding.
+         */
+        private long dataSize() {
+            if (this.axes.length == 0) {
+                return 0L;
+            }
+            int startAxis = 0;
+            if (this.groups && this.axes.length > 1 && this.axes[0] == 0) {
+                startAxis = 1;
+            }
+            long size = 1;
+            for (int i = startAxis; i < this.axes.length; i++) {
+                size *= this.axes[i];
+            }
+            size += this.pcount;
+            size *= this.gcount;
+            return size * (Math.abs(this.bitpix) / FitsIO.BITS_OF_1_BYTE);
+        }
+
+        /**
+         * @return true if the END card was found in the block.
+         */
+        private boolean parseBlock(byte[] block, boolean firstBlock) throws FitsException {
+            for (int card = 0; card < block.length; card += HeaderCard.FITS_HEADER_CARD_SIZE) {
+                String key = AsciiFuncs.asciiString(block, card, KEYWORD_LENGTH).trim();
+                if (firstBlock && card == 0) {
+                    if ("XTENSION".equals(key)) {
+                        this.xtension = stringValue(block, card);
+                    } else if (!"SIMPLE".equals(key)) {
+                        this.valid = false;
+                        return true;
+                    }
+                } else if ("END".equals(key)) {
+                    return true;
+                } else if (key.startsWith("NAXIS")) {
+                    parseAxis(key, block, card);
+                } else if ("BITPIX".equals(key)) {
+                    this.bitpix = (int) longValue(block, card, 0);
+                } else if ("PCOUNT".equals(key)) {
+                    this.pcount = longValue(block, card, 0);
+                } else if ("GCOUNT".equals(key)) {
+                    this.gcount = longValue(block, card, 1);
+                } else if ("GROUPS".equals(key)) {
+                    this.groups = "T".equals(rawValue(block, card));
+                } else if ("EXTNAME".equals(key)) {
+                    this.extname = stringValue(block, card);
+                } else if ("EXTVER".equals(key)) {
+                    this.extver = (int) longValue(block, card, 1);
+                }
+            }
+            return false;
+        }
+
+        private void parseAxis(String key, byte[] block, int card) throws FitsException {
+            if (key.length() == "NAXIS".length()) {
+                long naxis = longValue(block, card, 0);
+                if (naxis < 0 || naxis > MAX_NAXIS) {
+                    throw new FitsException("Invalid NAXIS value " + naxis);
+                }
+                this.axes = Arrays.copyOf(this.axes, (int) naxis);
+                return;
+            }
+            try {
+                int axis = Integer.parseInt(key.substring("NAXIS".length()));
+                if (axis >= 1 && axis <= this.axes.length) {
+                    this.axes[axis - 1] = longValue(block, card, 0);
+                }
+            } catch (NumberFormatException e) {
+                // some other keyword starting with NAXIS, not for us.
+                return;
+            }
+        }
+
+        private static String rawValue(byte[] block, int card) {
+            if (block[card + KEYWORD_LENGTH] != '=') {
+                return "";
+            }
+            String value = AsciiFuncs.asciiString(block, card + VALUE_START, HeaderCard.FITS_HEADER_CARD_SIZE - VALUE_START);
+            int comment = value.indexOf('/');
+            if (comment >= 0) {
+                value = value.substring(0, comment);
+            }
+            return value.trim();
+        }
+
+        private static long longValue(byte[] block, int card, long defaultValue) {
+            try {
+                return Long.parseLong(rawValue(block, card));
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        private static String stringValue(byte[] block, int card) {
+            if (block[card + KEYWORD_LENGTH] != '=') {
+                return null;
+            }
+            String value = AsciiFuncs.asciiString(block, card + VALUE_START, HeaderCard.FITS_HEADER_CARD_SIZE - VALUE_START);
+            int start = value.indexOf('\'');
+            if (start < 0) {
+                return rawValue(block, card);
+            }
+            StringBuilder result = new StringBuilder();
+            for (int i = start + 1; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < value.length() && value.charAt(i + 1) == '\'') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                result.append(c);
+            }
+            return result.toString().trim();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import nom.tam.util.ArrayDataInput;
+import nom.tam.util.Cursor;
+import nom.tam.util.RandomAccess;
+import nom.tam.util.SafeClose;
+
+/**
+ * A persistent cache of the HDU index (see {@link HduIndex}) and of the parsed
+ * header cards of a FITS file. The cache is written to an index cache file
+ * next to the FITS file, or in the directory set with
+ * {@link FitsFactory#setIndexCacheDirectory(java.io.File)}, and is only used
+ * while the length and the modification time of the FITS file are unchanged.
+ * <p>
+ * With a valid cache a {@link Fits} object restores the headers of its HDUs
+ * from the cache instead of reading and parsing them, so opening a file with
+ * many extensions takes almost constant time. Headers with duplicate keywords
+ * are not cached, they are read from the file as usual.
+ */
+public final class HduIndexCache {
+
+    private static final Logger LOG = Logger.getLogger(HduIndexCache.class.getName());
+
+    /**
+     * The file name extension of index cache files.
+     */
+    public static final String SUFFIX = ".hduindex";
+
+    private static final int MAGIC = 0x4e544849;
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int NOT_CACHED = -1;
+
+    private final HduIndex index;
+
+    private final List<CachedCard[]> headers;
+
+    private HduIndexCache(HduIndex index, List<CachedCard[]> headers) {
+        this.index = index;
+        this.headers = headers;
+    }
+
+    /**
+     * Get the cache of a FITS file. A valid index cache file is read, if there
+     * is none the input is scanned and a new index cache file is written.
+     * 
+     * @param file
+     *            the FITS file
+     * @param in
+     *            the FITS file opened for random access, positioned at the
+     *            first HDU
+     * @return the cache of the file
+     * @throws IOException
+     *             if the input could not be scanned
+     * @throws FitsException
+     *             if a header has an invalid NAXIS value
+     */
+    public static HduIndexCache open(File file, RandomAccess in) throws IOException, FitsException {
+        File cacheFile = getCacheFile(file);
+        HduIndexCache cache = read(cacheFile, file);
+        if (cache == null) {
+            cache = build(in);
+            try {
+                cache.write(cacheFile, file);
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Could not write index cache " + cacheFile, e);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return the index cache file of a FITS file.
+     * @param file
+     *            the FITS file
+     */
+    public static File getCacheFile(File file) {
+        File directory = FitsFactory.getIndexCacheDirectory();
+        if (directory == null) {
+            return new File(file.getPath() + SUFFIX);
+        }
+        String path = file.getAbsolutePath();
+        return new File(directory, file.getName() + '-' + Integer.toHexString(path.hashCode()) + SUFFIX);
+    }
+
+    /**
+     * Scan the input and read all headers that can be cached.
+     * 
+     * @param in
+     *            the input positioned at the first HDU
+     * @return the new cache
+     * @throws IOException
+     *             if the input could not be scanned
+     * @throws FitsException
+     *             if a header has an invalid NAXIS value
+     */
+    static HduIndexCache build(RandomAccess in) throws IOException, FitsException {
+        long position = in.getFilePointer();
+        HduIndex index = HduIndex.scan(in, position);
+        List<CachedCard[]> headers = new ArrayList<CachedCard[]>(index.size());
+        try {
+            for (int hdu = 0; hdu < index.size(); hdu++) {
+                in.seek(index.getHeaderOffset(hdu));
+                headers.add(readCards(in));
+            }
+        } finally {
+            in.seek(position);
+        }
+        return new HduIndexCache(index, headers);
+    }
+
+    /**
+     * Read an index cache file.
+     * 
+     * @param cacheFile
+     *            the index cache file
+     * @param file
+     *            the FITS file it belongs to
+     * @return the cache or null if there is no valid index cache file for the
+     *         current state of the FITS file.
+     */
+    static HduIndexCache read(File cacheFile, File file) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != file.length() || in.readLong() != file.lastModified()) {
+                return null;
+            }
+            int size = in.readInt();
+            HduIndex index = new HduIndex();
+            List<CachedCard[]> headers = new ArrayList<CachedCard[]>(size);
+            for (int hdu = 0; hdu < size; hdu++) {
+                index.add(in.readLong(), in.readLong(), in.readLong(), readString(in), readString(in), in.readInt());
+                int count = in.readInt();
+                CachedCard[] cards = null;
+                if (count != NOT_CACHED) {
+                    cards = new CachedCard[count];
+                    for (int card = 0; card < count; card++) {
+                        cards[card] = new CachedCard(readString(in), readString(in), readString(in), in.readBoolean());
+                    }
+                }
+                headers.add(cards);
+            }
+            return new HduIndexCache(index, headers);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Ignoring unreadable index cache " + cacheFile, e);
+            return null;
+        } finally {
+            SafeClose.close(in);
+        }
+    }
+
+    private static CachedCard[] readCards(RandomAccess in) {
+        try {
+            Header header = Header.readHeader(in);
+            if (header == null || header.hadDuplicates()) {
+                return null;
+            }
+            CachedCard[] cards = new CachedCard[header.getNumberOfCards()];
+            Cursor<String, HeaderCard> iterator = header.iterator();
+            for (int card = 0; iterator.hasNext(); card++) {
+                HeaderCard headerCard = iterator.next();
+                cards[card] = new CachedCard(headerCard.getKey(), headerCard.getValue(), headerCard.getComment(), headerCard.isStringValue());
+            }
+            return cards;
+        } catch (TruncatedFileException e) {
+            // the header will be read (and fail) again when the HDU is read.
+            LOG.log(Level.FINE, "Not caching truncated header", e);
+            return null;
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Not caching unreadable header", e);
+            return null;
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * @return the HDU index of the file.
+     */
+    public HduIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Restore a cached header of an HDU. The input must be positioned at the
+     * header of the HDU, it is positioned at the data of the HDU afterwards,
+     * just like after reading the header.
+     * 
+     * @param hdu
+     *            the HDU number
+     * @param in
+     *            the input of the FITS file
+     * @return the header or null if the header is not cached or the input is
+     *         not positioned at the header.
+     * @throws IOException
+     *             if the input could not be positioned.
+     */
+    Header restoreHeader(int hdu, ArrayDataInput in) throws IOException {
+        if (hdu >= this.headers.size() || this.headers.get(hdu) == null || !(in instanceof RandomAccess)) {
+            return null;
+        }
+        RandomAccess randomAccess = (RandomAccess) in;
+        long headerOffset = this.index.getHeaderOffset(hdu);
+        if (randomAccess.getFilePointer() != headerOffset) {
+            return null;
+        }
+        Header header = new Header();
+        try {
+            for (CachedCard card : this.headers.get(hdu)) {
+                header.addLine(HeaderCard.restore(card.key, card.value, card.comment, card.isString));
+            }
+        } catch (HeaderCardException e) {
+            LOG.log(Level.FINE, "Could not restore header, reading it instead", e);
+            return null;
+        }
+        long dataOffset = this.index.getDataOffset(hdu);
+        header.restored(in, headerOffset, (int) ((dataOffset - headerOffset) / HeaderCard.FITS_HEADER_CARD_SIZE));
+        randomAccess.seek(dataOffset);
+        return header;
+    }
+
+    /**
+     * Write the cache to an index cache file. The file is written under a
+     * temporary name first, so that concurrent readers never see a partial
+     * file.
+     * 
+     * @param cacheFile
+     *            the index cache file
+     * @param file
+     *            the FITS file the cache belongs to
+     * @throws IOException
+     *             if the file could not be written
+     */
+    void write(File cacheFile, File file) throws IOException {
+        File directory = cacheFile.getAbsoluteFile().getParentFile();
+        File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(this.index.size());
+            for (int hdu = 0; hdu < this.index.size(); hdu++) {
+                out.writeLong(this.index.getHeaderOffset(hdu));
+                out.writeLong(this.index.getDataOffset(hdu));
+                out.writeLong(this.index.getDataSize(hdu));
+                writeString(out, this.index.getXtension(hdu));
+                writeString(out, this.index.getExtname(hdu));
+                out.writeInt(this.index.getExtver(hdu));
+                CachedCard[] cards = this.headers.get(hdu);
+                if (cards == null) {
+                    out.writeInt(NOT_CACHED);
+                    continue;
+                }
+                out.writeInt(cards.length);
+                for (CachedCard card : cards) {
+                    writeString(out, card.key);
+                    writeString(out, card.value);
+                    writeString(out, card.comment);
+                    out.writeBoolean(card.isString);
+                }
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(cacheFile) && !(cacheFile.delete() && tempFile.renameTo(cacheFile))) {
+                throw new IOException("Could not rename " + tempFile + " to " + cacheFile);
+            }
+        } finally {
+            SafeClose.close(out);
+            if (tempFile.exists() && !tempFile.delete()) {
+                LOG.fine("Could not delete " + tempFile);
+            }
+        }
+    }
+
+    /**
+     * The parsed parts of a header card.
+     */
+    private static final class CachedCard {
+
+        private final String key;
+
+        private final String value;
+
+        private final String comment;
+
+        private final boolean isString;
+
+        private CachedCard(String key, String value, String comment, boolean isString) {
+            this.key = key;
+            this.value = value;
+            this.comment = comment;
+            this.isString = isString;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package nom.tam.fits;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import nom.tam.util.ArrayDataOutput;
+
+/**
+ * A single pass stream over the HDUs of a FITS input that does not retain the
+ * HDUs it has passed. Each HDU is presented as an {@link Entry} that gives
+ * access to the header and allows its data to be read once; if the data is not
+ * requested it is skipped when the stream moves on. Moving on (through
+ * {@link #next()} or the iterator) ends the access to the data of the previous
+ * entry, so the memory used is bounded by the largest single HDU.
+ * 
+ * <pre>
+ * for (HduStream.Entry entry : fits.stream()) {
+ *     if (entry.getHeader().getIntValue(Standard.NAXIS) == 2) {
+ *         process(entry.readHDU());
+ *     }
+ * }
+ * </pre>
+ */
+public final class HduStream implements Iterable<HduStream.Entry> {
+
+    /**
+     * An HDU of the stream, valid until the stream moves to the next HDU.
+     */
+    public final class Entry {
+
+        private final Header header;
+
+        private final int number;
+
+        private boolean consumed;
+
+        private Entry(Header header, int number) {
+            this.header = header;
+            this.number = number;
+        }
+
+        /**
+         * @return the header of the HDU.
+         */
+        public Header getHeader() {
+            return this.header;
+        }
+
+        /**
+         * @return the number of the HDU in the input, the primary HDU being 0.
+         */
+        public int getNumber() {
+            return this.number;
+        }
+
+        /**
+         * @return true if the data of this HDU can still be read.
+         */
+        public boolean isDataAvailable() {
+            return !this.consumed;
+        }
+
+        /**
+         * Read the data of this HDU. This is possible only once, and only
+         * while this entry is the current one of the stream.
+         * 
+         * @return the data of the HDU.
+         * @throws FitsException
+         *             if the data was already read or skipped, or could not be
+         *             read.
+         */
+        public Data readData() throws FitsException {
+            if (this.consumed) {
+                throw new FitsException("The data of HDU " + this.number + " is no longer available");
+            }
+            this.consumed = true;
+            return HduStream.this.fits.readStreamedData(this.header);
+        }
+
+        /**
+         * Read the data of this HDU and combine it with the header. This is
+         * possible only once, and only while this entry is the current one of
+         * the stream.
+         * 
+         * @return the HDU.
+         * @throws FitsException
+         *             if the data was already read or skipped, or could not be
+         *             read.
+         */
+        public BasicHDU<?> readHDU() throws FitsException {
+            return FitsFactory.hduFactory(this.header, readData());
+        }
+
+        /**
+         * Copy the data of this HDU, including its padding, to an output
+         * without interpreting it. Large files are copied through their
+         * channels, otherwise in blocks of bounded size, so the data never
+         * needs to fit into memory. This is possible only once, and only while
+         * this entry is the current one of the stream.
+         * 
+         * @param out
+         *            the output to copy the data to, usually right after the
+         *            header of this HDU was written to it.
+         * @return the number of bytes copied.
+         * @throws FitsException
+         *             if the data was already read or skipped, or could not be
+         *             copied.
+         */
+        public long copyData(ArrayDataOutput out) throws FitsException {
+            if (this.consumed) {
+                throw new FitsException("The data of HDU " + this.number + " is no longer available");
+            }
+            this.consumed = true;
+            return HduStream.this.fits.copyStreamedData(this.header, out);
+        }
+
+        private void skip() throws IOException {
+            if (!this.consumed) {
+                this.consumed = true;
+                HduStream.this.fits.skipStreamedData(this.header);
+            }
+        }
+    }
+
+    private final Fits fits;
+
+    private Entry current;
+
+    private Entry next;
+
+    private int number;
+
+    private boolean atEnd;
+
+    private boolean iterated;
+
+    /**
+     * Create a stream over the remaining HDUs of a FITS object.
+     * 
+     * @param fits
+     *            the FITS object whose input is streamed.
+     */
+    HduStream(Fits fits) {
+        this.fits = fits;
+        this.number = fits.streamedHDUNumber();
+    }
+
+    /**
+     * Move to the next HDU, skipping the data of the current one if it was not
+     * read.
+     * 
+     * @return the next HDU, or null at the end of the input.
+     * @throws FitsException
+     *             if the header could not be read
+     * @throws IOException
+     *             if the underlying stream failed
+     */
+    public Entry next() throws FitsException, IOException {
+        if (this.next == null) {
+            this.next = readNext();
+        }
+        this.current = this.next;
+        this.next = null;
+        return this.current;
+    }
+
+    private Entry readNext() throws FitsException, IOException {
+        if (this.atEnd) {
+            return null;
+        }
+        if (this.current != null) {
+            this.current.skip();
+        }
+        Header header = this.fits.readStreamedHeader();
+        if (header == null) {
+            this.atEnd = true;
+            return null;
+        }
+        return new Entry(header, this.number++);
+    }
+
+    /**
+     * The iterator can only be requested once. Checking for a next element
+     * already moves the stream, so the data of the previous entry is no longer
+     * available after {@link Iterator#hasNext()}. Read errors are reported as
+     * {@link IllegalStateException}s with the original exception as cause.
+     * 
+     * @return an iterator over the remaining HDUs.
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        if (this.iterated) {
+            throw new IllegalStateException("The HDU stream can only be iterated once");
+        }
+        this.iterated = true;
+        return new Iterator<Entry>() {
+
+            @Override
+            public boolean hasNext() {
+                if (HduStream.this.next == null) {
+                    try {
+                        HduStream.this.next = readNext();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Could not read the next HDU", e);
+                    }
+                }
+                return HduStream.this.next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return HduStream.this.next();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not read the next HDU", e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
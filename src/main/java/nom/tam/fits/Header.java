@@ -1295,6 +1295,26 @@ public class Header implements FitsElement {
         deleteKey(key);
     }
 
+    /**
+     * Mark a header that was restored from its cards as read from the input,
+     * with the same state as after {@link #read(ArrayDataInput)}.
+     *
+     * @param dis
+     *            the input the header is in
+     * @param offset
+     *            the offset of the header in the input
+     * @param physicalCards
+     *            the number of cards in the input, including duplicates
+     */
+    void restored(ArrayDataInput dis, long offset, int physicalCards) {
+        this.fileOffset = offset;
+        this.input = dis;
+        this.originalCardCount = physicalCards;
+        if (containsKey(LONGSTRN)) {
+            FitsFactory.setLongStringsEnabled(true);
+        }
+    }
+
     /** Reset the file pointer to the beginning of the header */
     @Override
     public boolean reset() {
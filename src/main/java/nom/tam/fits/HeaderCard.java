@@ -17,7 +17,6 @@ import java.util.Arrays;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 import nom.tam.fits.FitsFactory.FitsSettings;
 import nom.tam.fits.header.NonStandard;
@@ -83,18 +82,32 @@ public class HeaderCard implements CursorValue<String> {
 
     private static final String HIERARCH_WITH_DOT = NonStandard.HIERARCH.key() + ".";
 
+    private static final BigDecimal LONG_MAX_VALUE_AS_BIG_DECIMAL = BigDecimal.valueOf(Long.MAX_VALUE);
+
     /**
-     * regexp for IEEE floats
+     * max number of significant digits of a decimal value that is always
+     * represented exactly enough by a double.
      */
-    private static final Pattern IEEE_REGEX = Pattern.compile("[+-]?(?=\\d*[.eE])(?=\\.?\\d)\\d*\\.?\\d*(?:[eE][+-]?\\d+)?");
-    private static final Pattern DBLSCI_REGEX = Pattern.compile("[+-]?(?=\\d*[.dD])(?=\\.?\\d)\\d*\\.?\\d*(?:[dD][+-]?\\d+)?");
+    private static final int MAX_DOUBLE_DIGITS = 15;
 
-    private static final BigDecimal LONG_MAX_VALUE_AS_BIG_DECIMAL = BigDecimal.valueOf(Long.MAX_VALUE);
+    /**
+     * max number of digits (before the decimal point) of an integral decimal
+     * value that surely fits in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * max decimal exponent (in both directions) of a value that is surely in
+     * the normal range of a double.
+     */
+    private static final int MAX_DOUBLE_EXPONENT = 300;
 
     /**
-     * regexp for numbers.
+     * max number of exponent digits that are scanned without overflow.
      */
-    private static final Pattern LONG_REGEX = Pattern.compile("[+-]?[0-9][0-9]*");
+    private static final int MAX_EXPONENT_DIGITS = 4;
+
+    private static final int DECIMAL_RADIX = 10;
 
     /**
      * max number of characters an integer can have.
@@ -168,6 +181,15 @@ public class HeaderCard implements CursorValue<String> {
      */
     private String value;
 
+    /**
+     * The card image of a value card that was read in lazy mode (see
+     * {@link FitsFactory#setLazyHeaderParsing(boolean)}) and whose value and
+     * comment have not been parsed yet, otherwise null. It is cleared only
+     * after the parsed fields are set, so that threads sharing a header see
+     * either the card or the parsed fields.
+     */
+    private volatile String lazyCard;
+
     /**
      * @return a created HeaderCard from a FITS card string.
      * @param card
@@ -370,12 +392,90 @@ public class HeaderCard implements CursorValue<String> {
      * @return the type to fit the value
      */
     private static Class<?> getDecimalNumberType(String value) {
+        int length = value.length();
+        int index = 0;
+        if (index < length && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+            index++;
+        }
+        int digits = 0;
+        int trailingZeros = 0;
+        int fractionDigits = 0;
+        boolean anyDigit = false;
+        boolean decimalPoint = false;
+        for (; index < length; index++) {
+            char c = value.charAt(index);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (decimalPoint) {
+                    fractionDigits++;
+                }
+                if (c == '0') {
+                    if (digits > 0) {
+                        trailingZeros++;
+                    }
+                } else {
+                    digits += trailingZeros + 1;
+                    trailingZeros = 0;
+                }
+            } else if (c == '.' && !decimalPoint) {
+                decimalPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            return null;
+        }
+        int exponent = 0;
+        if (index < length) {
+            if (!isExponentChar(value.charAt(index))) {
+                return null;
+            }
+            index++;
+            boolean negative = index < length && value.charAt(index) == '-';
+            if (index < length && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+                index++;
+            }
+            int exponentStart = index;
+            for (; index < length && value.charAt(index) >= '0' && value.charAt(index) <= '9'; index++) {
+                if (index - exponentStart < MAX_EXPONENT_DIGITS) {
+                    exponent = exponent * DECIMAL_RADIX + value.charAt(index) - '0';
+                }
+            }
+            if (index == exponentStart || index != length) {
+                return null;
+            }
+            if (index - exponentStart > MAX_EXPONENT_DIGITS) {
+                return getBigDecimalNumberType(value);
+            }
+            if (negative) {
+                exponent = -exponent;
+            }
+        }
+        if (digits == 0) {
+            return Double.class;
+        }
+        // the value is (significant digits) * 10^scale
+        int scale = exponent - fractionDigits + trailingZeros;
+        boolean mayExceedLong = scale >= 0 && digits + scale > MAX_LONG_DIGITS;
+        if (digits <= MAX_DOUBLE_DIGITS && !mayExceedLong && Math.abs(digits + scale) < MAX_DOUBLE_EXPONENT) {
+            return Double.class;
+        }
+        return getBigDecimalNumberType(value);
+    }
 
+    /**
+     * detect the decimal type of a value that needs a closer look, because it
+     * has more significant digits than a double or may be too large for a
+     * long.
+     *
+     * @param value
+     *            the String value to check.
+     * @return the type to fit the value
+     */
+    private static Class<?> getBigDecimalNumberType(String value) {
         // Convert the Double Scientific Notation specified by FITS to pure IEEE.
-        if (HeaderCard.DBLSCI_REGEX.matcher(value).find()) {
-            value = value.replace('d', 'e');
-            value = value.replace('D', 'E');
-        }
+        value = value.replace('d', 'e').replace('D', 'E');
 
         BigDecimal bigDecimal = new BigDecimal(value);
         if (bigDecimal.abs().compareTo(HeaderCard.LONG_MAX_VALUE_AS_BIG_DECIMAL) > 0 && bigDecimal.remainder(BigDecimal.ONE).compareTo(BigDecimal.ZERO) == 0) {
@@ -387,6 +487,34 @@ public class HeaderCard implements CursorValue<String> {
         }
     }
 
+    private static boolean isExponentChar(char c) {
+        return c == 'e' || c == 'E' || c == 'd' || c == 'D';
+    }
+
+    /**
+     * @return true if the value is an integer, an optional sign followed by
+     *         digits only.
+     * @param value
+     *            the String value to check.
+     */
+    private static boolean isIntegerValue(String value) {
+        int length = value.length();
+        int index = 0;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+            index++;
+        }
+        if (index == length) {
+            return false;
+        }
+        for (; index < length; index++) {
+            char c = value.charAt(index);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static Class<?> getIntegerNumberType(String value) {
         int length = value.length();
         if (value.charAt(0) == '-' || value.charAt(0) == '+') {
@@ -501,9 +629,82 @@ public class HeaderCard implements CursorValue<String> {
             this.comment = card.substring(MAX_KEYWORD_LENGTH).trim();
             return;
         }
+        // a possible long string must be read completely now, it continues in
+        // the following cards. Cards that may need a repair are parsed now
+        // too, with the settings used for reading.
+        if (FitsFactory.isLazyHeaderParsing() && isParsableLater(card) && !(FitsFactory.isLongStringsEnabled() && isLongStringStart(card))) {
+            this.lazyCard = card;
+            return;
+        }
         extractValueCommentFromString(dis, card);
     }
 
+    /**
+     * @param card
+     *            the image of a key/value card
+     * @return true if the value is a string whose last non blank character
+     *         is a '&amp;', so that it continues in the following cards.
+     */
+    private static boolean isLongStringStart(String card) {
+        int start = valueStart(card);
+        if (start >= card.length() || card.charAt(start) != '\'') {
+            return false;
+        }
+        int end = closingQuote(card, start);
+        if (end < 0) {
+            end = card.length();
+        }
+        int last = end - 1;
+        while (last > start && card.charAt(last) == ' ') {
+            last--;
+        }
+        return last > start && card.charAt(last) == '&';
+    }
+
+    /**
+     * @param card
+     *            the image of a key/value card
+     * @return true if parsing the value of the card can neither fail nor need
+     *         a repair, i.e. the card contains no quote or its value is a
+     *         complete string.
+     */
+    private static boolean isParsableLater(String card) {
+        int quote = card.indexOf('\'');
+        return quote < 0 || quote == valueStart(card) && closingQuote(card, quote) >= 0;
+    }
+
+    /**
+     * @return the index of the first non blank character after the '=' of a
+     *         key/value card.
+     */
+    private static int valueStart(String card) {
+        int start = MAX_KEYWORD_LENGTH + 1;
+        while (start < card.length() && card.charAt(start) == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * @return the index of the quote that closes the string starting at the
+     *         opening quote, skipping doubled quotes, or -1 if the string is
+     *         not closed.
+     */
+    private static int closingQuote(String card, int openingQuote) {
+        int end = openingQuote + 1;
+        while (end < card.length()) {
+            if (card.charAt(end) == '\'') {
+                if (end + 1 < card.length() && card.charAt(end + 1) == '\'') {
+                    end++;
+                } else {
+                    return end;
+                }
+            }
+            end++;
+        }
+        return -1;
+    }
+
     /**
      * Create a HeaderCard from its component parts
      *
@@ -790,7 +991,11 @@ public class HeaderCard implements CursorValue<String> {
             throw new HeaderCardException("Keyword too long");
         }
         if (value != null) {
-            value = value.replaceAll(" *$", "");
+            int end = value.length();
+            while (end > 0 && value.charAt(end - 1) == ' ') {
+                end--;
+            }
+            value = value.substring(0, end);
 
             if (value.startsWith("'")) {
                 if (value.charAt(value.length() - 1) != '\'') {
@@ -816,6 +1021,7 @@ public class HeaderCard implements CursorValue<String> {
      *         card will return 1. only long stings can return more than one.
      */
     public int cardSize() {
+        parseLazyCard();
         if (this.isString && this.value != null && FitsFactory.isLongStringsEnabled()) {
             int maxStringValueLength = maxStringValueLength();
             String stringValue = this.value.replace("'", "''");
@@ -829,15 +1035,39 @@ public class HeaderCard implements CursorValue<String> {
     }
 
     public HeaderCard copy() throws HeaderCardException {
+        parseLazyCard();
         HeaderCard copy = new HeaderCard(this.key, null, this.comment, this.nullable, this.isString);
         copy.value = this.value;
         return copy;
     }
 
+    /**
+     * Recreate a card that was read before from its parsed parts, the value is
+     * taken as it is without checking it again.
+     *
+     * @param key
+     *            the keyword
+     * @param value
+     *            the parsed value
+     * @param comment
+     *            the comment
+     * @param isString
+     *            is the value a string value
+     * @return the card
+     * @throws HeaderCardException
+     *             if the keyword is not valid with the current settings
+     */
+    static HeaderCard restore(String key, String value, String comment, boolean isString) throws HeaderCardException {
+        HeaderCard card = new HeaderCard(key, null, comment, false, isString);
+        card.value = value;
+        return card;
+    }
+
     /**
      * @return the comment from this card
      */
     public String getComment() {
+        parseLazyCard();
         return this.comment;
     }
 
@@ -853,6 +1083,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the value from this card
      */
     public String getValue() {
+        parseLazyCard();
         return this.value;
     }
 
@@ -866,6 +1097,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the value from this card as a specific type
      */
     public <T> T getValue(Class<T> clazz, T defaultValue) {
+        parseLazyCard();
         if (String.class.isAssignableFrom(clazz)) {
             return clazz.cast(this.value);
         } else if (this.value == null || this.value.isEmpty()) {
@@ -874,15 +1106,35 @@ public class HeaderCard implements CursorValue<String> {
             return clazz.cast(getBooleanValue((Boolean) defaultValue));
         }
 
-        // Convert the Double Scientific Notation specified by FITS to pure IEEE.
-        if (HeaderCard.DBLSCI_REGEX.matcher(value).find()) {
-            value = value.replace('d', 'e');
-            value = value.replace('D', 'E');
+        // the common cases are parsed directly, BigDecimal is only used when
+        // the value does not fit in a long or double.
+        String trimmedValue = this.value.trim();
+        boolean isInteger = isIntegerValue(trimmedValue);
+        if (isInteger) {
+            try {
+                if (Integer.class.isAssignableFrom(clazz)) {
+                    return clazz.cast(Integer.parseInt(trimmedValue));
+                } else if (Long.class.isAssignableFrom(clazz)) {
+                    return clazz.cast(Long.parseLong(trimmedValue));
+                }
+            } catch (NumberFormatException e) {
+                // too large, let BigDecimal report it.
+            }
+        }
+        if (isInteger || Double.class.equals(getDecimalNumberType(trimmedValue))) {
+            String ieeeValue = trimmedValue.replace('d', 'e').replace('D', 'E');
+            if (Double.class.isAssignableFrom(clazz)) {
+                return clazz.cast(Double.parseDouble(ieeeValue));
+            } else if (Float.class.isAssignableFrom(clazz)) {
+                return clazz.cast(Float.parseFloat(ieeeValue));
+            }
         }
 
         BigDecimal parsedValue;
         try {
-            parsedValue = new BigDecimal(this.value);
+            // Convert the Double Scientific Notation specified by FITS to pure
+            // IEEE.
+            parsedValue = new BigDecimal(trimmedValue.replace('d', 'e').replace('D', 'E'));
         } catch (NumberFormatException e) {
             return defaultValue;
         }
@@ -907,6 +1159,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return Is this a key/value card?
      */
     public boolean isKeyValuePair() {
+        parseLazyCard();
         return this.key != null && this.value != null;
     }
 
@@ -914,6 +1167,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return if this card contain does a string value?
      */
     public boolean isStringValue() {
+        parseLazyCard();
         return this.isString;
     }
 
@@ -924,6 +1178,7 @@ public class HeaderCard implements CursorValue<String> {
      *            the comment to set.
      */
     public void setComment(String comment) {
+        parseLazyCard();
         this.comment = comment;
     }
 
@@ -935,6 +1190,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(BigDecimal update) {
+        parseLazyCard();
         this.value = dblString(update, spaceAvailableForValue(this.key));
         return this;
     }
@@ -949,6 +1205,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(BigDecimal update, int precision) {
+        parseLazyCard();
         this.value = dblString(update, precision, spaceAvailableForValue(this.key));
         return this;
     }
@@ -966,6 +1223,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setExpValue(BigDecimal update, int precision, boolean useD) {
+        parseLazyCard();
         this.value = expString(update, precision, useD, spaceAvailableForValue(this.key));
         return this;
     }
@@ -980,6 +1238,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setExpValue(BigDecimal update, int precision) {
+        parseLazyCard();
         this.value = expString(update, precision, spaceAvailableForValue(this.key));
         return this;
     }
@@ -992,6 +1251,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(boolean update) {
+        parseLazyCard();
         this.value = update ? "T" : "F";
         return this;
     }
@@ -1004,6 +1264,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(double update) {
+        parseLazyCard();
         this.value = dblString(update, spaceAvailableForValue(this.key));
         return this;
     }
@@ -1018,6 +1279,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(double update, int precision) {
+        parseLazyCard();
         this.value = dblString(update, precision, spaceAvailableForValue(this.key));
         return this;
     }
@@ -1035,6 +1297,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setExpValue(double update, int precision, boolean useD) {
+        parseLazyCard();
         this.value = expString(update, precision, useD, spaceAvailableForValue(this.key));
         return this;
     }
@@ -1049,6 +1312,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setExpValue(double update, int precision) {
+        parseLazyCard();
         this.value = expString(update, precision, spaceAvailableForValue(this.key));
         return this;
     }
@@ -1062,6 +1326,7 @@ public class HeaderCard implements CursorValue<String> {
      */
     @Deprecated
     public HeaderCard setValue(float update) {
+        parseLazyCard();
         this.value = dblString(floatToBigDecimal(update), spaceAvailableForValue(this.key));
         return this;
     }
@@ -1077,6 +1342,7 @@ public class HeaderCard implements CursorValue<String> {
      */
     @Deprecated
     public HeaderCard setValue(float update, int precision) {
+        parseLazyCard();
         this.value = dblString(floatToBigDecimal(update), precision, spaceAvailableForValue(this.key));
         return this;
     }
@@ -1089,6 +1355,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(int update) {
+        parseLazyCard();
         this.value = String.valueOf(update);
         return this;
     }
@@ -1101,6 +1368,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(long update) {
+        parseLazyCard();
         this.value = String.valueOf(update);
         return this;
     }
@@ -1113,6 +1381,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the HeaderCard itself
      */
     public HeaderCard setValue(String update) {
+        parseLazyCard();
         this.value = update;
         return this;
     }
@@ -1136,6 +1405,7 @@ public class HeaderCard implements CursorValue<String> {
      * @return the string representing the card.
      */
     protected String toString(final FitsSettings settings) {
+        parseLazyCard();
         int alignSmallString = NORMAL_SMALL_STRING_ALIGN_POSITION;
         int alignPosition = NORMAL_ALIGN_POSITION;
         FitsLineAppender buf = new FitsLineAppender();
@@ -1211,17 +1481,17 @@ public class HeaderCard implements CursorValue<String> {
      * @return the type of the value.
      */
     public Class<?> valueType() {
+        parseLazyCard();
         if (this.isString) {
             return String.class;
         } else if (this.value != null) {
             String trimedValue = this.value.trim();
             if ("T".equals(trimedValue) || "F".equals(trimedValue)) {
                 return Boolean.class;
-            } else if (HeaderCard.LONG_REGEX.matcher(trimedValue).matches()) {
+            } else if (isIntegerValue(trimedValue)) {
                 return getIntegerNumberType(trimedValue);
-            } else if (HeaderCard.IEEE_REGEX.matcher(trimedValue).find() || HeaderCard.DBLSCI_REGEX.matcher(trimedValue).find()) {
-                return getDecimalNumberType(trimedValue);
             }
+            return getDecimalNumberType(trimedValue);
         }
         return null;
     }
@@ -1233,25 +1503,45 @@ public class HeaderCard implements CursorValue<String> {
         if (FitsFactory.isLongStringsEnabled() && parsedValue.isString() && parsedValue.getValue().endsWith("&")) {
             longStringCard(dis, parsedValue);
         } else {
-            this.value = parsedValue.getValue();
-            this.isString = parsedValue.isString();
-            this.comment = parsedValue.getComment();
-            int indexOfQuote = this.value.indexOf('\'');
-            if (!this.isString && indexOfQuote >= 0) {
-                if (indexOfQuote == 0 && FitsFactory.current().isAllowHeaderRepairs()) {
-                    // ok error case, string without closing quote. lets try to
-                    // accept it
-                    this.value = this.value.substring(1);
-                    this.isString = true;
-                    this.comment = null;
-                    LOG.warning("Corrected header card " + this.key + " repaired missing end-quote in string value!");
-                } else {
-                    throw new IllegalArgumentException("no single quotes allowed in values");
+            setParsedValue(parsedValue);
+        }
+    }
+
+    /**
+     * Parse the value and comment of a card read in lazy mode, if that was not
+     * done yet.
+     */
+    private void parseLazyCard() {
+        if (this.lazyCard != null) {
+            synchronized (this) {
+                String card = this.lazyCard;
+                if (card != null) {
+                    setParsedValue(FitsHeaderCardParser.parseCardValue(card));
+                    this.lazyCard = null;
                 }
             }
         }
     }
 
+    private void setParsedValue(ParsedValue parsedValue) {
+        this.value = parsedValue.getValue();
+        this.isString = parsedValue.isString();
+        this.comment = parsedValue.getComment();
+        int indexOfQuote = this.value.indexOf('\'');
+        if (!this.isString && indexOfQuote >= 0) {
+            if (indexOfQuote == 0 && FitsFactory.current().isAllowHeaderRepairs()) {
+                // ok error case, string without closing quote. lets try to
+                // accept it
+                this.value = this.value.substring(1);
+                this.isString = true;
+                this.comment = null;
+                LOG.warning("Corrected header card " + this.key + " repaired missing end-quote in string value!");
+            } else {
+                throw new IllegalArgumentException("no single quotes allowed in values");
+            }
+        }
+    }
+
     private Boolean getBooleanValue(Boolean defaultValue) {
         if ("T".equals(this.value)) {
             return Boolean.TRUE;
@@ -41,6 +41,7 @@ import static nom.tam.util.LoggerHelper.getLogger;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.nio.Buffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -51,7 +52,6 @@ import nom.tam.util.ArrayDataInput;
 import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.ArrayFuncs;
 import nom.tam.util.RandomAccess;
-import nom.tam.util.array.MultiArrayIterator;
 import nom.tam.util.type.PrimitiveType;
 import nom.tam.util.type.PrimitiveTypeHandler;
 import nom.tam.util.type.PrimitiveTypes;
@@ -95,9 +95,36 @@ public class ImageData extends Data {
             super(o, offset, d.dims, d.type);
         }
 
+        @Override
+        protected void fillMemData(Object data, int[] posits, int length, Object output, int outputOffset, int dim) {
+            if (data != ImageData.this.flatData) {
+                super.fillMemData(data, posits, length, output, outputOffset, dim);
+                return;
+            }
+            // the whole image is in one array, copy the part of the row that
+            // lies within the image.
+            int[] dims = ImageData.this.dataDescription.dims;
+            int last = dims.length - 1;
+            int startFrom = (int) getOffset(dims, posits);
+            int startTo = outputOffset;
+            int copyLength = length;
+            if (posits[last] < 0) {
+                startFrom -= posits[last];
+                startTo -= posits[last];
+                copyLength += posits[last];
+            }
+            if (posits[last] + length > dims[last]) {
+                copyLength -= posits[last] + length - dims[last];
+            }
+            System.arraycopy(data, startFrom, output, startTo, copyLength);
+        }
+
         @Override
         protected Object getMemoryImage() {
-            return ImageData.this.dataArray;
+            if (ImageData.this.dataArray != null) {
+                return ImageData.this.dataArray;
+            }
+            return ImageData.this.flatData;
         }
     }
 
@@ -114,6 +141,14 @@ public class ImageData extends Data {
      */
     private Object dataArray;
 
+    /**
+     * The data as a one dimensional primitive array with the dimensions of the
+     * data description, if the image was created from a flat buffer. The
+     * multi-dimensional array is only created from it when getData() is
+     * called.
+     */
+    private Object flatData;
+
     /** A description of what the data should look like */
     private ArrayDesc dataDescription;
 
@@ -156,6 +191,53 @@ public class ImageData extends Data {
         this.byteSize = ArrayFuncs.computeLSize(x);
     }
 
+    /**
+     * Create an ImageData object from the pixels of an image in a one
+     * dimensional array. No multi-dimensional array is created until the data
+     * is requested with {@link #getData()}, so the image can be written, tiled
+     * or compressed without it.
+     *
+     * @param flatData
+     *            The pixels of the image as a one dimensional primitive array,
+     *            the last dimension varying fastest.
+     * @param dims
+     *            The dimensions of the image, in the order of a java array (the
+     *            reverse of the NAXISn order).
+     * @throws FitsException
+     *             if the array is not a primitive array matching the
+     *             dimensions.
+     */
+    public ImageData(Object flatData, int[] dims) throws FitsException {
+        Class<?> type = flatData.getClass().getComponentType();
+        if (type == null || !type.isPrimitive()) {
+            throw new FitsException("Flat image data must be a one dimensional primitive array");
+        }
+        long size = 1;
+        for (int dim : dims) {
+            size *= dim;
+        }
+        if (size != Array.getLength(flatData)) {
+            throw new FitsException("Flat image data does not fit the dimensions");
+        }
+        this.flatData = flatData;
+        this.dataDescription = new ArrayDesc(dims.clone(), type);
+        this.byteSize = ArrayFuncs.computeLSize(flatData);
+        this.tiler = new ImageDataTiler(null, 0, this.dataDescription);
+    }
+
+    /**
+     * @return the pixels of the image as a buffer wrapping the one dimensional
+     *         array, if this image is held as a flat array (see
+     *         {@link #setBuffer(Buffer)}), otherwise null. The buffer is not a
+     *         copy, changes to it are changes to the image.
+     */
+    public Buffer getBuffer() {
+        if (this.flatData == null) {
+            return null;
+        }
+        return PrimitiveTypeHandler.valueOf(this.dataDescription.type).wrap(this.flatData);
+    }
+
     /**
      * Return the actual data. Note that this may return a null when the data is
      * not readable. It might be better to throw a FitsException, but this is a
@@ -165,7 +247,16 @@ public class ImageData extends Data {
     @Override
     public Object getData() {
 
-        if (this.dataArray == null && this.tiler != null) {
+        if (this.dataArray == null && this.flatData != null) {
+            // from now on the multi-dimensional array is the data, as it can be
+            // changed by the caller.
+            if (this.dataDescription.dims.length == 1) {
+                this.dataArray = this.flatData;
+            } else {
+                this.dataArray = ArrayFuncs.curl(this.flatData, this.dataDescription.dims);
+            }
+            this.flatData = null;
+        } else if (this.dataArray == null && this.tiler != null) {
             try {
                 this.dataArray = this.tiler.getCompleteImage();
             } catch (Exception e) {
@@ -220,15 +311,24 @@ public class ImageData extends Data {
         }
     }
 
+    /**
+     * Set the pixels of the image from a buffer, the last dimension of the
+     * image varying fastest. The pixels are kept as a one dimensional array,
+     * the buffer itself is used if it wraps an array of the size of the image.
+     *
+     * @param data
+     *            the pixels of the image
+     */
     public void setBuffer(Buffer data) {
         PrimitiveType<Buffer> primType = PrimitiveTypeHandler.valueOf(this.dataDescription.type);
-        this.dataArray = ArrayFuncs.newInstance(this.dataDescription.type, this.dataDescription.dims);
-        MultiArrayIterator iterator = new MultiArrayIterator(this.dataArray);
-        Object array = iterator.next();
-        while (array != null) {
-            primType.getArray(data, array);
-            array = iterator.next();
+        int size = (int) (this.byteSize / primType.size());
+        if (data.hasArray() && data.arrayOffset() == 0 && data.position() == 0 && Array.getLength(data.array()) == size) {
+            this.flatData = data.array();
+        } else {
+            this.flatData = primType.newArray(size);
+            primType.getArray(data, this.flatData);
         }
+        this.dataArray = null;
         this.tiler = new ImageDataTiler(null, 0, this.dataDescription);
     }
 
@@ -240,6 +340,16 @@ public class ImageData extends Data {
             return;
         }
 
+        if (this.dataArray == null && this.flatData != null) {
+            try {
+                o.writeArray(this.flatData);
+            } catch (IOException e) {
+                throw new FitsException("IO Error on image write" + e);
+            }
+            FitsUtil.pad(o, getTrueSize());
+            return;
+        }
+
         if (this.dataArray == null) {
             if (this.tiler != null) {
 
@@ -280,22 +390,28 @@ public class ImageData extends Data {
     @Override
     protected void fillHeader(Header head) throws FitsException {
 
-        if (this.dataArray == null) {
+        if (this.dataArray == null && this.flatData == null) {
             head.nullImage();
             return;
         }
 
         Standard.context(ImageData.class);
-        String classname = this.dataArray.getClass().getName();
-
-        int[] dimens = ArrayFuncs.getDimensions(this.dataArray);
+        int[] dimens;
+        char type;
+        if (this.dataArray != null) {
+            dimens = ArrayFuncs.getDimensions(this.dataArray);
+            type = dimens == null ? 0 : this.dataArray.getClass().getName().charAt(dimens.length);
+        } else {
+            dimens = this.dataDescription.dims;
+            type = this.flatData.getClass().getName().charAt(1);
+        }
 
         if (dimens == null || dimens.length == 0) {
             throw new FitsException("Image data object not array");
         }
 
         int bitpix;
-        switch (classname.charAt(dimens.length)) {
+        switch (type) {
             case 'B':
                 bitpix = BasicHDU.BITPIX_BYTE;
                 break;
@@ -315,7 +431,7 @@ public class ImageData extends Data {
                 bitpix = BasicHDU.BITPIX_DOUBLE;
                 break;
             default:
-                throw new FitsException("Invalid Object Type for FITS data:" + classname.charAt(dimens.length));
+                throw new FitsException("Invalid Object Type for FITS data:" + type);
         }
 
         // if this is neither a primary header nor an image extension,
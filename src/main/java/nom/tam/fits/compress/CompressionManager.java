@@ -38,11 +38,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ServiceLoader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import nom.tam.fits.FitsException;
+import nom.tam.util.CachedServiceLoader;
 import nom.tam.util.SafeClose;
 
 public final class CompressionManager {
@@ -60,9 +60,22 @@ public final class CompressionManager {
      */
     private static final Logger LOG = getLogger(CompressionManager.class);
 
+    /**
+     * the compression providers, loaded once per class loader.
+     */
+    private static final CachedServiceLoader<ICompressProvider> PROVIDERS = new CachedServiceLoader<ICompressProvider>(ICompressProvider.class);
+
     private CompressionManager() {
     }
 
+    /**
+     * Forget the loaded compression providers, e.g. after providers were added
+     * to the class path.
+     */
+    public static void clearCache() {
+        PROVIDERS.clear();
+    }
+
     /**
      * This method decompresses a compressed input stream. The decompression
      * method is selected automatically based upon the first two bytes read.
@@ -160,8 +173,7 @@ public final class CompressionManager {
         if (old != null) {
             maxPriority = old.priority();
         }
-        ServiceLoader<ICompressProvider> compressionProviders = ServiceLoader.load(ICompressProvider.class, Thread.currentThread().getContextClassLoader());
-        for (ICompressProvider provider : compressionProviders) {
+        for (ICompressProvider provider : PROVIDERS.providers()) {
             if (provider.priority() > Math.max(0, priority) && provider.priority() < maxPriority && provider != old && //
                     provider.provides(mag1, mag2)) {
                 priority = provider.priority();
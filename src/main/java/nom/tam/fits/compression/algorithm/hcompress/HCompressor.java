@@ -36,12 +36,13 @@ import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
-import nom.tam.fits.compression.algorithm.api.ICompressor;
+import nom.tam.fits.compression.algorithm.api.ICompressOption;
+import nom.tam.fits.compression.algorithm.api.IReusableCompressor;
 import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.DoubleQuantCompressor;
 import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.FloatQuantCompressor;
 import nom.tam.util.ArrayFuncs;
 
-public abstract class HCompressor<T extends Buffer> implements ICompressor<T> {
+public abstract class HCompressor<T extends Buffer> implements IReusableCompressor<T> {
 
     public static class ByteHCompressor extends HCompressor<ByteBuffer> {
 
@@ -145,12 +146,17 @@ public abstract class HCompressor<T extends Buffer> implements ICompressor<T> {
 
     private HDecompress decompress;
 
-    private final HCompressorOption options;
+    private HCompressorOption options;
 
     public HCompressor(HCompressorOption options) {
         this.options = options;
     }
 
+    @Override
+    public void reset(ICompressOption option) {
+        this.options = option.unwrap(HCompressorOption.class);
+    }
+
     private HCompress compress() {
         if (this.compress == null) {
             this.compress = new HCompress();
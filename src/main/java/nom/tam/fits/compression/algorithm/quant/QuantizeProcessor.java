@@ -36,11 +36,13 @@ import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
+import nom.tam.fits.compression.algorithm.api.ICompressOption;
 import nom.tam.fits.compression.algorithm.api.ICompressor;
+import nom.tam.fits.compression.algorithm.api.IReusableCompressor;
 
 public class QuantizeProcessor {
 
-    public static class DoubleQuantCompressor extends QuantizeProcessor implements ICompressor<DoubleBuffer> {
+    public static class DoubleQuantCompressor extends QuantizeProcessor implements IReusableCompressor<DoubleBuffer> {
 
         private final ICompressor<IntBuffer> postCompressor;
 
@@ -49,6 +51,12 @@ public class QuantizeProcessor {
             this.postCompressor = postCompressor;
         }
 
+        @Override
+        public void reset(ICompressOption option) {
+            initialize(option.unwrap(QuantizeOption.class));
+            resetPostCompressor(this.postCompressor, option);
+        }
+
         @Override
         public boolean compress(DoubleBuffer buffer, ByteBuffer compressed) {
             IntBuffer intData = IntBuffer.wrap(new int[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()]);
@@ -74,7 +82,7 @@ public class QuantizeProcessor {
     /**
      * TODO this is done very inefficient and should be refactored!
      */
-    public static class FloatQuantCompressor extends QuantizeProcessor implements ICompressor<FloatBuffer> {
+    public static class FloatQuantCompressor extends QuantizeProcessor implements IReusableCompressor<FloatBuffer> {
 
         private final ICompressor<IntBuffer> postCompressor;
 
@@ -83,6 +91,12 @@ public class QuantizeProcessor {
             this.postCompressor = postCompressor;
         }
 
+        @Override
+        public void reset(ICompressOption option) {
+            initialize(option.unwrap(QuantizeOption.class));
+            resetPostCompressor(this.postCompressor, option);
+        }
+
         @Override
         public boolean compress(FloatBuffer buffer, ByteBuffer compressed) {
             float[] floats = new float[this.quantizeOption.getTileHeight() * this.quantizeOption.getTileWidth()];
@@ -137,80 +151,24 @@ public class QuantizeProcessor {
 
     private class DitherFilter extends PixelFilter {
 
-        private static final int LAST_RANDOM_VALUE = 1043618065;
-
-        private static final double MAX_INT_AS_DOUBLE = Integer.MAX_VALUE;
-
-        /**
-         * DO NOT CHANGE THIS; used when quantizing real numbers
-         */
-        private static final int N_RANDOM = 10000;
-
         private static final int RANDOM_MULTIPLICATOR = 500;
 
-        private static final double RANDOM_START_VALUE = 16807.0;
-
         private int iseed = 0;
 
         private int nextRandom = 0;
 
-        private final double[] randomValues;
-
         DitherFilter(long seed) {
             super(null);
-            this.randomValues = initRandoms();
             initialize(seed);
         }
 
         public void initialize(long ditherSeed) {
             this.iseed = (int) ((ditherSeed - 1) % N_RANDOM);
-            this.nextRandom = (int) (this.randomValues[this.iseed] * RANDOM_MULTIPLICATOR);
+            this.nextRandom = (int) (RANDOM_VALUES[this.iseed] * RANDOM_MULTIPLICATOR);
         }
 
         public double nextRandom() {
-            return this.randomValues[this.nextRandom];
-        }
-
-        private double[] initRandoms() {
-
-            /* initialize an tiledImageOperation of random numbers */
-
-            int ii;
-            double a = RANDOM_START_VALUE;
-            double m = MAX_INT_AS_DOUBLE;
-            double temp;
-            double seed;
-
-            /* allocate tiledImageOperation for the random number sequence */
-            double[] randomValue = new double[N_RANDOM];
-
-            /*
-             * We need a portable algorithm that anyone can use to generate this
-             * exact same sequence of random number. The C 'rand' function is
-             * not suitable because it is not available to Fortran or Java
-             * programmers. Instead, use a well known simple algorithm published
-             * here: "Random number generators: good ones are hard to find",
-             * Communications of the ACM, Volume 31 , Issue 10 (October 1988)
-             * Pages: 1192 - 1201
-             */
-
-            /* initialize the random numbers */
-            seed = 1;
-            for (ii = 0; ii < N_RANDOM; ii++) {
-                temp = a * seed;
-                seed = temp - m * (int) (temp / m);
-                randomValue[ii] = seed / m;
-            }
-
-            /*
-             * IMPORTANT NOTE: the 10000th seed value must have the value
-             * 1043618065 if the algorithm has been implemented correctly
-             */
-
-            if ((int) seed != LAST_RANDOM_VALUE) {
-                throw new IllegalArgumentException("randomValue generated incorrect random number sequence");
-            }
-            return randomValue;
+            return RANDOM_VALUES[this.nextRandom];
         }
 
         @Override
@@ -221,7 +179,7 @@ public class QuantizeProcessor {
                 if (this.iseed >= N_RANDOM) {
                     this.iseed = 0;
                 }
-                this.nextRandom = (int) (this.randomValues[this.iseed] * RANDOM_MULTIPLICATOR);
+                this.nextRandom = (int) (RANDOM_VALUES[this.iseed] * RANDOM_MULTIPLICATOR);
             }
         }
 
@@ -318,6 +276,21 @@ public class QuantizeProcessor {
 
     private static final double MAX_INT_AS_DOUBLE = Integer.MAX_VALUE;
 
+    private static final int LAST_RANDOM_VALUE = 1043618065;
+
+    /**
+     * DO NOT CHANGE THIS; used when quantizing real numbers
+     */
+    private static final int N_RANDOM = 10000;
+
+    private static final double RANDOM_START_VALUE = 16807.0;
+
+    /**
+     * the random numbers used for dithering, they are always the same so they
+     * are computed only once and shared by all processors. Never write to it!
+     */
+    private static final double[] RANDOM_VALUES = initRandoms();
+
     /**
      * number of reserved values, starting with
      */
@@ -330,9 +303,9 @@ public class QuantizeProcessor {
      */
     private static final int ZERO_VALUE = Integer.MIN_VALUE + 2;
 
-    private final boolean centerOnZero;
+    private boolean centerOnZero;
 
-    private final PixelFilter pixelFilter;
+    private PixelFilter pixelFilter;
 
     private double bScale;
 
@@ -340,9 +313,69 @@ public class QuantizeProcessor {
 
     private Quantize quantize;
 
-    protected final QuantizeOption quantizeOption;
+    protected QuantizeOption quantizeOption;
+
+    private static double[] initRandoms() {
+
+        /* initialize an tiledImageOperation of random numbers */
+
+        int ii;
+        double a = RANDOM_START_VALUE;
+        double m = MAX_INT_AS_DOUBLE;
+        double temp;
+        double seed;
+
+        /* allocate tiledImageOperation for the random number sequence */
+        double[] randomValue = new double[N_RANDOM];
+
+        /*
+         * We need a portable algorithm that anyone can use to generate this
+         * exact same sequence of random number. The C 'rand' function is not
+         * suitable because it is not available to Fortran or Java programmers.
+         * Instead, use a well known simple algorithm published here:
+         * "Random number generators: good ones are hard to find",
+         * Communications of the ACM, Volume 31 , Issue 10 (October 1988) Pages:
+         * 1192 - 1201
+         */
+
+        /* initialize the random numbers */
+        seed = 1;
+        for (ii = 0; ii < N_RANDOM; ii++) {
+            temp = a * seed;
+            seed = temp - m * (int) (temp / m);
+            randomValue[ii] = seed / m;
+        }
+
+        /*
+         * IMPORTANT NOTE: the 10000th seed value must have the value 1043618065
+         * if the algorithm has been implemented correctly
+         */
+
+        if ((int) seed != LAST_RANDOM_VALUE) {
+            throw new IllegalArgumentException("randomValue generated incorrect random number sequence");
+        }
+        return randomValue;
+    }
+
+    private static void resetPostCompressor(ICompressor<IntBuffer> postCompressor, ICompressOption option) {
+        if (!(postCompressor instanceof IReusableCompressor)) {
+            throw new UnsupportedOperationException("the compressor of the quantized values can not be reused");
+        }
+        ((IReusableCompressor<IntBuffer>) postCompressor).reset(option);
+    }
 
     public QuantizeProcessor(QuantizeOption quantizeOption) {
+        initialize(quantizeOption);
+    }
+
+    /**
+     * Set up the processor for a tile, as if it was created with the option of
+     * that tile.
+     *
+     * @param quantizeOption
+     *            the quantization option of the tile.
+     */
+    protected final void initialize(QuantizeOption quantizeOption) {
         this.quantizeOption = quantizeOption;
         this.bScale = quantizeOption.getBScale();
         this.bZero = quantizeOption.getBZero();
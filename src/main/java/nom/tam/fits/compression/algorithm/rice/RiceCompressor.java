@@ -6,7 +6,8 @@ import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.logging.Logger;
 
-import nom.tam.fits.compression.algorithm.api.ICompressor;
+import nom.tam.fits.compression.algorithm.api.ICompressOption;
+import nom.tam.fits.compression.algorithm.api.IReusableCompressor;
 import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.DoubleQuantCompressor;
 import nom.tam.fits.compression.algorithm.quant.QuantizeProcessor.FloatQuantCompressor;
 import nom.tam.util.FitsIO;
@@ -55,7 +56,7 @@ import nom.tam.util.type.PrimitiveTypes;
  * @author William Pence
  * @author Richard van Nieuwenhoven
  */
-public abstract class RiceCompressor<T extends Buffer> implements ICompressor<T> {
+public abstract class RiceCompressor<T extends Buffer> implements IReusableCompressor<T> {
 
     public static class ByteRiceCompressor extends RiceCompressor<ByteBuffer> {
 
@@ -65,6 +66,11 @@ public abstract class RiceCompressor<T extends Buffer> implements ICompressor<T>
             super(option.setDefaultBytePix(PrimitiveTypes.BYTE.size()));
         }
 
+        @Override
+        public void reset(ICompressOption option) {
+            initialize(option.unwrap(RiceCompressOption.class).setDefaultBytePix(PrimitiveTypes.BYTE.size()));
+        }
+
         @Override
         public boolean compress(ByteBuffer buffer, ByteBuffer writeBuffer) {
             this.pixelBuffer = buffer;
@@ -111,6 +117,11 @@ public abstract class RiceCompressor<T extends Buffer> implements ICompressor<T>
             super(option.setDefaultBytePix(PrimitiveTypes.INT.size()));
         }
 
+        @Override
+        public void reset(ICompressOption option) {
+            initialize(option.unwrap(RiceCompressOption.class).setDefaultBytePix(PrimitiveTypes.INT.size()));
+        }
+
         @Override
         public boolean compress(IntBuffer buffer, ByteBuffer writeBuffer) {
             this.pixelBuffer = buffer;
@@ -143,6 +154,11 @@ public abstract class RiceCompressor<T extends Buffer> implements ICompressor<T>
             super(option.setDefaultBytePix(PrimitiveTypes.SHORT.size()));
         }
 
+        @Override
+        public void reset(ICompressOption option) {
+            initialize(option.unwrap(RiceCompressOption.class).setDefaultBytePix(PrimitiveTypes.SHORT.size()));
+        }
+
         @Override
         public boolean compress(ShortBuffer buffer, ByteBuffer writeBuffer) {
             this.pixelBuffer = buffer;
@@ -231,17 +247,28 @@ public abstract class RiceCompressor<T extends Buffer> implements ICompressor<T>
     };
     // @formatter:on
 
-    private final int bBits;
+    private int bBits;
 
-    private final int bitsPerPixel;
+    private int bitsPerPixel;
 
-    private final int blockSize;
+    private int blockSize;
 
-    private final int fsBits;
+    private int fsBits;
 
-    private final int fsMax;
+    private int fsMax;
 
     private RiceCompressor(RiceCompressOption option) {
+        initialize(option);
+    }
+
+    /**
+     * Set up the compressor for a tile, as if it was created with the option
+     * of that tile.
+     *
+     * @param option
+     *            the rice option of the tile.
+     */
+    protected final void initialize(RiceCompressOption option) {
         this.blockSize = option.getBlockSize();
         if (option.getBytePix() == PrimitiveTypes.BYTE.size()) {
             this.fsBits = FS_BITS_FOR_BYTE;
@@ -31,11 +31,14 @@ package nom.tam.fits.compression.provider;
  * #L%
  */
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.util.ServiceLoader;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +48,7 @@ import nom.tam.fits.FitsException;
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
 import nom.tam.fits.compression.algorithm.api.ICompressor;
 import nom.tam.fits.compression.algorithm.api.ICompressorControl;
+import nom.tam.fits.compression.algorithm.api.IReusableCompressor;
 import nom.tam.fits.compression.algorithm.gzip.GZipCompressor.ByteGZipCompressor;
 import nom.tam.fits.compression.algorithm.gzip.GZipCompressor.DoubleGZipCompressor;
 import nom.tam.fits.compression.algorithm.gzip.GZipCompressor.FloatGZipCompressor;
@@ -83,6 +87,7 @@ import nom.tam.fits.compression.provider.param.hcompress.HCompressParameters;
 import nom.tam.fits.compression.provider.param.hcompress.HCompressQuantizeParameters;
 import nom.tam.fits.compression.provider.param.rice.RiceCompressParameters;
 import nom.tam.fits.compression.provider.param.rice.RiceQuantizeCompressParameters;
+import nom.tam.util.CachedServiceLoader;
 
 /**
  * Standard implementation of the {@code ICompressorProvider} interface.
@@ -91,12 +96,18 @@ public class CompressorProvider implements ICompressorProvider {
 
     /**
      * private implementation of the tile compression provider, all is based on
-     * the option based constructor of the compressors.
+     * the option based constructor of the compressors. The compressors are
+     * created only once per thread and reused for all following tiles:
+     * compressors without options keep no state between tiles, and
+     * {@link IReusableCompressor}s are reset with the option of every tile.
+     * Other compressors with options are created for every tile.
      */
     protected static class TileCompressorControl implements ICompressorControl {
 
         private final Constructor<ICompressor<Buffer>> constructor;
 
+        private final ThreadLocal<ICompressor<Buffer>> compressors = new ThreadLocal<ICompressor<Buffer>>();
+
         private final Class<? extends ICompressOption> optionClass;
 
         private final Constructor<ICompressParameters> parametersConstructor;
@@ -154,7 +165,20 @@ public class CompressorProvider implements ICompressorProvider {
         }
 
         private ICompressor<Buffer> newCompressor(ICompressOption option) throws InstantiationException, IllegalAccessException, InvocationTargetException {
-            return this.constructor.getParameterTypes().length == 0 ? this.constructor.newInstance() : this.constructor.newInstance(option);
+            ICompressor<Buffer> compressor = this.compressors.get();
+            if (compressor == null) {
+                if (this.optionClass == null) {
+                    compressor = this.constructor.newInstance();
+                } else {
+                    compressor = this.constructor.newInstance(option);
+                }
+                if (this.optionClass == null || compressor instanceof IReusableCompressor) {
+                    this.compressors.set(compressor);
+                }
+            } else if (this.optionClass != null) {
+                ((IReusableCompressor<Buffer>) compressor).reset(option);
+            }
+            return compressor;
         }
     }
 
@@ -275,9 +299,57 @@ public class CompressorProvider implements ICompressorProvider {
      */
     private static final Logger LOG = Logger.getLogger(CompressorProvider.class.getName());
 
+    /**
+     * the compressor providers, loaded once per class loader.
+     */
+    private static final CachedServiceLoader<ICompressorProvider> PROVIDERS = new CachedServiceLoader<ICompressorProvider>(ICompressorProvider.class);
+
+    /**
+     * the compressor controls already found, by class loader and by
+     * quantization algorithm, compression algorithm and base type. The
+     * controls reference their class loader through their classes, so they
+     * are held softly to let unused class loaders be collected.
+     */
+    private static final Map<ClassLoader, SoftReference<Map<String, ICompressorControl>>> CONTROLS = new WeakHashMap<ClassLoader, SoftReference<Map<String, ICompressorControl>>>();
+
+    /**
+     * Forget the loaded compressor providers and the compressor controls found
+     * through them, e.g. after providers were added to the class path. The
+     * compressor controls are cached, so they must be usable by several tiles
+     * and threads at once.
+     */
+    public static void clearCache() {
+        PROVIDERS.clear();
+        synchronized (CONTROLS) {
+            CONTROLS.clear();
+        }
+    }
+
     public static ICompressorControl findCompressorControl(String quantAlgorithm, String compressionAlgorithm, Class<?> baseType) {
+        String key = quantAlgorithm + "," + compressionAlgorithm + "," + baseType.getName();
+        Map<String, ICompressorControl> controls;
+        synchronized (CONTROLS) {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            SoftReference<Map<String, ICompressorControl>> cached = CONTROLS.get(classLoader);
+            controls = cached == null ? null : cached.get();
+            if (controls == null) {
+                controls = new ConcurrentHashMap<String, ICompressorControl>();
+                CONTROLS.put(classLoader, new SoftReference<Map<String, ICompressorControl>>(controls));
+            }
+        }
+        ICompressorControl result = controls.get(key);
+        if (result == null) {
+            result = lookupCompressorControl(quantAlgorithm, compressionAlgorithm, baseType);
+            if (result != null) {
+                controls.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    private static ICompressorControl lookupCompressorControl(String quantAlgorithm, String compressionAlgorithm, Class<?> baseType) {
         ICompressorProvider defaultProvider = null;
-        for (ICompressorProvider iTileCompressorProvider : ServiceLoader.load(ICompressorProvider.class, Thread.currentThread().getContextClassLoader())) {
+        for (ICompressorProvider iTileCompressorProvider : PROVIDERS.providers()) {
             if (iTileCompressorProvider instanceof CompressorProvider) {
                 defaultProvider = iTileCompressorProvider;
             } else {
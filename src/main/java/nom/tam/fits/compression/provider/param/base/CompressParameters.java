@@ -101,7 +101,7 @@ public abstract class CompressParameters implements ICompressParameters {
         for (int i = 1; i <= binaryTable.getNCols(); i++) {
             HeaderCard card = header.findCard(TTYPEn.n(i));
             if (card != null && card.getValue().trim().equals(columnName)) {
-                return binaryTable.getColumn(i - 1);
+                return binaryTable.readColumns(i - 1)[0];
             }
         }
         return null;
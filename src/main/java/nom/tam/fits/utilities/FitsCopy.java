@@ -31,36 +31,111 @@ package nom.tam.fits.utilities;
  * #L%
  */
 
-import nom.tam.fits.BasicHDU;
-import nom.tam.fits.Fits;
-import nom.tam.util.BufferedFile;
+import static nom.tam.fits.header.Standard.BITPIX;
+import static nom.tam.fits.header.Standard.NAXIS;
+import static nom.tam.fits.header.Standard.NAXISn;
+import static nom.tam.fits.header.Standard.XTENSION;
 
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import nom.tam.fits.Header;
+import nom.tam.fits.ImageHDU;
+import nom.tam.util.type.PrimitiveTypeHandler;
+
+/**
+ * The copy mode of {@link Main}: copies a FITS file HDU by HDU with
+ * {@link FitsStreamCopy}, so files of any size can be copied with bounded
+ * memory. The arguments are
+ * <code>[-hdu n,m,...] [-compress algorithm [-quantize algorithm]] [-decompress] input output</code>
+ * to copy only the HDUs with the specified numbers, to tile compress the 2
+ * dimensional images or to decompress the tile compressed images. The
+ * information of every copied HDU is printed from its header, so the data is
+ * never read into memory for it.
+ */
 public final class FitsCopy {
 
     private FitsCopy() {
     }
 
     public static void main(String[] args) throws Exception {
-        String file = args[0];
-        Fits f = new Fits(file);
-        int i = 0;
-        BasicHDU<?> h;
+        FitsStreamCopy copy = new FitsStreamCopy();
+        Set<Integer> selected = null;
+        int index = 0;
+        while (index < args.length - 2) {
+            String option = args[index++];
+            if ("-decompress".equals(option)) {
+                copy.setDecompress(true);
+            } else if ("-compress".equals(option)) {
+                copy.setCompressAlgorithm(args[index++]);
+            } else if ("-quantize".equals(option)) {
+                copy.setQuantAlgorithm(args[index++]);
+            } else if ("-hdu".equals(option)) {
+                selected = new HashSet<Integer>();
+                for (String number : args[index++].split(",")) {
+                    selected.add(Integer.valueOf(number.trim()));
+                }
+            } else {
+                throw new IllegalArgumentException("unknown option " + option);
+            }
+        }
+        if (args.length - index != 2) {
+            throw new IllegalArgumentException("expected the input and the output file after the options");
+        }
+        final Set<Integer> numbers = selected;
+        copy.setFilter(new FitsStreamCopy.HduFilter() {
 
-        do {
-            h = f.readHDU();
-            if (h != null) {
-                if (i == 0) {
-                    System.out.println("\n\nPrimary header:\n");
-                } else {
-                    System.out.println("\n\nExtension " + i + ":\n");
+            @Override
+            public boolean accept(Header header, int number) {
+                if (numbers != null && !numbers.contains(number)) {
+                    return false;
                 }
-                i += 1;
-                h.info(System.out);
+                info(System.out, header, number); // NOSONAR
+                return true;
             }
-        } while (h != null);
-        f.close();
-        BufferedFile bf = new BufferedFile(args[1], "rw");
-        f.write(bf);
-        bf.close();
+        });
+        copy.copy(new File(args[index]), new File(args[index + 1]));
+    }
+
+    /**
+     * Print the information of an HDU like
+     * {@link nom.tam.fits.BasicHDU#info(PrintStream)}, but using only its
+     * header: images are described as by {@link ImageHDU}, other HDUs by
+     * their type, axes and data size.
+     */
+    private static void info(PrintStream stream, Header header, int number) {
+        if (number == 0) {
+            stream.println("\n\nPrimary header:\n");
+        } else {
+            stream.println("\n\nExtension " + number + ":\n");
+        }
+        boolean image = ImageHDU.isHeader(header);
+        if (image) {
+            stream.println("  Image");
+        } else {
+            stream.println("  " + header.getStringValue(XTENSION));
+        }
+        stream.println("      Header Information:");
+        int bitpix = header.getIntValue(BITPIX, -1);
+        stream.println("         BITPIX=" + bitpix);
+        int naxis = header.getIntValue(NAXIS, -1);
+        stream.println("         NAXIS=" + naxis);
+        int[] dims = new int[Math.max(naxis, 0)];
+        for (int i = 1; i <= naxis; i += 1) {
+            int length = header.getIntValue(NAXISn.n(i), -1);
+            stream.println("         NAXIS" + i + "=" + length);
+            dims[naxis - i] = length;
+        }
+        stream.println("      Data information:");
+        if (!image) {
+            stream.println("         " + header.getDataSize() + " bytes");
+        } else if (dims.length == 0) {
+            stream.println("        No Data");
+        } else {
+            stream.println("         " + PrimitiveTypeHandler.valueOf(bitpix).primitiveClass().getSimpleName() + Arrays.toString(dims));
+        }
     }
 }
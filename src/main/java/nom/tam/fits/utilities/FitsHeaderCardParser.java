@@ -32,8 +32,6 @@ package nom.tam.fits.utilities;
  */
 
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import nom.tam.util.AsciiFuncs;
 
@@ -99,50 +97,66 @@ public final class FitsHeaderCardParser {
     }
 
     /**
-     * pattern to match FITS keywords, specially to parse hirarchical keywords.
-     */
-    private static final Pattern KEYWORD_PATTERN = Pattern.compile("([A-Z|a-z|0-9|_|-]+)([ |\\.]*=?)");
-
-    /**
-     * pattern to match a quoted string where 2 quotes are used to escape a
-     * single quote inside the string. Attention this patern ist optimized as
-     * specified in http://www.perlmonks.org/?node_id=607740
+     * Find the closing quote of a quoted string, where 2 quotes are used to
+     * escape a single quote inside the string.
+     * 
+     * @param card
+     *            the card string to scan.
+     * @param openingQuote
+     *            the index of the opening quote.
+     * @return the index of the closing quote or -1 if the string is not
+     *         closed.
      */
-    private static final Pattern STRING_PATTERN = Pattern.compile("'((?:[^']+(?=')|'')*)'(?!')");
+    private static int findClosingQuote(String card, int openingQuote) {
+        int length = card.length();
+        for (int index = openingQuote + 1; index < length; index++) {
+            if (card.charAt(index) == '\'') {
+                if (index + 1 < length && card.charAt(index + 1) == '\'') {
+                    index++;
+                } else {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
 
     /**
      * delete the start and trailing quote from the sting and replace all
      * (escaped)double quotes with a single quote. Then trim the trailing
      * blanks.
      * 
-     * @param quotedString
-     *            the string to un-quote.
+     * @param card
+     *            the card string containing the quoted string.
+     * @param openingQuote
+     *            the index of the opening quote.
+     * @param closingQuote
+     *            the index of the closing quote.
      * @return the unquoted string
      */
-    private static String deleteQuotes(String quotedString) {
-        int indexOfQuote = quotedString.indexOf('\'');
-        if (indexOfQuote < 0) {
-            int newLength = quotedString.length();
-            while (newLength > 0 && AsciiFuncs.isWhitespace(quotedString.charAt(newLength - 1))) {
-                newLength--;
-            }
-            return quotedString.substring(0, newLength);
-        } else {
-            int lastIndexOfQuote = 0;
-            StringBuffer sb = new StringBuffer(quotedString.length());
-            while (indexOfQuote >= 0) {
-                sb.append(quotedString, lastIndexOfQuote, indexOfQuote);
-                lastIndexOfQuote = indexOfQuote + 1;
-                indexOfQuote = quotedString.indexOf('\'', lastIndexOfQuote + 1);
-            }
-            sb.append(quotedString, lastIndexOfQuote, quotedString.length());
-            int newLength = sb.length();
-            while (newLength > 0 && AsciiFuncs.isWhitespace(sb.charAt(newLength - 1))) {
-                newLength--;
+    private static String deleteQuotes(String card, int openingQuote, int closingQuote) {
+        int end = closingQuote;
+        while (end > openingQuote + 1 && AsciiFuncs.isWhitespace(card.charAt(end - 1))) {
+            end--;
+        }
+        int indexOfQuote = card.indexOf('\'', openingQuote + 1);
+        if (indexOfQuote >= end) {
+            return card.substring(openingQuote + 1, end);
+        }
+        StringBuilder sb = new StringBuilder(end - openingQuote);
+        for (int index = openingQuote + 1; index < end; index++) {
+            char c = card.charAt(index);
+            sb.append(c);
+            if (c == '\'') {
+                // skip the escaping quote.
+                index++;
             }
-            sb.setLength(newLength);
-            return sb.toString();
         }
+        return sb.toString();
+    }
+
+    private static boolean isKeywordChar(char c) {
+        return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_' || c == '-' || c == '|';
     }
 
     /**
@@ -158,11 +172,25 @@ public final class FitsHeaderCardParser {
     private static String extractComment(String stringCard, int startPosition) {
         int startOfComment = stringCard.indexOf('/', startPosition) + 1;
         if (startOfComment > 0 && stringCard.length() > startOfComment) {
-            return stringCard.substring(startOfComment).trim();
+            return trimmedSubstring(stringCard, startOfComment, stringCard.length());
         }
         return null;
     }
 
+    /**
+     * Same as <code>string.substring(start, end).trim()</code> without the
+     * intermediate string.
+     */
+    private static String trimmedSubstring(String string, int start, int end) {
+        while (start < end && string.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && string.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return string.substring(start, end);
+    }
+
     /**
      * parse a fits keyword from a card and return it as a dot separated list.
      * 
@@ -172,14 +200,28 @@ public final class FitsHeaderCardParser {
      */
     public static String parseCardKey(String card) {
         int indexOfEquals = card.indexOf('=');
+        int length = card.length();
         StringBuilder builder = new StringBuilder();
-        Matcher kewordMatcher = FitsHeaderCardParser.KEYWORD_PATTERN.matcher(card);
-        while (kewordMatcher.find() && kewordMatcher.start() < indexOfEquals) {
+        int index = 0;
+        while (true) {
+            while (index < length && !isKeywordChar(card.charAt(index))) {
+                index++;
+            }
+            if (index >= length || index >= indexOfEquals) {
+                break;
+            }
+            int start = index;
+            while (index < length && isKeywordChar(card.charAt(index))) {
+                index++;
+            }
             if (builder.length() != 0) {
                 builder.append('.');
             }
-            builder.append(kewordMatcher.group(1).toUpperCase(Locale.US));
-            if (kewordMatcher.group(2).endsWith("=")) {
+            builder.append(card.substring(start, index).toUpperCase(Locale.US));
+            while (index < length && (card.charAt(index) == ' ' || card.charAt(index) == '.')) {
+                index++;
+            }
+            if (index < length && card.charAt(index) == '=') {
                 break;
             }
         }
@@ -209,7 +251,7 @@ public final class FitsHeaderCardParser {
                     endOfValue = startOfComment - 1;
                     value.comment = extractComment(card, startOfComment);
                 }
-                value.value = card.substring(indexOfEquals + 1, endOfValue + 1).trim();
+                value.value = trimmedSubstring(card, indexOfEquals + 1, endOfValue + 1);
             }
         }
         return value;
@@ -224,14 +266,16 @@ public final class FitsHeaderCardParser {
      *         string was found.
      */
     private static ParsedValue parseStringValue(String card) {
-        int indexOfQuote = card.indexOf('\'');
-        if (indexOfQuote >= 0) {
-            Matcher matcher = FitsHeaderCardParser.STRING_PATTERN.matcher(card);
-            if (matcher.find(indexOfQuote)) {
-                if (card.lastIndexOf('/', matcher.start()) < 0) {
-                    return new ParsedValue(deleteQuotes(matcher.group(1)), extractComment(card, matcher.end()));
+        int openingQuote = card.indexOf('\'');
+        while (openingQuote >= 0) {
+            int closingQuote = findClosingQuote(card, openingQuote);
+            if (closingQuote >= 0) {
+                if (card.lastIndexOf('/', openingQuote) < 0) {
+                    return new ParsedValue(deleteQuotes(card, openingQuote, closingQuote), extractComment(card, closingQuote + 1));
                 }
+                return null;
             }
+            openingQuote = card.indexOf('\'', openingQuote + 1);
         }
         return null;
     }
@@ -0,0 +1,259 @@
+package nom.tam.fits.utilities;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.Compression.ZNAXIS;
+import static nom.tam.fits.header.Standard.GCOUNT;
+import static nom.tam.fits.header.Standard.NAXIS;
+import static nom.tam.fits.header.Standard.NAXISn;
+import static nom.tam.fits.header.Standard.PCOUNT;
+import static nom.tam.fits.header.Standard.SIMPLE;
+import static nom.tam.fits.header.Standard.XTENSION_IMAGE;
+
+import java.io.File;
+import java.io.IOException;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.HduStream;
+import nom.tam.fits.Header;
+import nom.tam.fits.ImageHDU;
+import nom.tam.image.ImageTiler;
+import nom.tam.image.compression.hdu.CompressedImageHDU;
+import nom.tam.image.compression.hdu.CompressedImageWriter;
+import nom.tam.util.ArrayDataOutput;
+import nom.tam.util.BufferedFile;
+import nom.tam.util.type.PrimitiveTypeHandler;
+
+/**
+ * Copies a FITS file HDU by HDU without ever having a whole HDU in memory. The
+ * header of each HDU is written first and then its data is copied as raw bytes,
+ * through the file channels where possible. Optionally HDUs can be left out
+ * with a {@link HduFilter}, 2 dimensional images can be tile compressed and
+ * compressed images can be decompressed on the way; these conversions work row
+ * by row or tile row by tile row, so the memory used stays bounded as well.
+ */
+public class FitsStreamCopy {
+
+    /**
+     * Decides which HDUs of the input are copied.
+     */
+    public interface HduFilter {
+
+        /**
+         * @param header
+         *            the header of the HDU
+         * @param number
+         *            the number of the HDU in the input, the primary HDU
+         *            being 0.
+         * @return true if the HDU should be copied.
+         */
+        boolean accept(Header header, int number);
+    }
+
+    private HduFilter filter;
+
+    private String compressAlgorithm;
+
+    private String quantAlgorithm;
+
+    private boolean decompress;
+
+    /**
+     * Copy all HDUs of the input, see
+     * {@link #copy(Fits, ArrayDataOutput)}.
+     *
+     * @param input
+     *            the FITS file to copy
+     * @param output
+     *            the file to copy to, it is replaced if it exists.
+     * @return the number of HDUs written.
+     * @throws FitsException
+     *             if the input could not be read or the output not written
+     * @throws IOException
+     *             if the files could not be opened
+     */
+    public int copy(File input, File output) throws FitsException, IOException {
+        Fits fits = new Fits(input);
+        BufferedFile out = new BufferedFile(output, "rw");
+        try {
+            int written = copy(fits, out);
+            out.setLength(out.getFilePointer());
+            return written;
+        } finally {
+            out.close();
+            fits.close();
+        }
+    }
+
+    /**
+     * Copy the remaining HDUs of the input to the output. If the first HDU that
+     * is written can not be a primary HDU, an empty primary HDU is written
+     * before it.
+     *
+     * @param input
+     *            the FITS input to copy
+     * @param out
+     *            the output to copy to
+     * @return the number of HDUs written.
+     * @throws FitsException
+     *             if the input could not be read or the output not written
+     * @throws IOException
+     *             if the underlying streams failed
+     */
+    public int copy(Fits input, ArrayDataOutput out) throws FitsException, IOException {
+        int written = 0;
+        HduStream stream = input.stream();
+        for (HduStream.Entry entry = stream.next(); entry != null; entry = stream.next()) {
+            Header header = entry.getHeader();
+            if (this.filter != null && !this.filter.accept(header, entry.getNumber())) {
+                continue;
+            }
+            if (this.decompress && CompressedImageHDU.isHeader(header) && header.getIntValue(ZNAXIS) == 2) {
+                written += writeDummyPrimary(out, written);
+                CompressedImageHDU hdu = (CompressedImageHDU) entry.readHDU();
+                hdu.decompressTo(asImageExtension(hdu.getImageHeader()), out);
+            } else if (this.compressAlgorithm != null && ImageHDU.isHeader(header) && header.getIntValue(NAXIS) == 2) {
+                written += writeDummyPrimary(out, written);
+                compress(entry, out);
+            } else {
+                if (!header.containsKey(SIMPLE)) {
+                    written += writeDummyPrimary(out, written);
+                }
+                header.write(out);
+                entry.copyData(out);
+            }
+            written++;
+        }
+        out.flush();
+        return written;
+    }
+
+    /**
+     * @param compressAlgorithm
+     *            the algorithm to tile compress the 2 dimensional images
+     *            with, row by row, or null to copy them unchanged.
+     * @return this
+     */
+    public FitsStreamCopy setCompressAlgorithm(String compressAlgorithm) {
+        this.compressAlgorithm = compressAlgorithm;
+        return this;
+    }
+
+    /**
+     * @param decompress
+     *            true to decompress the 2 dimensional tile compressed images.
+     * @return this
+     */
+    public FitsStreamCopy setDecompress(boolean decompress) {
+        this.decompress = decompress;
+        return this;
+    }
+
+    /**
+     * @param filter
+     *            the filter for the HDUs to copy, or null to copy all.
+     * @return this
+     */
+    public FitsStreamCopy setFilter(HduFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * @param quantAlgorithm
+     *            the quantization algorithm to use for floating point images
+     *            that are compressed, or null for none.
+     * @return this
+     */
+    public FitsStreamCopy setQuantAlgorithm(String quantAlgorithm) {
+        this.quantAlgorithm = quantAlgorithm;
+        return this;
+    }
+
+    private Header asImageExtension(Header header) throws FitsException {
+        if (header.containsKey(SIMPLE)) {
+            header.setXtension(XTENSION_IMAGE);
+            if (!header.containsKey(PCOUNT)) {
+                header.addValue(PCOUNT, 0);
+            }
+            if (!header.containsKey(GCOUNT)) {
+                header.addValue(GCOUNT, 1);
+            }
+        }
+        return header;
+    }
+
+    /**
+     * compress the image row by row, the image data is read through its tiler,
+     * which reads each row from the input file when it is a random access
+     * file.
+     */
+    private void compress(HduStream.Entry entry, ArrayDataOutput out) throws FitsException, IOException {
+        Header header = entry.getHeader();
+        CompressedImageWriter writer = new CompressedImageWriter(header)//
+                .setCompressAlgorithm(this.compressAlgorithm)//
+                .setQuantAlgorithm(this.quantAlgorithm);
+        ImageHDU hdu = (ImageHDU) entry.readHDU();
+        ImageTiler tiler = hdu.getTiler();
+        int width = header.getIntValue(NAXISn.n(1));
+        int height = header.getIntValue(NAXISn.n(2));
+        Object[] rows = new Object[]{
+            PrimitiveTypeHandler.valueOf(hdu.getBitPix()).newArray(width)
+        };
+        int[] corners = new int[2];
+        int[] lengths = new int[]{
+            1,
+            width
+        };
+        for (int row = 0; row < height; row++) {
+            corners[0] = row;
+            tiler.getTile(rows[0], corners, lengths);
+            writer.writeRows(rows);
+        }
+        writer.finish(out);
+    }
+
+    /**
+     * write an empty primary HDU if nothing was written yet.
+     *
+     * @return the number of HDUs written.
+     */
+    private int writeDummyPrimary(ArrayDataOutput out, int written) throws FitsException {
+        if (written > 0) {
+            return 0;
+        }
+        BasicHDU.getDummyHDU().write(out);
+        return 1;
+    }
+}
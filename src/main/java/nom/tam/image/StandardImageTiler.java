@@ -31,11 +31,18 @@ package nom.tam.image;
  * #L%
  */
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import nom.tam.util.ArrayFuncs;
+import nom.tam.util.BufferedFile;
+import nom.tam.util.MappedFile;
 import nom.tam.util.RandomAccess;
+import nom.tam.util.array.MultiArrayIterator;
 
 /**
  * This class provides a subset of an N-dimensional image. Modified May 2, 2000
@@ -97,6 +104,12 @@ public abstract class StandardImageTiler implements ImageTiler {
 
     private final Class<?> base;
 
+    /**
+     * The channel used for positional reads, or null if the tiles are read by
+     * seeking the random access device.
+     */
+    private volatile FileChannel channel;
+
     /**
      * Create a tiler.
      * 
@@ -120,6 +133,85 @@ public abstract class StandardImageTiler implements ImageTiler {
         this.base = base;
     }
 
+    /**
+     * @return true if tiles are read with positional reads, see
+     *         {@link #setPositionalReads(boolean)}.
+     */
+    public boolean isPositionalReads() {
+        return this.channel != null;
+    }
+
+    /**
+     * Read tiles with positional reads on the file channel of the input
+     * instead of seeking the random access device. In this mode the tiler
+     * does not use or change the file pointer of the input, so several
+     * threads may get tiles at the same time.
+     * 
+     * @param positional
+     *            true to use positional reads.
+     * @throws IOException
+     *             if the input does not provide a file channel.
+     */
+    public void setPositionalReads(boolean positional) throws IOException {
+        if (!positional) {
+            this.channel = null;
+        } else if (this.randomAccessFile instanceof BufferedFile) {
+            this.channel = ((BufferedFile) this.randomAccessFile).getChannel();
+        } else if (this.randomAccessFile instanceof MappedFile) {
+            this.channel = ((MappedFile) this.randomAccessFile).getChannel();
+        } else {
+            throw new IOException("Positional reads need a file channel");
+        }
+    }
+
+    /**
+     * Fill a tile segment from the file channel, without using the file
+     * pointer of the input.
+     * 
+     * @param fileChannel
+     *            the channel to read from.
+     * @param buffer
+     *            a buffer large enough for the segment.
+     * @param output
+     *            The output tile.
+     * @param delta
+     *            The offset from the beginning of the image in bytes.
+     * @param outputOffset
+     *            The index into the output array.
+     * @param segment
+     *            The number of elements to be read for this segment.
+     * @throws IOException
+     *             if the underlying channel failed
+     */
+    private void fillChannelData(FileChannel fileChannel, ByteBuffer buffer, Object output, long delta, int outputOffset, int segment) throws IOException {
+        buffer.clear();
+        buffer.limit(segment * ArrayFuncs.getBaseLength(output));
+        long position = this.fileOffset + delta;
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("End of file while reading tile");
+            }
+            position += read;
+        }
+        buffer.flip();
+        if (this.base == float.class) {
+            buffer.asFloatBuffer().get((float[]) output, outputOffset, segment);
+        } else if (this.base == int.class) {
+            buffer.asIntBuffer().get((int[]) output, outputOffset, segment);
+        } else if (this.base == short.class) {
+            buffer.asShortBuffer().get((short[]) output, outputOffset, segment);
+        } else if (this.base == double.class) {
+            buffer.asDoubleBuffer().get((double[]) output, outputOffset, segment);
+        } else if (this.base == byte.class) {
+            buffer.get((byte[]) output, outputOffset, segment);
+        } else if (this.base == long.class) {
+            buffer.asLongBuffer().get((long[]) output, outputOffset, segment);
+        } else {
+            throw new IOException("Invalid type for tile array");
+        }
+    }
+
     /**
      * File a tile segment from a file.
      * 
@@ -228,8 +320,12 @@ public abstract class StandardImageTiler implements ImageTiler {
         int segment = lengths[n - 1];
 
         System.arraycopy(corners, 0, posits, 0, n);
+        FileChannel fileChannel = data == null ? this.channel : null;
+        ByteBuffer buffer = null;
         long currentOffset = 0;
-        if (data == null) {
+        if (fileChannel != null) {
+            buffer = ByteBuffer.allocate(segment * baseLength);
+        } else if (data == null) {
             currentOffset = this.randomAccessFile.getFilePointer();
         }
 
@@ -276,19 +372,25 @@ public abstract class StandardImageTiler implements ImageTiler {
                     if (posits[mx] + segment > newDims[mx]) {
                         actualLen -= posits[mx] + segment - newDims[mx];
                     }
-                    fillFileData(o, actualOffset, actualOutput, actualLen);
+                    if (fileChannel != null) {
+                        fillChannelData(fileChannel, buffer, o, actualOffset, actualOutput, actualLen);
+                    } else {
+                        fillFileData(o, actualOffset, actualOutput, actualLen);
+                    }
                 }
             }
             outputOffset += segment;
 
         } while (incrementPosition(corners, posits, lengths));
-        if (data == null) {
+        if (data == null && fileChannel == null) {
             this.randomAccessFile.seek(currentOffset);
         }
     }
 
     /**
-     * Read the entire image into a multidimensional array.
+     * Read the entire image into a multidimensional array. With positional
+     * reads the image is read row by row from the file channel, without using
+     * the file pointer of the input.
      * 
      * @throws IOException
      *             if the underlying stream failed
@@ -299,6 +401,24 @@ public abstract class StandardImageTiler implements ImageTiler {
         if (this.randomAccessFile == null) {
             throw new IOException("Attempt to read from null file");
         }
+        FileChannel fileChannel = this.channel;
+        if (fileChannel != null) {
+            Object o = ArrayFuncs.newInstance(this.base, this.dims);
+            MultiArrayIterator rows = new MultiArrayIterator(o);
+            ByteBuffer buffer = null;
+            long delta = 0;
+            Object row;
+            while ((row = rows.next()) != null) {
+                int length = Array.getLength(row);
+                int byteLength = length * ArrayFuncs.getBaseLength(row);
+                if (buffer == null || buffer.capacity() < byteLength) {
+                    buffer = ByteBuffer.allocate(byteLength);
+                }
+                fillChannelData(fileChannel, buffer, row, delta, 0, length);
+                delta += byteLength;
+            }
+            return o;
+        }
         long currentOffset = this.randomAccessFile.getFilePointer();
         Object o = ArrayFuncs.newInstance(this.base, this.dims);
         this.randomAccessFile.seek(this.fileOffset);
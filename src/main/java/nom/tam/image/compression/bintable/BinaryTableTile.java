@@ -32,6 +32,7 @@ package nom.tam.image.compression.bintable;
  */
 
 import java.nio.Buffer;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -85,6 +86,30 @@ public abstract class BinaryTableTile implements Runnable {
         this.future = threadPool.submit(this);
     }
 
+    /**
+     * submit the tile to the thread pool and add it to a queue once it is
+     * processed, so that the caller can wait for whichever tile is done first.
+     *
+     * @param threadPool
+     *            the thread pool to process the tile with
+     * @param processed
+     *            the queue the tile is added to when it is processed, also if
+     *            the processing failed.
+     */
+    public void execute(ExecutorService threadPool, final BlockingQueue<BinaryTableTile> processed) {
+        this.future = threadPool.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    BinaryTableTile.this.run();
+                } finally {
+                    processed.add(BinaryTableTile.this);
+                }
+            }
+        });
+    }
+
     public void fillHeader(Header header) throws HeaderCardException {
         header.card(Compression.ZCTYPn.n(this.column)).value(this.compressionAlgorithm);
     }
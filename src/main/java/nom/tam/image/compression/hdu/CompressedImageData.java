@@ -32,15 +32,22 @@ package nom.tam.image.compression.hdu;
  */
 
 import static nom.tam.fits.header.Compression.ZIMAGE;
+import static nom.tam.fits.header.Compression.ZNAXIS;
+import static nom.tam.fits.header.Compression.ZNAXISn;
 
+import java.io.IOException;
 import java.nio.Buffer;
+import java.util.concurrent.ExecutorService;
 
 import nom.tam.fits.BinaryTable;
 import nom.tam.fits.FitsException;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
+import nom.tam.image.compression.tile.CompressedImageTiler;
+import nom.tam.image.compression.tile.DecompressedTileCache;
 import nom.tam.image.compression.tile.TiledImageCompressionOperation;
+import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.ArrayFuncs;
 
 public class CompressedImageData extends BinaryTable {
@@ -50,6 +57,17 @@ public class CompressedImageData extends BinaryTable {
      */
     private TiledImageCompressionOperation tiledImageOperation;
 
+    /**
+     * the thread pool for the tiles, null for the one of the FitsFactory.
+     */
+    private ExecutorService threadPool;
+
+    /**
+     * the maximum number of tiles processed at the same time, -1 for the limit
+     * of the FitsFactory.
+     */
+    private int maxTilesInFlight = -1;
+
     protected CompressedImageData() {
         super();
     }
@@ -64,9 +82,15 @@ public class CompressedImageData extends BinaryTable {
         h.addValue(ZIMAGE, true);
     }
 
+    private TiledImageCompressionOperation newTiledImageOperation() {
+        return new TiledImageCompressionOperation(this)//
+                .setThreadPool(this.threadPool)//
+                .setMaxTilesInFlight(this.maxTilesInFlight);
+    }
+
     private TiledImageCompressionOperation tiledImageOperation() {
         if (this.tiledImageOperation == null) {
-            this.tiledImageOperation = new TiledImageCompressionOperation(this);
+            this.tiledImageOperation = newTiledImageOperation();
         }
         return this.tiledImageOperation;
     }
@@ -85,13 +109,54 @@ public class CompressedImageData extends BinaryTable {
 
     protected Buffer getUncompressedData(Header hdr) throws FitsException {
         try {
-            this.tiledImageOperation = new TiledImageCompressionOperation(this).read(hdr);
+            this.tiledImageOperation = newTiledImageOperation().read(hdr);
             return this.tiledImageOperation.decompress();
         } finally {
             this.tiledImageOperation = null;
         }
     }
 
+    protected long decompressTo(Header hdr, ArrayDataOutput out) throws FitsException {
+        if (hdr.getIntValue(ZNAXIS) != 2) {
+            throw new FitsException("Only 2 dimensional images can be decompressed to a stream");
+        }
+        try {
+            this.tiledImageOperation = newTiledImageOperation().readDeferred(hdr);
+            return this.tiledImageOperation.decompressTo(out);
+        } catch (IOException e) {
+            throw new FitsException("could not write the decompressed image", e);
+        } finally {
+            this.tiledImageOperation = null;
+        }
+    }
+
+    protected CompressedImageTiler getTiler(Header hdr, int maxCachedTiles) throws FitsException {
+        return new CompressedImageTiler(newTiledImageOperation().readDeferred(hdr), maxCachedTiles);
+    }
+
+    protected CompressedImageTiler getTiler(Header hdr, DecompressedTileCache.ImageTiles decompressedTiles) throws FitsException {
+        return new CompressedImageTiler(newTiledImageOperation().readDeferred(hdr), decompressedTiles);
+    }
+
+    protected Buffer getUncompressedRegion(Header hdr, int[] corners, int[] lengths) throws FitsException {
+        try {
+            this.tiledImageOperation = newTiledImageOperation().readDeferred(hdr);
+            int naxis = hdr.getIntValue(ZNAXIS);
+            if (naxis != 2 || corners.length != naxis || lengths.length != naxis) {
+                throw new FitsException("Regions are only supported for 2 dimensional images");
+            }
+            for (int index = 0; index < naxis; index++) {
+                int axis = hdr.getIntValue(ZNAXISn.n(naxis - index));
+                if (corners[index] < 0 || lengths[index] < 0 || corners[index] + lengths[index] > axis) {
+                    throw new FitsException("Region not within image");
+                }
+            }
+            return this.tiledImageOperation.decompressRegion(corners[1], corners[0], lengths[1], lengths[0]);
+        } finally {
+            this.tiledImageOperation = null;
+        }
+    }
+
     protected void prepareUncompressedData(Object data, Header header) throws FitsException {
         tiledImageOperation().readPrimaryHeaders(header);
         Buffer source = tiledImageOperation().getBaseType().newBuffer(this.tiledImageOperation.getBufferSize());
@@ -126,6 +191,22 @@ public class CompressedImageData extends BinaryTable {
         tiledImageOperation().setQuantAlgorithm(quantAlgorithmCard);
     }
 
+    protected CompressedImageData setMaxTilesInFlight(int value) {
+        this.maxTilesInFlight = value;
+        if (this.tiledImageOperation != null) {
+            this.tiledImageOperation.setMaxTilesInFlight(value);
+        }
+        return this;
+    }
+
+    protected CompressedImageData setThreadPool(ExecutorService value) {
+        this.threadPool = value;
+        if (this.tiledImageOperation != null) {
+            this.tiledImageOperation.setThreadPool(value);
+        }
+        return this;
+    }
+
     protected CompressedImageData setTileSize(int... axes) throws FitsException {
         tiledImageOperation().setTileAxes(axes);
         return this;
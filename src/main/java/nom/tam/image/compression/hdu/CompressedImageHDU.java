@@ -34,15 +34,19 @@ package nom.tam.image.compression.hdu;
 import static nom.tam.fits.header.Compression.ZIMAGE;
 import static nom.tam.fits.header.Standard.BLANK;
 
+import java.io.IOException;
 import java.nio.Buffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import nom.tam.fits.BinaryTableHDU;
 import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.FitsUtil;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.ImageData;
@@ -51,6 +55,9 @@ import nom.tam.fits.compression.algorithm.api.ICompressOption;
 import nom.tam.fits.header.Compression;
 import nom.tam.fits.header.GenericKey;
 import nom.tam.fits.header.IFitsHeader;
+import nom.tam.image.compression.tile.CompressedImageTiler;
+import nom.tam.image.compression.tile.DecompressedTileCache;
+import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.Cursor;
 
 /**
@@ -68,6 +75,12 @@ public class CompressedImageHDU extends BinaryTableHDU {
      */
     static final List<IFitsHeader> TABLE_COLUMN_KEYS = Collections.unmodifiableList(Arrays.asList(binaryTableColumnKeyStems()));
 
+    /**
+     * the number of decompressed tiles cached by the tiler of
+     * {@link #getTiler()}.
+     */
+    public static final int DEFAULT_CACHED_TILES = 64;
+
     static final Map<IFitsHeader, BackupRestoreUnCompressedHeaderCard> COMPRESSED_HEADER_MAPPING = new HashMap<IFitsHeader, BackupRestoreUnCompressedHeaderCard>();
 
     static final Map<IFitsHeader, BackupRestoreUnCompressedHeaderCard> UNCOMPRESSED_HEADER_MAPPING = new HashMap<IFitsHeader, BackupRestoreUnCompressedHeaderCard>();
@@ -102,7 +115,12 @@ public class CompressedImageHDU extends BinaryTableHDU {
             BackupRestoreUnCompressedHeaderCard.restore(card, iterator);
         }
         CompressedImageHDU compressedImageHDU = new CompressedImageHDU(header, compressedData);
-        compressedData.prepareUncompressedData(imageHDU.getData().getData(), header);
+        Buffer flatData = imageHDU.getData().getBuffer();
+        if (flatData != null) {
+            compressedData.prepareUncompressedData(flatData.array(), header);
+        } else {
+            compressedData.prepareUncompressedData(imageHDU.getData().getData(), header);
+        }
         return compressedImageHDU;
     }
 
@@ -126,21 +144,55 @@ public class CompressedImageHDU extends BinaryTableHDU {
     }
 
     public ImageHDU asImageHDU() throws FitsException {
-        Header header = new Header();
-        Cursor<String, HeaderCard> imageIterator = header.iterator();
-        Cursor<String, HeaderCard> iterator = getHeader().iterator();
-        while (iterator.hasNext()) {
-            HeaderCard card = iterator.next();
-            if (!TABLE_COLUMN_KEYS.contains(GenericKey.lookup(card.getKey()))) {
-                BackupRestoreUnCompressedHeaderCard.backup(card, imageIterator);
-            }
-        }
+        Header header = getImageHeader();
         ImageData data = (ImageData) ImageHDU.manufactureData(header);
         ImageHDU imageHDU = new ImageHDU(header, data);
         data.setBuffer(getUncompressedData());
         return imageHDU;
     }
 
+    /**
+     * Write the uncompressed image HDU to a stream without ever decompressing
+     * the whole image into memory. The tiles are decompressed one row of
+     * tiles after the other and the pixels are written directly in the byte
+     * order of FITS, so this is the way to convert a compressed image back to
+     * an uncompressed file if the image is larger than the available memory.
+     * Only 2 dimensional images are supported.
+     *
+     * @param out
+     *            the stream to write the header and the data of the
+     *            uncompressed image to
+     * @throws FitsException
+     *             if the image could not be decompressed or written.
+     */
+    public void decompressTo(ArrayDataOutput out) throws FitsException {
+        decompressTo(getImageHeader(), out);
+    }
+
+    /**
+     * Write the uncompressed image HDU to a stream like
+     * {@link #decompressTo(ArrayDataOutput)}, but with a header that was
+     * prepared by the caller, for example to write the image as an extension.
+     *
+     * @param imageHeader
+     *            the header of the uncompressed image, as returned by
+     *            {@link #getImageHeader()} and possibly modified.
+     * @param out
+     *            the stream to write the header and the data of the
+     *            uncompressed image to
+     * @throws FitsException
+     *             if the image could not be decompressed or written.
+     */
+    public void decompressTo(Header imageHeader, ArrayDataOutput out) throws FitsException {
+        imageHeader.write(out);
+        FitsUtil.pad(out, getData().decompressTo(getHeader(), out));
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new FitsException("could not write the decompressed image", e);
+        }
+    }
+
     public void compress() throws FitsException {
         getData().compress(this);
     }
@@ -176,10 +228,90 @@ public class CompressedImageHDU extends BinaryTableHDU {
         return (CompressedImageData) super.getData();
     }
 
+    /**
+     * @return the header of the uncompressed image, restored from the header
+     *         of the compressed table.
+     * @throws FitsException
+     *             if the header could not be restored.
+     */
+    public Header getImageHeader() throws FitsException {
+        Header header = new Header();
+        Cursor<String, HeaderCard> imageIterator = header.iterator();
+        Cursor<String, HeaderCard> iterator = getHeader().iterator();
+        while (iterator.hasNext()) {
+            HeaderCard card = iterator.next();
+            if (!TABLE_COLUMN_KEYS.contains(GenericKey.lookup(card.getKey()))) {
+                BackupRestoreUnCompressedHeaderCard.backup(card, imageIterator);
+            }
+        }
+        return header;
+    }
+
     public Buffer getUncompressedData() throws FitsException {
         return getData().getUncompressedData(getHeader());
     }
 
+    /**
+     * @return a tiler on the compressed image that decompresses only the tiles
+     *         needed for a sub-image, keeping the last
+     *         {@value #DEFAULT_CACHED_TILES} decompressed tiles in a cache.
+     * @throws FitsException
+     *             if the compressed image could not be read.
+     */
+    public CompressedImageTiler getTiler() throws FitsException {
+        return getTiler(DEFAULT_CACHED_TILES);
+    }
+
+    /**
+     * @param maxCachedTiles
+     *            the maximum number of decompressed tiles kept in the cache
+     *            of the tiler.
+     * @return a tiler on the compressed image that decompresses only the tiles
+     *         needed for a sub-image.
+     * @throws FitsException
+     *             if the compressed image could not be read.
+     */
+    public CompressedImageTiler getTiler(int maxCachedTiles) throws FitsException {
+        return getData().getTiler(getHeader(), maxCachedTiles);
+    }
+
+    /**
+     * @param cache
+     *            the cache of decompressed tiles shared with other tilers.
+     * @param file
+     *            the identity of the file of this HDU in the cache, e.g. its
+     *            canonical path.
+     * @param hduIndex
+     *            the index of this HDU in the file.
+     * @return a tiler on the compressed image that decompresses only the tiles
+     *         needed for a sub-image and keeps them in the shared cache.
+     * @throws FitsException
+     *             if the compressed image could not be read.
+     */
+    public CompressedImageTiler getTiler(DecompressedTileCache cache, Object file, int hduIndex) throws FitsException {
+        return getData().getTiler(getHeader(), cache.forImage(file, hduIndex));
+    }
+
+    /**
+     * Decompress a rectangular region of the image. Only the tiles that
+     * intersect the region are decompressed, so the cost depends on the tiles
+     * touched and not on the size of the whole image. The corners and lengths
+     * follow the order of the axes of the image as a java array (like an
+     * {@link nom.tam.image.ImageTiler}), so the last index is the x axis.
+     *
+     * @param corners
+     *            the starting corner (using 0 as the start) of the region.
+     * @param lengths
+     *            the length of the region in each dimension.
+     * @return the pixels of the region, the last index varying fastest.
+     * @throws FitsException
+     *             if the region is not within the image or the image could
+     *             not be decompressed.
+     */
+    public Buffer getUncompressedRegion(int[] corners, int[] lengths) throws FitsException {
+        return getData().getUncompressedRegion(getHeader(), corners, lengths);
+    }
+
     /**
      * Check that this HDU has a valid header.
      *
@@ -211,6 +343,23 @@ public class CompressedImageHDU extends BinaryTableHDU {
         return this;
     }
 
+    /**
+     * Limit the number of tiles of this HDU that are compressed or
+     * decompressed at the same time, instead of the limit of
+     * {@link FitsFactory#getMaxTilesInFlight()}. The limit applies to the tiles
+     * in process, not to the buffers of the whole HDU, see
+     * {@link FitsFactory#setMaxTilesInFlight(int)}.
+     *
+     * @param maxTilesInFlight
+     *            the maximum number of tiles, 0 for no limit and -1 for the
+     *            limit of the FitsFactory.
+     * @return this
+     */
+    public CompressedImageHDU setMaxTilesInFlight(int maxTilesInFlight) {
+        getData().setMaxTilesInFlight(maxTilesInFlight);
+        return this;
+    }
+
     public CompressedImageHDU setQuantAlgorithm(String quantAlgorithm) throws FitsException {
         if (quantAlgorithm != null && !quantAlgorithm.isEmpty()) {
             HeaderCard quantAlgorithmCard = getHeader().card(Compression.ZQUANTIZ).value(quantAlgorithm).card();
@@ -220,4 +369,18 @@ public class CompressedImageHDU extends BinaryTableHDU {
         }
         return this;
     }
+
+    /**
+     * Compress or decompress the tiles of this HDU in the specified thread
+     * pool, instead of the one of
+     * {@link FitsFactory#threadPool()}.
+     *
+     * @param threadPool
+     *            the thread pool to use, null for the one of the FitsFactory.
+     * @return this
+     */
+    public CompressedImageHDU setThreadPool(ExecutorService threadPool) {
+        getData().setThreadPool(threadPool);
+        return this;
+    }
 }
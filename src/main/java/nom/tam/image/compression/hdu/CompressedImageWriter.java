@@ -0,0 +1,476 @@
+package nom.tam.image.compression.hdu;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static nom.tam.fits.header.Compression.COMPRESSED_DATA_COLUMN;
+import static nom.tam.fits.header.Compression.GZIP_COMPRESSED_DATA_COLUMN;
+import static nom.tam.fits.header.Compression.UNCOMPRESSED_DATA_COLUMN;
+import static nom.tam.fits.header.Compression.ZCMPTYPE;
+import static nom.tam.fits.header.Compression.ZQUANTIZ;
+import static nom.tam.fits.header.Standard.NAXIS;
+import static nom.tam.fits.header.Standard.NAXISn;
+import static nom.tam.fits.header.Standard.PCOUNT;
+import static nom.tam.fits.header.Standard.TFIELDS;
+import static nom.tam.fits.header.Standard.TFORMn;
+import static nom.tam.fits.header.Standard.TTYPEn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nom.tam.fits.BinaryTable;
+import nom.tam.fits.BinaryTableHDU;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsUtil;
+import nom.tam.fits.Header;
+import nom.tam.fits.HeaderCard;
+import nom.tam.fits.compression.algorithm.api.ICompressOption;
+import nom.tam.image.compression.tile.TiledImageCompressionOperation;
+import nom.tam.util.ArrayDataInput;
+import nom.tam.util.ArrayDataOutput;
+import nom.tam.util.ArrayFuncs;
+import nom.tam.util.BufferedDataOutputStream;
+import nom.tam.util.Cursor;
+import nom.tam.util.SafeClose;
+import nom.tam.util.type.PrimitiveType;
+
+/**
+ * Writes a tile compressed image without ever having the whole image in
+ * memory. The rows of the image are handed over one after the other, each row
+ * of tiles is compressed as soon as all of its rows are there. The compressed
+ * tiles are kept in a temporary file until {@link #finish(ArrayDataOutput)}
+ * writes the complete compressed image HDU, so only one row of tiles of the
+ * image needs to be in memory. Only 2 dimensional images are supported and the
+ * null pixel masks of {@link CompressedImageHDU#preserveNulls(String)} are not
+ * available.
+ */
+public class CompressedImageWriter {
+
+    /**
+     * the values of one column of the compressed table, by tile.
+     */
+    private static final class Column {
+
+        /**
+         * the TFORM of a fixed size column, or the type of the elements of a
+         * variable length column.
+         */
+        private final String form;
+
+        private final boolean varying;
+
+        private final Object[] values;
+
+        private final long[] sizes;
+
+        private final long[] offsets;
+
+        private int elementSize;
+
+        private long maxSize;
+
+        private Column(String form, boolean varying, int tiles) {
+            this.form = form;
+            this.varying = varying;
+            this.values = varying ? null : new Object[tiles];
+            this.sizes = varying ? new long[tiles] : null;
+            this.offsets = varying ? new long[tiles] : null;
+        }
+    }
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final Header header;
+
+    private final TiledImageCompressionOperation operation;
+
+    private final PrimitiveType<Buffer> baseType;
+
+    private final int width;
+
+    private final int height;
+
+    private final int tileHeight;
+
+    private final int tilesPerRow;
+
+    private final int tileCount;
+
+    private final Buffer pixels;
+
+    private int rowsWritten;
+
+    private int compressedTiles;
+
+    private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+
+    private Header compressedTileRowHeader;
+
+    private final File heapFile;
+
+    private final BufferedDataOutputStream heap;
+
+    private long heapSize;
+
+    /**
+     * Prepare the compression of an image, of which only the header is known
+     * yet. The tile axis that are specified with -1 are set to the
+     * corresponding axis of the image, without tile axis the image is
+     * compressed row by row. Next step would be to set the compression options
+     * and then to write the rows of the image.
+     *
+     * @param imageHeader
+     *            the header of the uncompressed image
+     * @param tileAxis
+     *            the axis of the tiles in the image
+     * @throws FitsException
+     *             if the image is not 2 dimensional or the temporary file for
+     *             the compressed tiles could not be created.
+     */
+    public CompressedImageWriter(Header imageHeader, int... tileAxis) throws FitsException {
+        if (imageHeader.getIntValue(NAXIS) != 2) {
+            throw new FitsException("Only 2 dimensional images can be written row by row");
+        }
+        this.width = imageHeader.getIntValue(NAXISn.n(1));
+        this.height = imageHeader.getIntValue(NAXISn.n(2));
+        int tileWidth = tileAxis.length > 0 && tileAxis[0] > 0 ? tileAxis[0] : this.width;
+        if (tileAxis.length > 1) {
+            this.tileHeight = tileAxis[1] > 0 ? Math.min(tileAxis[1], this.height) : this.height;
+        } else {
+            this.tileHeight = 1;
+        }
+        this.tilesPerRow = (this.width + tileWidth - 1) / tileWidth;
+        this.tileCount = this.tilesPerRow * ((this.height + this.tileHeight - 1) / this.tileHeight);
+
+        this.header = new Header();
+        new CompressedImageData().fillHeader(this.header);
+        Cursor<String, HeaderCard> iterator = this.header.iterator();
+        Cursor<String, HeaderCard> imageIterator = imageHeader.iterator();
+        while (imageIterator.hasNext()) {
+            BackupRestoreUnCompressedHeaderCard.restore(imageIterator.next(), iterator);
+        }
+        this.operation = new TiledImageCompressionOperation(new BinaryTable());
+        this.operation.setAxes(new int[]{
+            this.width,
+            this.tileHeight
+        });
+        this.operation.setTileAxes(new int[]{
+            tileWidth,
+            this.tileHeight
+        });
+        this.operation.readPrimaryHeaders(this.header);
+        this.baseType = this.operation.getBaseType();
+        this.pixels = this.baseType.newBuffer(this.width * this.tileHeight);
+        this.operation.prepareUncompressedData(this.pixels);
+        try {
+            this.heapFile = File.createTempFile("nom-tam-fits", ".heap");
+            this.heapFile.deleteOnExit();
+            this.heap = new BufferedDataOutputStream(new FileOutputStream(this.heapFile));
+        } catch (IOException e) {
+            throw new FitsException("could not create the temporary file for the compressed tiles", e);
+        }
+    }
+
+    /**
+     * Compress the last rows and write the compressed image HDU, the header,
+     * the table of the tiles and the compressed tiles. The temporary file of
+     * the compressed tiles is deleted afterwards.
+     *
+     * @param out
+     *            the stream to write the HDU to
+     * @throws FitsException
+     *             if not all rows of the image were written or the HDU could
+     *             not be written.
+     */
+    public void finish(ArrayDataOutput out) throws FitsException {
+        try {
+            if (this.pixels.position() > 0) {
+                compressTileRow();
+            }
+            if (this.rowsWritten < this.height) {
+                throw new FitsException("Only " + this.rowsWritten + " of the " + this.height + " rows of the image were written");
+            }
+            this.heap.close();
+            boolean longDescriptors = this.heapSize > Integer.MAX_VALUE;
+            long rowLength = fillHeader(longDescriptors);
+            this.header.write(out);
+            for (int tile = 0; tile < this.tileCount; tile++) {
+                writeRow(out, tile, longDescriptors);
+            }
+            copyHeap(out);
+            FitsUtil.pad(out, rowLength * this.tileCount + this.heapSize);
+        } catch (IOException e) {
+            throw new FitsException("could not write the compressed image", e);
+        } finally {
+            SafeClose.close(this.heap);
+            this.heapFile.delete();
+        }
+    }
+
+    /**
+     * @param clazz
+     *            the class of the option
+     * @param <T>
+     *            the type of the option
+     * @return the compression option of the specified class, to set the
+     *         compression parameters before the first rows are written.
+     */
+    public <T extends ICompressOption> T getCompressOption(Class<T> clazz) {
+        return this.operation.compressOptions().unwrap(clazz);
+    }
+
+    /**
+     * @param compressAlgorithm
+     *            the compression algorithm to use
+     * @return this
+     * @throws FitsException
+     *             if the header card could not be set
+     */
+    public CompressedImageWriter setCompressAlgorithm(String compressAlgorithm) throws FitsException {
+        this.operation.setCompressAlgorithm(this.header.card(ZCMPTYPE).value(compressAlgorithm).card());
+        return this;
+    }
+
+    /**
+     * @param quantAlgorithm
+     *            the quantization algorithm to use, or null for none
+     * @return this
+     * @throws FitsException
+     *             if the header card could not be set
+     */
+    public CompressedImageWriter setQuantAlgorithm(String quantAlgorithm) throws FitsException {
+        if (quantAlgorithm != null && !quantAlgorithm.isEmpty()) {
+            this.operation.setQuantAlgorithm(this.header.card(ZQUANTIZ).value(quantAlgorithm).card());
+        } else {
+            this.operation.setQuantAlgorithm(null);
+        }
+        return this;
+    }
+
+    /**
+     * Read the next rows of the image from a stream.
+     *
+     * @param in
+     *            the stream with the pixels of the rows, in the FITS format
+     * @param rows
+     *            the number of rows to read
+     * @return this
+     * @throws FitsException
+     *             if the rows could not be read or are too many for the image.
+     */
+    public CompressedImageWriter writeRows(ArrayDataInput in, int rows) throws FitsException {
+        Object row = this.baseType.newArray(this.width);
+        for (int index = 0; index < rows; index++) {
+            try {
+                in.readLArray(row);
+            } catch (IOException e) {
+                throw new FitsException("could not read the rows of the image", e);
+            }
+            writeRow(row);
+        }
+        return this;
+    }
+
+    /**
+     * Write the next rows of the image.
+     *
+     * @param rows
+     *            the rows, an array of primitive arrays of the image width.
+     * @return this
+     * @throws FitsException
+     *             if the rows do not fit the image.
+     */
+    public CompressedImageWriter writeRows(Object[] rows) throws FitsException {
+        for (Object row : rows) {
+            writeRow(row);
+        }
+        return this;
+    }
+
+    private void collectTiles(BinaryTableHDU hdu) throws FitsException, IOException {
+        for (int col = 0; col < hdu.getNCols(); col++) {
+            String name = hdu.getColumnName(col);
+            Column column = this.columns.get(name);
+            if (column == null) {
+                String tform = hdu.getHeader().getStringValue(TFORMn.n(col + 1)).trim();
+                if (isTileDataColumn(name)) {
+                    int type = tform.length() - 1;
+                    if (tform.indexOf('(') > 0) {
+                        type = tform.indexOf('(') - 1;
+                    }
+                    column = new Column(tform.substring(type, type + 1), true, this.tileCount);
+                } else {
+                    column = new Column(tform, false, this.tileCount);
+                }
+                this.columns.put(name, column);
+            }
+            for (int row = 0; row < hdu.getNRows(); row++) {
+                int tile = this.compressedTiles + row;
+                Object element = hdu.getData().getElement(row, col);
+                if (column.varying) {
+                    column.sizes[tile] = Array.getLength(element);
+                    column.offsets[tile] = this.heapSize;
+                    column.maxSize = Math.max(column.maxSize, column.sizes[tile]);
+                    this.heap.writeArray(element);
+                    this.heapSize += ArrayFuncs.computeLSize(element);
+                } else {
+                    column.values[tile] = element;
+                    column.elementSize = (int) ArrayFuncs.computeLSize(element);
+                }
+            }
+        }
+    }
+
+    private void compressTileRow() throws FitsException {
+        int rows = this.pixels.position() / this.width;
+        if (rows != this.tileHeight) {
+            this.operation.setAxes(new int[]{
+                this.width,
+                rows
+            });
+        }
+        this.pixels.rewind();
+        this.operation.prepareUncompressedData(this.pixels);
+        BinaryTable table = new BinaryTable();
+        Header tableHeader = new Header();
+        table.fillHeader(tableHeader);
+        BinaryTableHDU hdu = new BinaryTableHDU(tableHeader, table);
+        this.operation.compress(hdu);
+        try {
+            collectTiles(hdu);
+        } catch (IOException e) {
+            throw new FitsException("could not write the compressed tiles to the temporary file", e);
+        }
+        this.compressedTiles += this.tilesPerRow;
+        this.compressedTileRowHeader = tableHeader;
+        this.pixels.clear();
+    }
+
+    private void copyHeap(ArrayDataOutput out) throws IOException {
+        InputStream in = new FileInputStream(this.heapFile);
+        try {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            SafeClose.close(in);
+        }
+    }
+
+    /**
+     * complete the header with the description of the table of the tiles and
+     * the compression keywords.
+     *
+     * @return the length of one row of the table in bytes.
+     */
+    private long fillHeader(boolean longDescriptors) throws FitsException {
+        long rowLength = 0;
+        Cursor<String, HeaderCard> iterator = this.header.iterator();
+        iterator.setKey(TFIELDS.key());
+        iterator.next();
+        int col = 1;
+        for (Map.Entry<String, Column> entry : this.columns.entrySet()) {
+            Column column = entry.getValue();
+            String tform;
+            if (column.varying) {
+                tform = (longDescriptors ? "1Q" : "1P") + column.form + "(" + column.maxSize + ")";
+                rowLength += longDescriptors ? 2 * 8 : 2 * 4;
+            } else {
+                tform = column.form;
+                rowLength += column.elementSize;
+            }
+            iterator.add(new HeaderCard(TTYPEn.n(col).key(), entry.getKey(), TTYPEn.comment()));
+            iterator.add(new HeaderCard(TFORMn.n(col).key(), tform, TFORMn.comment()));
+            col++;
+        }
+        this.header.card(NAXISn.n(1)).value(rowLength);
+        this.header.card(NAXISn.n(2)).value(this.tileCount);
+        this.header.card(PCOUNT).value(this.heapSize);
+        this.header.card(TFIELDS).value(this.columns.size());
+        Cursor<String, HeaderCard> compressionCards = this.compressedTileRowHeader.iterator();
+        while (compressionCards.hasNext()) {
+            HeaderCard card = compressionCards.next();
+            if (card.getKey().startsWith("Z") && !this.header.containsKey(card.getKey())) {
+                this.header.addLine(card);
+            }
+        }
+        return rowLength;
+    }
+
+    /**
+     * the tile data columns are always variable length columns, even if the
+     * tiles of one row of tiles happen to have the same compressed size.
+     */
+    private static boolean isTileDataColumn(String name) {
+        return COMPRESSED_DATA_COLUMN.equals(name) || GZIP_COMPRESSED_DATA_COLUMN.equals(name) || UNCOMPRESSED_DATA_COLUMN.equals(name);
+    }
+
+    private void writeRow(ArrayDataOutput out, int tile, boolean longDescriptors) throws IOException {
+        for (Column column : this.columns.values()) {
+            if (column.varying) {
+                if (longDescriptors) {
+                    out.writeLong(column.sizes[tile]);
+                    out.writeLong(column.offsets[tile]);
+                } else {
+                    out.writeInt((int) column.sizes[tile]);
+                    out.writeInt((int) column.offsets[tile]);
+                }
+            } else if (column.values[tile] != null) {
+                out.writeArray(column.values[tile]);
+            } else {
+                out.write(new byte[column.elementSize]);
+            }
+        }
+    }
+
+    private void writeRow(Object row) throws FitsException {
+        if (row == null || row.getClass().getComponentType() != this.baseType.primitiveClass() || Array.getLength(row) != this.width) {
+            throw new FitsException("Rows must be " + this.baseType.primitiveClass() + " arrays of length " + this.width);
+        }
+        if (this.rowsWritten >= this.height) {
+            throw new FitsException("All " + this.height + " rows of the image were already written");
+        }
+        this.baseType.putArray(this.pixels, row);
+        this.rowsWritten++;
+        if (!this.pixels.hasRemaining() || this.rowsWritten == this.height) {
+            compressTileRow();
+        }
+    }
+}
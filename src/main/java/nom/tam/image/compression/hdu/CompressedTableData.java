@@ -37,6 +37,9 @@ import static nom.tam.image.compression.bintable.BinaryTableTileDescription.tile
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import nom.tam.fits.BinaryTable;
 import nom.tam.fits.FitsException;
@@ -57,6 +60,17 @@ public class CompressedTableData extends BinaryTable {
 
     private String[] columnCompressionAlgorithms;
 
+    /**
+     * the thread pool for the tiles, null for the one of the FitsFactory.
+     */
+    private ExecutorService threadPool;
+
+    /**
+     * the maximum number of tiles processed at the same time, -1 for the limit
+     * of the FitsFactory.
+     */
+    private int maxTilesInFlight = -1;
+
     public CompressedTableData() {
     }
 
@@ -65,9 +79,7 @@ public class CompressedTableData extends BinaryTable {
     }
 
     public void compress(Header header) throws FitsException {
-        for (BinaryTableTile binaryTableTile : this.tiles) {
-            binaryTableTile.execute(FitsFactory.threadPool());
-        }
+        processTiles();
         for (BinaryTableTile binaryTableTile : this.tiles) {
             binaryTableTile.waitForResult();
             binaryTableTile.fillHeader(header);
@@ -128,15 +140,45 @@ public class CompressedTableData extends BinaryTable {
                                 .tileIndex(tileIndex++)//
                                 .compressionAlgorithm(compressionAlgorithm));
                 this.tiles.add(binaryTableTile);
-                binaryTableTile.execute(FitsFactory.threadPool());
             }
         }
+        processTiles();
         for (BinaryTableTile binaryTableTile : this.tiles) {
             binaryTableTile.waitForResult();
         }
         return dataToFill;
     }
 
+    /**
+     * submit all tiles to the thread pool, but never more than the maximum
+     * number of tiles in flight at the same time. When the limit is reached
+     * the next tile is submitted as soon as any tile is done.
+     */
+    private void processTiles() {
+        ExecutorService pool = this.threadPool == null ? FitsFactory.threadPool() : this.threadPool;
+        int maxInFlight = this.maxTilesInFlight < 0 ? FitsFactory.getMaxTilesInFlight() : this.maxTilesInFlight;
+        BlockingQueue<BinaryTableTile> processed = new LinkedBlockingQueue<BinaryTableTile>();
+        for (int index = 0; index < this.tiles.size(); index++) {
+            if (maxInFlight <= 0) {
+                this.tiles.get(index).execute(pool);
+            } else {
+                if (index >= maxInFlight) {
+                    takeProcessed(processed).waitForResult();
+                }
+                this.tiles.get(index).execute(pool, processed);
+            }
+        }
+    }
+
+    private static BinaryTableTile takeProcessed(BlockingQueue<BinaryTableTile> processed) {
+        try {
+            return processed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a tile", e);
+        }
+    }
+
     protected int getRowsPerTile() {
         return this.rowsPerTile;
     }
@@ -145,6 +187,16 @@ public class CompressedTableData extends BinaryTable {
         this.columnCompressionAlgorithms = columnCompressionAlgorithms;
     }
 
+    protected CompressedTableData setMaxTilesInFlight(int value) {
+        this.maxTilesInFlight = value;
+        return this;
+    }
+
+    protected CompressedTableData setThreadPool(ExecutorService value) {
+        this.threadPool = value;
+        return this;
+    }
+
     protected CompressedTableData setRowsPerTile(int value) {
         this.rowsPerTile = value;
         return this;
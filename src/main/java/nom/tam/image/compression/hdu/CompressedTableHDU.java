@@ -33,9 +33,12 @@ package nom.tam.image.compression.hdu;
 
 import static nom.tam.fits.header.Compression.ZTABLE;
 
+import java.util.concurrent.ExecutorService;
+
 import nom.tam.fits.BinaryTable;
 import nom.tam.fits.BinaryTableHDU;
 import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsFactory;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.header.Standard;
@@ -130,4 +133,34 @@ public class CompressedTableHDU extends BinaryTableHDU {
         return (CompressedTableData) super.getData();
     }
 
+    /**
+     * Limit the number of tiles of this HDU that are compressed or
+     * decompressed at the same time, instead of the limit of
+     * {@link FitsFactory#getMaxTilesInFlight()}. The limit applies to the tiles
+     * in process, not to the buffers of the whole HDU, see
+     * {@link FitsFactory#setMaxTilesInFlight(int)}.
+     *
+     * @param maxTilesInFlight
+     *            the maximum number of tiles, 0 for no limit and -1 for the
+     *            limit of the FitsFactory.
+     * @return this
+     */
+    public CompressedTableHDU setMaxTilesInFlight(int maxTilesInFlight) {
+        getData().setMaxTilesInFlight(maxTilesInFlight);
+        return this;
+    }
+
+    /**
+     * Compress or decompress the tiles of this HDU in the specified thread
+     * pool, instead of the one of {@link FitsFactory#threadPool()}.
+     *
+     * @param threadPool
+     *            the thread pool to use, null for the one of the FitsFactory.
+     * @return this
+     */
+    public CompressedTableHDU setThreadPool(ExecutorService threadPool) {
+        getData().setThreadPool(threadPool);
+        return this;
+    }
+
 }
@@ -0,0 +1,131 @@
+package nom.tam.image.compression.tile;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import nom.tam.image.ImageTiler;
+import nom.tam.image.tile.operation.TileArea;
+import nom.tam.util.ArrayFuncs;
+
+/**
+ * An image tiler on a tile compressed image. Only the compressed tiles that
+ * intersect a requested sub-image are decompressed, and the decompressed tiles
+ * are kept in a least recently used cache (see {@link DecompressedTileCache})
+ * so that neighboring requests do not decompress them again. The tiler may be
+ * shared between threads: requests for different tiles decompress in
+ * parallel, a request waits only for tiles another request is decompressing
+ * and then takes them from the cache.
+ */
+public class CompressedImageTiler implements ImageTiler {
+
+    private final TiledImageCompressionOperation tiledImageOperation;
+
+    /**
+     * the dimensions of the image in java array order, the last one is the x
+     * axis.
+     */
+    private final int[] dims;
+
+    private final DecompressedTileCache.ImageTiles decompressedTiles;
+
+    /**
+     * create a tiler on a compressed image with a cache of its own.
+     *
+     * @param tiledImageOperation
+     *            the operation describing the tiles of the compressed image,
+     *            as read from the header.
+     * @param maxCachedTiles
+     *            the maximum number of decompressed tiles kept in the cache.
+     */
+    public CompressedImageTiler(TiledImageCompressionOperation tiledImageOperation, int maxCachedTiles) {
+        this(tiledImageOperation, new DecompressedTileCache((long) maxCachedTiles * tiledImageOperation.getTileSizeInBytes()).forImage(tiledImageOperation, 0));
+    }
+
+    /**
+     * create a tiler on a compressed image that uses a shared cache.
+     *
+     * @param tiledImageOperation
+     *            the operation describing the tiles of the compressed image,
+     *            as read from the header.
+     * @param decompressedTiles
+     *            the view of the shared cache for the tiles of this image.
+     */
+    public CompressedImageTiler(TiledImageCompressionOperation tiledImageOperation, DecompressedTileCache.ImageTiles decompressedTiles) {
+        this.tiledImageOperation = tiledImageOperation;
+        int[] axes = tiledImageOperation.getAxes();
+        this.dims = new int[axes.length];
+        for (int index = 0; index < axes.length; index++) {
+            this.dims[index] = axes[axes.length - 1 - index];
+        }
+        this.decompressedTiles = decompressedTiles;
+    }
+
+    @Override
+    public Object getCompleteImage() throws IOException {
+        Object image = getTile(new int[this.dims.length], this.dims);
+        return ArrayFuncs.curl(image, this.dims);
+    }
+
+    @Override
+    public Object getTile(int[] corners, int[] lengths) throws IOException {
+        checkTile(corners, lengths);
+        Object tile = this.tiledImageOperation.getBaseType().newArray(lengths[0] * lengths[1]);
+        getTile(tile, corners, lengths);
+        return tile;
+    }
+
+    @Override
+    public void getTile(Object array, int[] corners, int[] lengths) throws IOException {
+        checkTile(corners, lengths);
+        TileArea region = new TileArea().start(corners[1], corners[0]).end(corners[1] + lengths[1], corners[0] + lengths[0]);
+        try {
+            this.tiledImageOperation.decompressRegion(region, array, this.decompressedTiles);
+        } catch (IllegalStateException e) {
+            throw new IOException("Could not decompress tiles", e);
+        }
+    }
+
+    private void checkTile(int[] corners, int[] lengths) throws IOException {
+        if (this.dims.length != 2) {
+            throw new IOException("Only 2 dimensional images are supported");
+        }
+        if (corners.length != this.dims.length || lengths.length != this.dims.length) {
+            throw new IOException("Inconsistent sub-image request");
+        }
+        for (int index = 0; index < this.dims.length; index++) {
+            if (corners[index] < 0 || lengths[index] < 0 || corners[index] + lengths[index] > this.dims[index]) {
+                throw new IOException("Sub-image not within image");
+            }
+        }
+    }
+}
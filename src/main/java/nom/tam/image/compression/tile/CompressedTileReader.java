@@ -0,0 +1,97 @@
+package nom.tam.image.compression.tile;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nom.tam.fits.BinaryTable;
+import nom.tam.fits.FitsException;
+import nom.tam.image.compression.tile.mask.ImageNullPixelMask;
+
+/**
+ * Reads the compressed data of single tiles from the heap of the compressed
+ * table when the tiles are needed, so that only the descriptors of the data
+ * columns are kept in memory.
+ */
+final class CompressedTileReader {
+
+    private final BinaryTable binaryTable;
+
+    private final List<Integer> columns = new ArrayList<Integer>();
+
+    private final List<long[]> descriptors = new ArrayList<long[]>();
+
+    private final List<TileCompressionType> types = new ArrayList<TileCompressionType>();
+
+    private int nullPixelMaskColumn = -1;
+
+    private long[] nullPixelMaskDescriptors;
+
+    CompressedTileReader(BinaryTable binaryTable) {
+        this.binaryTable = binaryTable;
+    }
+
+    /**
+     * add a column with data of the tiles, the data of a later column replaces
+     * the one of an earlier column if the tile has data in both.
+     */
+    void addColumn(int column, TileCompressionType type) throws FitsException {
+        this.columns.add(column);
+        this.descriptors.add(this.binaryTable.getDescriptors(column));
+        this.types.add(type);
+    }
+
+    void setNullPixelMaskColumn(int column) throws FitsException {
+        this.nullPixelMaskColumn = column;
+        this.nullPixelMaskDescriptors = this.binaryTable.getDescriptors(column);
+    }
+
+    /**
+     * read the compressed data and the null pixel mask of the tile. Requests
+     * on other tiles may read at the same time, the reads from the table are
+     * serialized.
+     */
+    synchronized void read(TileCompressionOperation tileOperation, ImageNullPixelMask imageNullPixelMask) throws FitsException {
+        int row = tileOperation.getTileIndex();
+        for (int index = 0; index < this.columns.size(); index++) {
+            tileOperation.setCompressed(readArray(this.columns.get(index), this.descriptors.get(index), row), this.types.get(index));
+        }
+        if (this.nullPixelMaskColumn >= 0 && imageNullPixelMask != null) {
+            imageNullPixelMask.setTileMask(row, (byte[]) readArray(this.nullPixelMaskColumn, this.nullPixelMaskDescriptors, row));
+        }
+    }
+
+    private Object readArray(int column, long[] columnDescriptors, int row) throws FitsException {
+        return this.binaryTable.readHeapArray(column, columnDescriptors[2 * row + 1], (int) columnDescriptors[2 * row]);
+    }
+}
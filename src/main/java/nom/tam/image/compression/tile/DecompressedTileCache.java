@@ -0,0 +1,220 @@
+package nom.tam.image.compression.tile;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nom.tam.util.type.PrimitiveTypeHandler;
+
+/**
+ * A bounded cache of decompressed image tiles that can be shared between
+ * tilers, threads and requests. Tiles are identified by the identity of the
+ * file (any object with a suitable equals, e.g. the canonical path), the index
+ * of the HDU in the file and the index of the tile in the image. The least
+ * recently used tiles are evicted when the total size of the cached pixels
+ * exceeds the maximum size in bytes. Two threads that miss the same tile at the
+ * same time may both decompress it; the cached pixels are never modified once
+ * they are in the cache.
+ */
+public class DecompressedTileCache {
+
+    /**
+     * The view of the cache for the tiles of a single image.
+     */
+    public final class ImageTiles {
+
+        private final Object file;
+
+        private final int hduIndex;
+
+        private ImageTiles(Object file, int hduIndex) {
+            this.file = file;
+            this.hduIndex = hduIndex;
+        }
+
+        Object get(int tileIndex) {
+            return DecompressedTileCache.this.get(new Key(this.file, this.hduIndex, tileIndex));
+        }
+
+        void put(int tileIndex, Object pixels) {
+            DecompressedTileCache.this.put(new Key(this.file, this.hduIndex, tileIndex), pixels);
+        }
+    }
+
+    private static final class Key {
+
+        private final Object file;
+
+        private final int hduIndex;
+
+        private final int tileIndex;
+
+        private Key(Object file, int hduIndex, int tileIndex) {
+            this.file = file;
+            this.hduIndex = hduIndex;
+            this.tileIndex = tileIndex;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return this.tileIndex == other.tileIndex && this.hduIndex == other.hduIndex && this.file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            return (this.file.hashCode() * prime + this.hduIndex) * prime + this.tileIndex;
+        }
+    }
+
+    private final Map<Key, Object> tiles = new LinkedHashMap<Key, Object>(16, 0.75f, true);
+
+    private final long maxSize;
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * create a cache of decompressed tiles.
+     *
+     * @param maxSize
+     *            the maximum size in bytes of the cached pixels.
+     */
+    public DecompressedTileCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * remove all tiles from the cache, the counters are not reset.
+     */
+    public synchronized void clear() {
+        this.tiles.clear();
+        this.size = 0;
+    }
+
+    /**
+     * @param file
+     *            the identity of the file, e.g. its canonical path.
+     * @param hduIndex
+     *            the index of the compressed image HDU in the file.
+     * @return the view of this cache for the tiles of the image.
+     */
+    public ImageTiles forImage(Object file, int hduIndex) {
+        if (file == null) {
+            throw new IllegalArgumentException("the file identity must not be null");
+        }
+        return new ImageTiles(file, hduIndex);
+    }
+
+    /**
+     * @return the number of tiles removed from the cache to respect its
+     *         maximum size.
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * @return the number of tiles found in the cache.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the maximum size in bytes of the cached pixels.
+     */
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return the number of tiles that were not found in the cache.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return the size in bytes of the cached pixels.
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of cached tiles.
+     */
+    public synchronized int getTileCount() {
+        return this.tiles.size();
+    }
+
+    private synchronized Object get(Key key) {
+        Object pixels = this.tiles.get(key);
+        if (pixels == null) {
+            this.misses++;
+        } else {
+            this.hits++;
+        }
+        return pixels;
+    }
+
+    private synchronized void put(Key key, Object pixels) {
+        Object previous = this.tiles.put(key, pixels);
+        if (previous != null) {
+            this.size -= sizeOf(previous);
+        }
+        this.size += sizeOf(pixels);
+        Iterator<Object> eldest = this.tiles.values().iterator();
+        while (this.size > this.maxSize && eldest.hasNext()) {
+            this.size -= sizeOf(eldest.next());
+            eldest.remove();
+            this.evictions++;
+        }
+    }
+
+    private static long sizeOf(Object pixels) {
+        return (long) Array.getLength(pixels) * PrimitiveTypeHandler.valueOf(pixels.getClass().getComponentType()).size();
+    }
+}
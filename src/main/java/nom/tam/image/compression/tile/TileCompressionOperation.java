@@ -33,6 +33,8 @@ package nom.tam.image.compression.tile;
 
 import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
 import nom.tam.fits.compression.algorithm.api.ICompressorControl;
@@ -59,6 +61,12 @@ abstract class TileCompressionOperation extends AbstractTileOperation implements
 
     protected ICompressOption tileOptions;
 
+    /**
+     * held while the tile is decompressed for a region, the tile keeps the
+     * state of one decompression at a time.
+     */
+    private final Lock decompressionLock = new ReentrantLock();
+
     protected TileCompressionOperation(TiledImageCompressionOperation operation, int tileIndex, TileArea area) {
         super(operation, tileIndex, area);
     }
@@ -93,6 +101,10 @@ abstract class TileCompressionOperation extends AbstractTileOperation implements
         return getTiledImageOperation().getCompressedWholeArea();
     }
 
+    Lock getDecompressionLock() {
+        return this.decompressionLock;
+    }
+
     protected TileCompressionType getCompressionType() {
         return this.compressionType;
     }
@@ -122,6 +134,14 @@ abstract class TileCompressionOperation extends AbstractTileOperation implements
         return this;
     }
 
+    /**
+     * forget the compressed data of the tile after it was decompressed, when
+     * it is read again each time the tile is needed.
+     */
+    protected void releaseCompressedData() {
+        this.compressedData = null;
+    }
+
     protected TileCompressionOperation setCompressedOffset(int value) {
         this.compressedOffset = value;
         return this;
@@ -60,6 +60,10 @@ public class TileDecompressor extends TileCompressionOperation {
     private void decompress() {
         initTileOptions();
         this.tileOptions.getCompressionParameters().getValuesFromColumn(getTileIndex());
+        if (this.compressedData != null) {
+            // the tile may be decompressed more than once.
+            this.compressedData.rewind();
+        }
         if (this.compressionType == TileCompressionType.COMPRESSED) {
             getCompressorControl().decompress(this.compressedData, getTileBuffer().getBuffer(), this.tileOptions);
             if (this.nullPixelMaskRestorer != null) {
@@ -48,11 +48,18 @@ import static nom.tam.image.compression.tile.TileCompressionType.COMPRESSED;
 import static nom.tam.image.compression.tile.TileCompressionType.GZIP_COMPRESSED;
 import static nom.tam.image.compression.tile.TileCompressionType.UNCOMPRESSED;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import nom.tam.fits.BinaryTable;
 import nom.tam.fits.BinaryTableHDU;
@@ -68,7 +75,9 @@ import nom.tam.fits.compression.provider.param.api.HeaderAccess;
 import nom.tam.fits.compression.provider.param.api.HeaderCardAccess;
 import nom.tam.image.compression.tile.mask.ImageNullPixelMask;
 import nom.tam.image.tile.operation.AbstractTiledImageOperation;
+import nom.tam.image.tile.operation.ITileOperation;
 import nom.tam.image.tile.operation.TileArea;
+import nom.tam.util.ArrayDataOutput;
 import nom.tam.util.type.PrimitiveType;
 import nom.tam.util.type.PrimitiveTypeHandler;
 import nom.tam.util.type.PrimitiveTypes;
@@ -105,6 +114,24 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
 
     private ImageNullPixelMask imageNullPixelMask;
 
+    /**
+     * reads the compressed data of the tiles when they are needed, null if the
+     * data of all tiles was read with the table.
+     */
+    private CompressedTileReader tileReader;
+
+    /**
+     * the thread pool to process the tiles with, null for the one of the
+     * {@link FitsFactory}.
+     */
+    private ExecutorService threadPool;
+
+    /**
+     * the maximum number of tiles processed at the same time, 0 for no limit
+     * and -1 for the limit of the {@link FitsFactory}.
+     */
+    private int maxTilesInFlight = -1;
+
     private static void addColumnToTable(BinaryTableHDU hdu, Object column, String columnName) throws FitsException {
         if (column != null) {
             hdu.setColumnName(hdu.addColumn(column) - 1, columnName, null);
@@ -149,11 +176,141 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         for (TileCompressionOperation tileOperation : getTileOperations()) {
             tileOperation.setWholeImageBuffer(decompressedWholeArea);
         }
+        List<TileCompressionOperation> tileOperations = Arrays.asList(getTileOperations());
+        readTiles(tileOperations);
         processAllTiles();
+        releaseTiles(tileOperations);
         decompressedWholeArea.rewind();
         return decompressedWholeArea;
     }
 
+    /**
+     * Decompress the image one row of tiles after the other and write the
+     * pixels of each row of tiles to the stream, in the byte order of FITS.
+     * Only the pixels of one row of tiles are in memory at any time, the
+     * padding of the data is left to the caller.
+     *
+     * @param out
+     *            the stream to write the pixels to
+     * @return the number of bytes written
+     * @throws IOException
+     *             if the pixels could not be written
+     */
+    public long decompressTo(ArrayDataOutput out) throws IOException {
+        int width = getAxes()[0];
+        int height = getAxes()[1];
+        int tileHeight = getTileAxes()[1];
+        Object tileRowPixels = null;
+        for (int y = 0; y < height; y += tileHeight) {
+            int rows = Math.min(tileHeight, height - y);
+            if (tileRowPixels == null || Array.getLength(tileRowPixels) != width * rows) {
+                tileRowPixels = getBaseType().newArray(width * rows);
+            }
+            decompressRegion(new TileArea().start(0, y).end(width, y + rows), tileRowPixels, null);
+            out.writeArray(tileRowPixels);
+        }
+        return (long) width * height * getBaseType().size();
+    }
+
+    /**
+     * Decompress only the tiles that intersect a region of the image and copy
+     * the pixels of the region into a new buffer, row after row.
+     *
+     * @param x
+     *            the x position of the region in the image
+     * @param y
+     *            the y position of the region in the image
+     * @param width
+     *            the width of the region
+     * @param heigth
+     *            the height of the region
+     * @return the pixels of the region.
+     */
+    public Buffer decompressRegion(int x, int y, int width, int heigth) {
+        Object decompressedRegion = getBaseType().newArray(width * heigth);
+        decompressRegion(new TileArea().start(x, y).end(x + width, y + heigth), decompressedRegion, null);
+        return getBaseType().wrap(decompressedRegion);
+    }
+
+    /**
+     * Decompress the tiles that intersect a region of the image and copy the
+     * pixels of the region into an array, row after row. Tiles found in the
+     * cache are not decompressed again, newly decompressed tiles are added to
+     * it.
+     *
+     * @param region
+     *            the region of the image
+     * @param decompressedRegion
+     *            the primitive array for the pixels of the region
+     * @param decompressedTiles
+     *            the cache of decompressed tiles of this image, or null if the
+     *            tiles should not be cached.
+     */
+    void decompressRegion(TileArea region, Object decompressedRegion, DecompressedTileCache.ImageTiles decompressedTiles) {
+        Map<Integer, Object> tilePixels = new HashMap<Integer, Object>();
+        List<TileCompressionOperation> tiles = new ArrayList<TileCompressionOperation>();
+        List<TileCompressionOperation> missing = new ArrayList<TileCompressionOperation>();
+        try {
+            for (TileCompressionOperation tileOperation : getTileOperations()) {
+                if (tileOperation.getArea().intersects(region)) {
+                    tiles.add(tileOperation);
+                    // the tiles are locked in the order of their index, so that
+                    // requests sharing tiles can not dead lock, and a tile
+                    // decompressed by another request is found in the cache.
+                    tileOperation.getDecompressionLock().lock();
+                    Object pixels = decompressedTiles == null ? null : decompressedTiles.get(tileOperation.getTileIndex());
+                    if (pixels == null) {
+                        missing.add(tileOperation);
+                        pixels = getBaseType().newArray(tileOperation.getPixelSize());
+                        tileOperation.setTileDataBuffer(getBaseType().wrap(pixels));
+                    } else {
+                        tileOperation.getDecompressionLock().unlock();
+                    }
+                    tilePixels.put(tileOperation.getTileIndex(), pixels);
+                }
+            }
+            readTiles(missing);
+            processTiles(missing);
+            releaseTiles(missing);
+            for (TileCompressionOperation tileOperation : missing) {
+                tileOperation.releaseTileDataBuffer();
+                if (decompressedTiles != null) {
+                    decompressedTiles.put(tileOperation.getTileIndex(), tilePixels.get(tileOperation.getTileIndex()));
+                }
+            }
+        } finally {
+            for (TileCompressionOperation tileOperation : missing) {
+                tileOperation.getDecompressionLock().unlock();
+            }
+        }
+        for (TileCompressionOperation tileOperation : tiles) {
+            copyIntersection(tileOperation.getArea(), tilePixels.get(tileOperation.getTileIndex()), region, decompressedRegion);
+        }
+    }
+
+    private static void copyIntersection(TileArea area, Object tilePixels, TileArea region, Object decompressedRegion) {
+        int tileWidth = area.getEnd(0) - area.getStart(0);
+        int regionWidth = region.getEnd(0) - region.getStart(0);
+        int startX = Math.max(area.getStart(0), region.getStart(0));
+        int length = Math.min(area.getEnd(0), region.getEnd(0)) - startX;
+        int endY = Math.min(area.getEnd(1), region.getEnd(1));
+        for (int y = Math.max(area.getStart(1), region.getStart(1)); y < endY; y++) {
+            System.arraycopy(tilePixels, (y - area.getStart(1)) * tileWidth + startX - area.getStart(0), //
+                    decompressedRegion, (y - region.getStart(1)) * regionWidth + startX - region.getStart(0), length);
+        }
+    }
+
+    /**
+     * @return the size in bytes of the largest tile of the image.
+     */
+    int getTileSizeInBytes() {
+        int pixels = 1;
+        for (int tileAxis : getTileAxes()) {
+            pixels *= tileAxis;
+        }
+        return pixels * getBaseType().size();
+    }
+
     public void forceNoLoss(int x, int y, int width, int heigth) {
         TileArea tileArea = new TileArea().start(x, y).end(x + width, y + heigth);
         for (TileCompressionOperation operation : getTileOperations()) {
@@ -226,6 +383,39 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return this;
     }
 
+    /**
+     * Prepare the decompression of the tiles of a compressed table like
+     * {@link #read(Header)}, but only read the descriptors of the data columns
+     * and the columns of the compression parameters. The compressed data of a
+     * tile is read from the heap each time the tile is decompressed, so if the
+     * table in a random access file was not read yet, only the data of the
+     * decompressed tiles is ever read.
+     *
+     * @param header
+     *            the header of the compressed table
+     * @return this
+     * @throws FitsException
+     *             if the header or the columns could not be read.
+     */
+    public TiledImageCompressionOperation readDeferred(final Header header) throws FitsException {
+        readPrimaryHeaders(header);
+        setCompressAlgorithm(header.findCard(ZCMPTYPE));
+        setQuantAlgorithm(header.findCard(ZQUANTIZ));
+        CompressedTileReader reader = new CompressedTileReader(this.binaryTable);
+        addTileColumn(reader, header, COMPRESSED_DATA_COLUMN, COMPRESSED);
+        addTileColumn(reader, header, UNCOMPRESSED_DATA_COLUMN, UNCOMPRESSED);
+        addTileColumn(reader, header, GZIP_COMPRESSED_DATA_COLUMN, GZIP_COMPRESSED);
+        createTiles(new TileDecompressorInitialisation(this, null, null, null, new HeaderAccess(header)));
+        int nullPixelMaskColumn = findColumn(header, NULL_PIXEL_MASK_COLUMN);
+        if (nullPixelMaskColumn >= 0) {
+            preserveNulls(0L, header.getStringValue(ZMASKCMP));
+            reader.setNullPixelMaskColumn(nullPixelMaskColumn);
+        }
+        readCompressionHeaders(header);
+        this.tileReader = reader;
+        return this;
+    }
+
     public void readPrimaryHeaders(Header header) throws FitsException {
         readBaseType(header);
         readAxis(header);
@@ -237,6 +427,35 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return this;
     }
 
+    /**
+     * Limit the number of tiles of this operation that are processed at the
+     * same time, instead of the limit of
+     * {@link FitsFactory#getMaxTilesInFlight()}.
+     *
+     * @param value
+     *            the maximum number of tiles, 0 for no limit and -1 for the
+     *            limit of the {@link FitsFactory}.
+     * @return this
+     */
+    public TiledImageCompressionOperation setMaxTilesInFlight(int value) {
+        this.maxTilesInFlight = value;
+        return this;
+    }
+
+    /**
+     * Process the tiles of this operation with the specified thread pool,
+     * instead of the one of {@link FitsFactory#threadPool()}.
+     *
+     * @param value
+     *            the thread pool to use, null for the one of the
+     *            {@link FitsFactory}.
+     * @return this
+     */
+    public TiledImageCompressionOperation setThreadPool(ExecutorService value) {
+        this.threadPool = value;
+        return this;
+    }
+
     public TiledImageCompressionOperation setQuantAlgorithm(HeaderCard quantAlgorithmCard) {
         if (quantAlgorithmCard != null) {
             this.quantAlgorithm = quantAlgorithmCard.getValue();
@@ -246,14 +465,29 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
         return this;
     }
 
-    private <T> T getNullableColumn(Header header, Class<T> class1, String columnName) throws FitsException {
+    private void addTileColumn(CompressedTileReader reader, Header header, String columnName, TileCompressionType type) throws FitsException {
+        int column = findColumn(header, columnName);
+        if (column >= 0) {
+            reader.addColumn(column, type);
+        }
+    }
+
+    private int findColumn(Header header, String columnName) {
         for (int i = 1; i <= this.binaryTable.getNCols(); i++) {
             String val = header.getStringValue(TTYPEn.n(i));
             if (val != null && val.trim().equals(columnName)) {
-                return class1.cast(this.binaryTable.getColumn(i - 1));
+                return i - 1;
             }
         }
-        return null;
+        return -1;
+    }
+
+    private <T> T getNullableColumn(Header header, Class<T> class1, String columnName) throws FitsException {
+        int column = findColumn(header, columnName);
+        if (column < 0) {
+            return null;
+        }
+        return class1.cast(this.binaryTable.getColumn(column));
     }
 
     private void initializeCompressionControl() {
@@ -274,15 +508,62 @@ public class TiledImageCompressionOperation extends AbstractTiledImageOperation<
     }
 
     private void processAllTiles() {
-        ExecutorService threadPool = FitsFactory.threadPool();
-        for (TileCompressionOperation tileOperation : getTileOperations()) {
-            tileOperation.execute(threadPool);
+        processTiles(Arrays.asList(getTileOperations()));
+    }
+
+    private void processTiles(List<TileCompressionOperation> tileOperations) {
+        ExecutorService pool = this.threadPool == null ? FitsFactory.threadPool() : this.threadPool;
+        int maxInFlight = this.maxTilesInFlight < 0 ? FitsFactory.getMaxTilesInFlight() : this.maxTilesInFlight;
+        BlockingQueue<ITileOperation> processed = new LinkedBlockingQueue<ITileOperation>();
+        for (int index = 0; index < tileOperations.size(); index++) {
+            if (maxInFlight <= 0) {
+                tileOperations.get(index).execute(pool);
+            } else {
+                // wait for any tile that is done, not for the oldest one.
+                if (index >= maxInFlight) {
+                    takeProcessed(processed).waitForResult();
+                }
+                tileOperations.get(index).execute(pool, processed);
+            }
         }
-        for (TileCompressionOperation tileOperation : getTileOperations()) {
+        for (TileCompressionOperation tileOperation : tileOperations) {
             tileOperation.waitForResult();
         }
     }
 
+    /**
+     * read the compressed data of the tiles before they are decompressed, if
+     * it was not read with the table.
+     */
+    private void readTiles(List<TileCompressionOperation> tileOperations) {
+        if (this.tileReader != null) {
+            try {
+                for (TileCompressionOperation tileOperation : tileOperations) {
+                    this.tileReader.read(tileOperation, getImageNullPixelMask());
+                }
+            } catch (FitsException e) {
+                throw new IllegalStateException("Could not read the compressed data of the tiles", e);
+            }
+        }
+    }
+
+    private void releaseTiles(List<TileCompressionOperation> tileOperations) {
+        if (this.tileReader != null) {
+            for (TileCompressionOperation tileOperation : tileOperations) {
+                tileOperation.releaseCompressedData();
+            }
+        }
+    }
+
+    private static <T> T takeProcessed(BlockingQueue<T> processed) {
+        try {
+            return processed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a tile", e);
+        }
+    }
+
     private void readAxis(Header header) throws FitsException {
         if (areAxesUndefined()) {
             int naxis = header.getIntValue(ZNAXIS);
@@ -76,10 +76,23 @@ public class ImageNullPixelMask {
 
     public void setColumn(byte[][] nullPixels) {
         for (AbstractNullPixelMask tileMask : this.nullPixelMasks) {
-            byte[] tileMaskBytes = nullPixels[tileMask.getTileIndex()];
-            if (tileMaskBytes != null && tileMaskBytes.length > 0) {
-                tileMask.setMask(ByteBuffer.wrap(tileMaskBytes));
-            }
+            setTileMask(tileMask.getTileIndex(), nullPixels[tileMask.getTileIndex()]);
+        }
+    }
+
+    /**
+     * set the compressed null pixel mask of a single tile, as read from the
+     * null pixel mask column.
+     *
+     * @param tileIndex
+     *            the index of the tile
+     * @param tileMaskBytes
+     *            the compressed mask of the tile, null or empty if the tile
+     *            has no mask.
+     */
+    public void setTileMask(int tileIndex, byte[] tileMaskBytes) {
+        if (tileMaskBytes != null && tileMaskBytes.length > 0) {
+            this.nullPixelMasks[tileIndex].setMask(ByteBuffer.wrap(tileMaskBytes));
         }
     }
 
@@ -53,9 +53,11 @@ public class NullPixelMaskRestorer extends AbstractNullPixelMask {
 
     public void restoreNulls() {
         // if the mask is not present the tile contains no null pixels.
-        if (getMask() != null) {
+        ByteBuffer compressed = getMask();
+        if (compressed != null) {
             ByteBuffer decompressed = ByteBuffer.allocate(getTileBuffer().getPixelSize());
-            getCompressorControl().decompress(getMask(), decompressed, getCompressorControl().option());
+            compressed.rewind();
+            getCompressorControl().decompress(compressed, decompressed, getCompressorControl().option());
             setMask(decompressed);
             if (getTileBuffer().getBaseType().is(PrimitiveTypes.DOUBLE)) {
                 restoreNullDoubles();
@@ -70,6 +72,8 @@ public class NullPixelMaskRestorer extends AbstractNullPixelMask {
             } else if (getTileBuffer().getBaseType().is(PrimitiveTypes.BYTE)) {
                 restoreNullBytes();
             }
+            // keep the compressed mask, the tile may be decompressed again.
+            setMask(compressed);
         }
     }
 
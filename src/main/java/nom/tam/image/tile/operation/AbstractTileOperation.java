@@ -33,6 +33,7 @@ package nom.tam.image.tile.operation;
 
 import java.nio.Buffer;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
 
 import nom.tam.image.tile.operation.buffer.TileBuffer;
@@ -61,6 +62,30 @@ public abstract class AbstractTileOperation implements Runnable, ITileOperation
         this.future = threadPool.submit(this);
     }
 
+    /**
+     * submit the tile to the thread pool and add it to a queue once it is
+     * processed, so that the caller can wait for whichever tile is done first.
+     *
+     * @param threadPool
+     *            the thread pool to process the tile with
+     * @param processed
+     *            the queue the tile is added to when it is processed, also if
+     *            the processing failed.
+     */
+    public void execute(ExecutorService threadPool, final BlockingQueue<ITileOperation> processed) {
+        this.future = threadPool.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    AbstractTileOperation.this.run();
+                } finally {
+                    processed.add(AbstractTileOperation.this);
+                }
+            }
+        });
+    }
+
     public TileArea getArea() {
         return this.area;
     }
@@ -89,6 +114,25 @@ public abstract class AbstractTileOperation implements Runnable, ITileOperation
         this.tileBuffer.setData(buffer);
     }
 
+    /**
+     * set a buffer that holds only the pixels of this tile, instead of a view
+     * on the whole image.
+     *
+     * @param buffer
+     *            the buffer for the pixels of the tile.
+     */
+    public void setTileDataBuffer(Buffer buffer) {
+        this.tileBuffer.setTileData(buffer);
+    }
+
+    /**
+     * forget the buffer of the pixels of this tile, so that it can be garbage
+     * collected.
+     */
+    public void releaseTileDataBuffer() {
+        this.tileBuffer.releaseData();
+    }
+
     /**
      * Wait for the result of the tile processing.
      */
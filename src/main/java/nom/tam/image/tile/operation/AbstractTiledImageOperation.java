@@ -59,6 +59,13 @@ public abstract class AbstractTiledImageOperation<OPERATION extends ITileOperati
         this.operationClass = operationClass;
     }
 
+    /**
+     * @return the axes of the image, the x axis first.
+     */
+    public int[] getAxes() {
+        return Arrays.copyOf(this.axes, this.axes.length);
+    }
+
     @Override
     public PrimitiveType<Buffer> getBaseType() {
         return this.baseType;
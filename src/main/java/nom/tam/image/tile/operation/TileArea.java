@@ -62,6 +62,24 @@ public class TileArea {
                 other.startPoint[1] < this.endPoint[1];
     }
 
+    /**
+     * @param axis
+     *            the index of the axis.
+     * @return the start of the area along the axis (inclusive).
+     */
+    public int getStart(int axis) {
+        return this.startPoint[axis];
+    }
+
+    /**
+     * @param axis
+     *            the index of the axis.
+     * @return the end of the area along the axis (exclusive).
+     */
+    public int getEnd(int axis) {
+        return this.endPoint[axis];
+    }
+
     public void size(int... sizes) {
         this.endPoint = new int[this.startPoint.length];
         for (int index = 0; index < this.startPoint.length; index++) {
@@ -54,6 +54,12 @@ public abstract class TileBuffer {
 
     private final int width;
 
+    /**
+     * true if the buffer holds only the pixels of this tile, see
+     * {@link #setTileData(Buffer)}.
+     */
+    private boolean tileOnly;
+
     protected TileBuffer(PrimitiveType<Buffer> baseType, int dataOffset, int width, int height) {
         this.baseType = baseType;
         this.offset = dataOffset;
@@ -92,11 +98,41 @@ public abstract class TileBuffer {
     public TileBuffer setData(Buffer value) {
         value.position(this.offset);
         this.imageBuffer = this.baseType.sliceBuffer(value);
+        this.tileOnly = false;
         return this;
     }
 
+    /**
+     * set a buffer that holds only the pixels of this tile, row after row
+     * without gaps, instead of a view on the whole image. This is used when
+     * only a region of the image is needed.
+     *
+     * @param value
+     *            the buffer for the pixels of the tile.
+     * @return this
+     */
+    public TileBuffer setTileData(Buffer value) {
+        value.position(0);
+        this.imageBuffer = this.baseType.sliceBuffer(value);
+        this.imageBuffer.limit(getPixelSize());
+        this.tileOnly = true;
+        return this;
+    }
+
+    /**
+     * forget the buffer of the pixels, so that it can be garbage collected.
+     */
+    public void releaseData() {
+        this.imageBuffer = null;
+        this.tileOnly = false;
+    }
+
     protected Buffer getImageBuffer() {
         return this.imageBuffer;
     }
 
+    protected boolean isTileOnly() {
+        return this.tileOnly;
+    }
+
 }
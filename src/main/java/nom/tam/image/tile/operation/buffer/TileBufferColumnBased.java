@@ -65,11 +65,16 @@ class TileBufferColumnBased extends TileBuffer {
 
     @Override
     public void finish() {
-        desolveGapLessBuffer();
+        if (this.gapLessBuffer != null) {
+            desolveGapLessBuffer();
+        }
     }
 
     @Override
     public Buffer getBuffer() {
+        if (isTileOnly()) {
+            return getImageBuffer();
+        }
         if (this.gapLessBuffer == null) {
             createGapLessBuffer();
         }
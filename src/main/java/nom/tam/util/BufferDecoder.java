@@ -34,6 +34,7 @@ package nom.tam.util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 
 import nom.tam.util.type.PrimitiveType;
 import nom.tam.util.type.PrimitiveTypeHandler;
@@ -112,6 +113,23 @@ public abstract class BufferDecoder {
      */
     protected abstract void checkBuffer(int needBytes) throws IOException;
 
+    /**
+     * Make at least the needed number of bytes, and if possible up to the
+     * wanted number of bytes, available in the buffer. This is used by the
+     * bulk array reads, so that as many elements as possible can be decoded
+     * at once. The default just delegates to {@link #checkBuffer(int)}.
+     * 
+     * @param needBytes
+     *            the number of bytes needed for the next element.
+     * @param wantBytes
+     *            the number of bytes the current array read could use.
+     * @throws IOException
+     *             if the buffer could not be filled
+     */
+    protected void fillBuffer(int needBytes, int wantBytes) throws IOException {
+        checkBuffer(needBytes);
+    }
+
     protected abstract int eofCheck(EOFException e, int start, int index, int length) throws EOFException;
 
     protected int read(boolean[] b, int start, int length) throws IOException {
@@ -178,9 +196,12 @@ public abstract class BufferDecoder {
     protected int read(char[] c, int start, int length) throws IOException {
 
         int i = start;
+        int end = start + length;
         try {
-            for (; i < start + length; i++) {
-                c[i] = readChar();
+            while (i < end) {
+                int n = availableElements(FitsIO.BYTES_IN_CHAR, end - i);
+                consume(n * FitsIO.BYTES_IN_CHAR).asCharBuffer().get(c, i, n);
+                i += n;
             }
             return length * FitsIO.BYTES_IN_CHAR;
         } catch (EOFException e) {
@@ -191,9 +212,12 @@ public abstract class BufferDecoder {
     protected int read(double[] d, int start, int length) throws IOException {
 
         int i = start;
+        int end = start + length;
         try {
-            for (; i < start + length; i++) {
-                d[i] = Double.longBitsToDouble(readLong());
+            while (i < end) {
+                int n = availableElements(FitsIO.BYTES_IN_DOUBLE, end - i);
+                consume(n * FitsIO.BYTES_IN_DOUBLE).asDoubleBuffer().get(d, i, n);
+                i += n;
             }
             return length * FitsIO.BYTES_IN_DOUBLE;
         } catch (EOFException e) {
@@ -204,9 +228,12 @@ public abstract class BufferDecoder {
     protected int read(float[] f, int start, int length) throws IOException {
 
         int i = start;
+        int end = start + length;
         try {
-            for (; i < start + length; i++) {
-                f[i] = Float.intBitsToFloat(readInt());
+            while (i < end) {
+                int n = availableElements(FitsIO.BYTES_IN_FLOAT, end - i);
+                consume(n * FitsIO.BYTES_IN_FLOAT).asFloatBuffer().get(f, i, n);
+                i += n;
             }
             return length * FitsIO.BYTES_IN_FLOAT;
         } catch (EOFException e) {
@@ -217,9 +244,12 @@ public abstract class BufferDecoder {
     protected int read(int[] i, int start, int length) throws IOException {
 
         int ii = start;
+        int end = start + length;
         try {
-            for (; ii < start + length; ii++) {
-                i[ii] = readInt();
+            while (ii < end) {
+                int n = availableElements(FitsIO.BYTES_IN_INTEGER, end - ii);
+                consume(n * FitsIO.BYTES_IN_INTEGER).asIntBuffer().get(i, ii, n);
+                ii += n;
             }
             return length * FitsIO.BYTES_IN_INTEGER;
         } catch (EOFException e) {
@@ -230,23 +260,28 @@ public abstract class BufferDecoder {
     protected int read(long[] l, int start, int length) throws IOException {
 
         int i = start;
+        int end = start + length;
         try {
-            for (; i < start + length; i++) {
-                l[i] = readLong();
+            while (i < end) {
+                int n = availableElements(FitsIO.BYTES_IN_LONG, end - i);
+                consume(n * FitsIO.BYTES_IN_LONG).asLongBuffer().get(l, i, n);
+                i += n;
             }
             return length * FitsIO.BYTES_IN_LONG;
         } catch (EOFException e) {
             return eofCheck(e, start, i, FitsIO.BYTES_IN_LONG);
         }
-
     }
 
     protected int read(short[] s, int start, int length) throws IOException {
 
         int i = start;
+        int end = start + length;
         try {
-            for (; i < start + length; i++) {
-                s[i] = readShort();
+            while (i < end) {
+                int n = availableElements(FitsIO.BYTES_IN_SHORT, end - i);
+                consume(n * FitsIO.BYTES_IN_SHORT).asShortBuffer().get(s, i, n);
+                i += n;
             }
             return length * FitsIO.BYTES_IN_SHORT;
         } catch (EOFException e) {
@@ -327,6 +362,35 @@ public abstract class BufferDecoder {
         return (short) readUncheckedShort();
     }
 
+    /**
+     * Fill the buffer for a bulk read of primitive elements.
+     * 
+     * @param elementSize
+     *            the size of an element in bytes
+     * @param elements
+     *            the number of elements still to read
+     * @return the number of complete elements available in the buffer, at
+     *         least 1.
+     * @throws IOException
+     *             if the buffer could not be filled
+     */
+    private int availableElements(int elementSize, int elements) throws IOException {
+        fillBuffer(elementSize, (int) Math.min(Integer.MAX_VALUE, (long) elements * elementSize));
+        int available = (this.sharedBuffer.bufferLength - this.sharedBuffer.bufferOffset) / elementSize;
+        return Math.max(1, Math.min(elements, available));
+    }
+
+    /**
+     * @return a view of the next bytes of the buffer, the bytes are consumed.
+     * @param bytes
+     *            the number of bytes to consume.
+     */
+    private ByteBuffer consume(int bytes) {
+        ByteBuffer view = this.sharedBuffer.view(this.sharedBuffer.bufferOffset, bytes);
+        this.sharedBuffer.bufferOffset += bytes;
+        return view;
+    }
+
     private int readUncheckedInt() {
         return this.sharedBuffer.buffer[this.sharedBuffer.bufferOffset++] << FitsIO.BITS_OF_3_BYTES | //
                 (this.sharedBuffer.buffer[this.sharedBuffer.bufferOffset++] & FitsIO.BYTE_MASK) << FitsIO.BITS_OF_2_BYTES | //
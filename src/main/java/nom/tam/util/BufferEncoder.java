@@ -33,6 +33,7 @@ package nom.tam.util;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 
 public abstract class BufferEncoder {
 
@@ -44,6 +45,25 @@ public abstract class BufferEncoder {
 
     protected abstract void needBuffer(int need) throws IOException;
 
+    /**
+     * Make room in the buffer for a bulk write of primitive elements. At least
+     * the needed number of bytes, and if possible up to the wanted number of
+     * bytes, are reserved at the current buffer offset. The default reserves
+     * just the needed bytes through {@link #needBuffer(int)}.
+     * 
+     * @param need
+     *            the number of bytes of one element.
+     * @param want
+     *            the number of bytes the current array write could use.
+     * @return the number of bytes reserved, always a multiple of need.
+     * @throws IOException
+     *             if the buffer could not be flushed
+     */
+    protected int needBuffer(int need, int want) throws IOException {
+        needBuffer(need);
+        return need;
+    }
+
     protected void write(boolean[] b, int start, int length) throws IOException {
         for (int i = start; i < start + length; i++) {
             writeBoolean(b[i]);
@@ -53,38 +73,62 @@ public abstract class BufferEncoder {
     protected abstract void write(byte[] buf, int offset, int length) throws IOException;
 
     protected void write(char[] c, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeChar(c[i]);
+        int i = start;
+        int end = start + length;
+        while (i < end) {
+            int n = reserveElements(FitsIO.BYTES_IN_CHAR, end - i);
+            produce(n * FitsIO.BYTES_IN_CHAR).asCharBuffer().put(c, i, n);
+            i += n;
         }
     }
 
     protected void write(double[] d, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeLong(Double.doubleToLongBits(d[i]));
+        int i = start;
+        int end = start + length;
+        while (i < end) {
+            int n = reserveElements(FitsIO.BYTES_IN_DOUBLE, end - i);
+            produce(n * FitsIO.BYTES_IN_DOUBLE).asDoubleBuffer().put(d, i, n);
+            i += n;
         }
     }
 
     protected void write(float[] f, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeInt(Float.floatToIntBits(f[i]));
+        int i = start;
+        int end = start + length;
+        while (i < end) {
+            int n = reserveElements(FitsIO.BYTES_IN_FLOAT, end - i);
+            produce(n * FitsIO.BYTES_IN_FLOAT).asFloatBuffer().put(f, i, n);
+            i += n;
         }
     }
 
     protected void write(int[] i, int start, int length) throws IOException {
-        for (int ii = start; ii < start + length; ii++) {
-            writeInt(i[ii]);
+        int ii = start;
+        int end = start + length;
+        while (ii < end) {
+            int n = reserveElements(FitsIO.BYTES_IN_INTEGER, end - ii);
+            produce(n * FitsIO.BYTES_IN_INTEGER).asIntBuffer().put(i, ii, n);
+            ii += n;
         }
     }
 
     protected void write(long[] l, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeLong(l[i]);
+        int i = start;
+        int end = start + length;
+        while (i < end) {
+            int n = reserveElements(FitsIO.BYTES_IN_LONG, end - i);
+            produce(n * FitsIO.BYTES_IN_LONG).asLongBuffer().put(l, i, n);
+            i += n;
         }
     }
 
     protected void write(short[] s, int start, int length) throws IOException {
-        for (int i = start; i < start + length; i++) {
-            writeShort(s[i]);
+        int i = start;
+        int end = start + length;
+        while (i < end) {
+            int n = reserveElements(FitsIO.BYTES_IN_SHORT, end - i);
+            produce(n * FitsIO.BYTES_IN_SHORT).asShortBuffer().put(s, i, n);
+            i += n;
         }
     }
 
@@ -131,6 +175,34 @@ public abstract class BufferEncoder {
         }
     }
 
+    /**
+     * Reserve buffer space for a bulk write of primitive elements.
+     * 
+     * @param elementSize
+     *            the size of an element in bytes
+     * @param elements
+     *            the number of elements still to write
+     * @return the number of elements that fit in the reserved space, at least
+     *         1.
+     * @throws IOException
+     *             if the buffer could not be flushed
+     */
+    private int reserveElements(int elementSize, int elements) throws IOException {
+        return needBuffer(elementSize, (int) Math.min(Integer.MAX_VALUE, (long) elements * elementSize)) / elementSize;
+    }
+
+    /**
+     * @return a view of the next bytes of the buffer, the bytes are marked as
+     *         written.
+     * @param bytes
+     *            the number of bytes to produce.
+     */
+    private ByteBuffer produce(int bytes) {
+        ByteBuffer view = this.sharedBuffer.view(this.sharedBuffer.bufferOffset, bytes);
+        this.sharedBuffer.bufferOffset += bytes;
+        return view;
+    }
+
     protected void writeBoolean(boolean b) throws IOException {
         needBuffer(FitsIO.BYTES_IN_BOOLEAN);
         if (b) {
@@ -1,5 +1,7 @@
 package nom.tam.util;
 
+import java.nio.ByteBuffer;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /*
@@ -50,6 +52,12 @@ public class BufferPointer {
      */
     protected int bufferOffset;
 
+    /**
+     * A big endian view of the buffer, used for bulk transfers of primitive
+     * arrays.
+     */
+    private ByteBuffer byteBuffer;
+
     public BufferPointer() {
     }
 
@@ -65,6 +73,25 @@ public class BufferPointer {
         return this;
     }
 
+    /**
+     * Get a big endian view of the specified region of the buffer.
+     * 
+     * @param offset
+     *            the offset of the region in the buffer
+     * @param length
+     *            the number of bytes in the region
+     * @return the view with position and limit set to the region.
+     */
+    protected ByteBuffer view(int offset, int length) {
+        if (this.byteBuffer == null || this.byteBuffer.array() != this.buffer) {
+            this.byteBuffer = ByteBuffer.wrap(this.buffer);
+        }
+        this.byteBuffer.clear();
+        this.byteBuffer.limit(offset + length);
+        this.byteBuffer.position(offset);
+        return this.byteBuffer;
+    }
+
     protected void invalidate() {
         this.bufferLength = 0;
         this.bufferOffset = 0;
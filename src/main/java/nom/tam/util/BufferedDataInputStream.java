@@ -81,7 +81,12 @@ public class BufferedDataInputStream extends BufferedInputStream implements Arra
      */
     private static final int SKIP_BUFFER_SIZE = 8192;
 
-    private final BufferPointer sharedBuffer = new BufferPointer().init(FitsIO.BYTES_IN_LONG);
+    /**
+     * size of the shared buffer used to decode primitive arrays in bulk.
+     */
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
+    private final BufferPointer sharedBuffer = new BufferPointer().init(DECODE_BUFFER_SIZE);
 
     private final BufferDecoder bufferDecoder = new BufferDecoder(this.sharedBuffer) {
 
@@ -92,6 +97,11 @@ public class BufferedDataInputStream extends BufferedInputStream implements Arra
             }
         }
 
+        @Override
+        protected void fillBuffer(int needBytes, int wantBytes) throws IOException {
+            readBulkIntoSharedBuffer(needBytes, wantBytes);
+        }
+
         @Override
         protected int eofCheck(EOFException e, int start, int index, int length) throws EOFException {
             return BufferedDataInputStream.this.eofCheck(e, index, start, length);
@@ -276,6 +286,25 @@ public class BufferedDataInputStream extends BufferedInputStream implements Arra
         }
     }
 
+    /**
+     * Fill the shared buffer for a bulk array read. As many whole elements as
+     * are already buffered are taken, the underlying stream is only read when
+     * not even one element is buffered.
+     * 
+     * @param needBytes
+     *            the size of one element
+     * @param wantBytes
+     *            the number of bytes the array read could use
+     * @throws IOException
+     *             if not even one element could be read
+     */
+    private void readBulkIntoSharedBuffer(int needBytes, int wantBytes) throws IOException {
+        int buffered = Math.min(Math.min(wantBytes, this.sharedBuffer.buffer.length), this.count - this.pos);
+        int bytes = Math.max(needBytes, buffered - buffered % needBytes);
+        readBytesIntoSharedBuffer(bytes);
+        this.sharedBuffer.bufferLength = bytes;
+    }
+
     @Override
     public char readChar() throws IOException {
         return this.bufferDecoder.readChar();
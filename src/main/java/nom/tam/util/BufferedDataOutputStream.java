@@ -72,6 +72,17 @@ public class BufferedDataOutputStream extends BufferedOutputStream implements Ar
             BufferedDataOutputStream.this.count += need;
         }
 
+        @Override
+        protected int needBuffer(int need, int want) throws IOException {
+            BufferedDataOutputStream.this.checkBuf(need);
+            int available = Math.min(want, BufferedDataOutputStream.this.buf.length - BufferedDataOutputStream.this.count);
+            int reserved = Math.max(need, available - available % need);
+            BufferedDataOutputStream.this.bufferPointer.bufferLength = BufferedDataOutputStream.this.count;
+            BufferedDataOutputStream.this.bufferPointer.bufferOffset = BufferedDataOutputStream.this.count;
+            BufferedDataOutputStream.this.count += reserved;
+            return reserved;
+        }
+
         @Override
         protected void write(byte[] buf, int offset, int length) throws IOException {
             BufferedDataOutputStream.this.write(buf, offset, length);
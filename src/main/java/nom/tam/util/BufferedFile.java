@@ -115,6 +115,13 @@ public class BufferedFile implements ArrayDataOutput, RandomAccess {
             BufferedFile.this.needBuffer(needBytes);
         }
 
+        @Override
+        protected int needBuffer(int need, int want) throws IOException {
+            BufferedFile.this.needBuffer(need);
+            int available = Math.min(want, BufferedFile.this.bufferPointer.buffer.length - BufferedFile.this.bufferPointer.bufferOffset);
+            return Math.max(need, available - available % need);
+        }
+
         @Override
         protected void write(byte[] buf, int offset, int length) throws IOException {
             BufferedFile.this.write(buf, offset, length);
@@ -0,0 +1,93 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+/**
+ * Loads the providers of a service through the {@link ServiceLoader} once per
+ * class loader and keeps them until the cache is cleared explicitly. The
+ * context class loader of the calling thread is used, like the uncached
+ * lookups did. The providers of a class loader reference it through their
+ * classes, so they are held softly: the cache does not keep an otherwise
+ * unused class loader alive, and providers dropped by the garbage collector
+ * are loaded again on the next request.
+ *
+ * @param <S>
+ *            the type of the service.
+ */
+public final class CachedServiceLoader<S> {
+
+    private final Class<S> service;
+
+    private final Map<ClassLoader, SoftReference<List<S>>> providers = new WeakHashMap<ClassLoader, SoftReference<List<S>>>();
+
+    /**
+     * @param service
+     *            the interface or abstract class of the service.
+     */
+    public CachedServiceLoader(Class<S> service) {
+        this.service = service;
+    }
+
+    /**
+     * Forget the loaded providers, they are loaded again on the next request.
+     */
+    public synchronized void clear() {
+        this.providers.clear();
+    }
+
+    /**
+     * @return the providers of the service for the context class loader of the
+     *         current thread, in the order of the {@link ServiceLoader}.
+     */
+    public synchronized List<S> providers() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        SoftReference<List<S>> cached = this.providers.get(classLoader);
+        List<S> result = cached == null ? null : cached.get();
+        if (result == null) {
+            List<S> loaded = new ArrayList<S>();
+            for (S provider : ServiceLoader.load(this.service, classLoader)) {
+                loaded.add(provider);
+            }
+            result = Collections.unmodifiableList(loaded);
+            this.providers.put(classLoader, new SoftReference<List<S>>(result));
+        }
+        return result;
+    }
+}
@@ -666,6 +666,108 @@ public class ColumnTable<T> implements DataTable {
         return x;
     }
 
+    /**
+     * Get one value of an element of a numeric column, without creating an
+     * array for the element.
+     * 
+     * @param row
+     *            The row desired.
+     * @param col
+     *            The column desired.
+     * @param idx
+     *            The index of the value within the element.
+     * @return the value converted to a double.
+     */
+    public double getDouble(int row, int col, int idx) {
+        int index = valueIndex(row, col, idx);
+        switch (this.types[col]) {
+            case 'B':
+                return ((byte[]) this.arrays[col])[index];
+            case 'S':
+                return ((short[]) this.arrays[col])[index];
+            case 'I':
+                return ((int[]) this.arrays[col])[index];
+            case 'J':
+                return ((long[]) this.arrays[col])[index];
+            case 'F':
+                return ((float[]) this.arrays[col])[index];
+            case 'D':
+                return ((double[]) this.arrays[col])[index];
+            case 'C':
+                return ((char[]) this.arrays[col])[index];
+            default:
+                throw new IllegalArgumentException("Column " + col + " is not numeric");
+        }
+    }
+
+    /**
+     * Copy the values of an element of a numeric column into an array,
+     * without creating an array for the element.
+     * 
+     * @param row
+     *            The row desired.
+     * @param col
+     *            The column desired.
+     * @param dst
+     *            The array to fill, at least as long as the element.
+     * @return the number of values copied, the size of the element.
+     */
+    public int getDoubles(int row, int col, double[] dst) {
+        int size = this.sizes[col];
+        if (this.types[col] == 'D') {
+            System.arraycopy(this.arrays[col], size * row, dst, 0, size);
+        } else {
+            for (int idx = 0; idx < size; idx++) {
+                dst[idx] = getDouble(row, col, idx);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copy the values of an element of a numeric column into an array,
+     * without creating an array for the element.
+     * 
+     * @param row
+     *            The row desired.
+     * @param col
+     *            The column desired.
+     * @param dst
+     *            The array to fill, at least as long as the element.
+     * @return the number of values copied, the size of the element.
+     */
+    public int getFloats(int row, int col, float[] dst) {
+        int size = this.sizes[col];
+        if (this.types[col] == 'F') {
+            System.arraycopy(this.arrays[col], size * row, dst, 0, size);
+        } else {
+            for (int idx = 0; idx < size; idx++) {
+                dst[idx] = (float) getDouble(row, col, idx);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get one value of an element of a numeric column, without creating an
+     * array for the element. Long values are returned without the loss of
+     * precision of {@link #getDouble(int, int, int)}.
+     * 
+     * @param row
+     *            The row desired.
+     * @param col
+     *            The column desired.
+     * @param idx
+     *            The index of the value within the element.
+     * @return the value converted to a long.
+     */
+    public long getLong(int row, int col, int idx) {
+        if (this.types[col] == 'J') {
+            return ((long[]) this.arrays[col])[valueIndex(row, col, idx)];
+        }
+        return (long) getDouble(row, col, idx);
+    }
+
     /**
      * @return the pointer state
      */
@@ -975,4 +1077,11 @@ public class ColumnTable<T> implements DataTable {
             }
         }
     }
+
+    private int valueIndex(int row, int col, int idx) {
+        if (idx < 0 || idx >= this.sizes[col]) {
+            throw new ArrayIndexOutOfBoundsException("Index " + idx + " not within element of size " + this.sizes[col]);
+        }
+        return this.sizes[col] * row + idx;
+    }
 }
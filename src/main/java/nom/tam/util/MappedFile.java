@@ -0,0 +1,590 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import nom.tam.util.type.PrimitiveType;
+import nom.tam.util.type.PrimitiveTypeHandler;
+import nom.tam.util.type.PrimitiveTypes;
+
+/**
+ * A read only random access input backed by memory mapped windows of a file.
+ * Primitive values and arrays are decoded directly from the mapped (big
+ * endian) byte buffer, so no intermediate copy buffer is involved like in
+ * {@link BufferedFile}. Seeks within the currently mapped window only move
+ * the buffer position, seeks outside of it map a new window starting at the
+ * requested position.
+ * <p>
+ * Because the file is mapped read only, this class does not implement
+ * {@link ArrayDataOutput}, so HDUs read through it can not be rewritten in
+ * place.
+ */
+public class MappedFile implements RandomAccess {
+
+    /**
+     * the default size of a mapped window, 256 MB.
+     */
+    private static final long DEFAULT_WINDOW_SIZE = 1L << 28;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final FileChannel channel;
+
+    /**
+     * the length of the file at the time it was opened.
+     */
+    private final long length;
+
+    /**
+     * the maximum size of a mapped window.
+     */
+    private final long windowSize;
+
+    /**
+     * the currently mapped window.
+     */
+    private ByteBuffer window = EMPTY;
+
+    /**
+     * the offset in the file of the start of the current window.
+     */
+    private long windowStart;
+
+    /**
+     * the marked position in the file.
+     */
+    private long marker;
+
+    /**
+     * Create a mapped file with the default window size.
+     * 
+     * @param file
+     *            the file to open.
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public MappedFile(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a mapped file with the specified window size.
+     * 
+     * @param file
+     *            the file to open.
+     * @param windowSize
+     *            the maximum number of bytes mapped at once, should be a lot
+     *            bigger than the largest primitive element and must be smaller
+     *            than 2 GB.
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public MappedFile(File file, long windowSize) throws IOException {
+        if (windowSize < FitsIO.BYTES_IN_LONG || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid window size " + windowSize);
+        }
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = this.randomAccessFile.getChannel();
+        this.length = this.channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Create a mapped file with the default window size.
+     * 
+     * @param filename
+     *            the name of the file to open
+     * @throws IOException
+     *             if the file could not be opened
+     */
+    public MappedFile(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.window = EMPTY;
+        this.randomAccessFile.close();
+    }
+
+    /**
+     * @return the channel of the underlying file.
+     */
+    public FileChannel getChannel() {
+        return this.channel;
+    }
+
+    @Override
+    public long getFilePointer() {
+        return this.windowStart + this.window.position();
+    }
+
+    /**
+     * @return the length of the file.
+     */
+    public long length() {
+        return this.length;
+    }
+
+    @Override
+    public void mark(int readlimit) throws IOException {
+        this.marker = getFilePointer();
+    }
+
+    /**
+     * @return Read a byte, or -1 at the end of the file.
+     * @throws IOException
+     *             if the underlying read operation fails
+     */
+    public int read() throws IOException {
+        if (!ensure(FitsIO.BYTES_IN_BYTE)) {
+            return -1;
+        }
+        return this.window.get() & FitsIO.BYTE_MASK;
+    }
+
+    @Override
+    public int read(boolean[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(boolean[] b, int start, int length) throws IOException {
+        int i = start;
+        int end = start + length;
+        while (i < end && ensure(FitsIO.BYTES_IN_BOOLEAN)) {
+            int n = Math.min(end - i, this.window.remaining());
+            for (int index = 0; index < n; index++) {
+                b[i++] = this.window.get() == 1;
+            }
+        }
+        return eofCheck(start, i, end, FitsIO.BYTES_IN_BOOLEAN);
+    }
+
+    @Override
+    public int read(byte[] buf) throws IOException {
+        return read(buf, 0, buf.length);
+    }
+
+    @Override
+    public int read(byte[] buf, int offset, int len) throws IOException {
+        int i = offset;
+        int end = offset + len;
+        while (i < end && ensure(FitsIO.BYTES_IN_BYTE)) {
+            int n = Math.min(end - i, this.window.remaining());
+            this.window.get(buf, i, n);
+            i += n;
+        }
+        return eofCheck(offset, i, end, FitsIO.BYTES_IN_BYTE);
+    }
+
+    @Override
+    public int read(char[] c) throws IOException {
+        return read(c, 0, c.length);
+    }
+
+    @Override
+    public int read(char[] c, int start, int length) throws IOException {
+        int i = start;
+        int end = start + length;
+        while (i < end && ensure(FitsIO.BYTES_IN_CHAR)) {
+            int n = Math.min(end - i, this.window.remaining() / FitsIO.BYTES_IN_CHAR);
+            this.window.asCharBuffer().get(c, i, n);
+            skipInWindow(n * FitsIO.BYTES_IN_CHAR);
+            i += n;
+        }
+        return eofCheck(start, i, end, FitsIO.BYTES_IN_CHAR);
+    }
+
+    @Override
+    public int read(double[] d) throws IOException {
+        return read(d, 0, d.length);
+    }
+
+    @Override
+    public int read(double[] d, int start, int length) throws IOException {
+        int i = start;
+        int end = start + length;
+        while (i < end && ensure(FitsIO.BYTES_IN_DOUBLE)) {
+            int n = Math.min(end - i, this.window.remaining() / FitsIO.BYTES_IN_DOUBLE);
+            this.window.asDoubleBuffer().get(d, i, n);
+            skipInWindow(n * FitsIO.BYTES_IN_DOUBLE);
+            i += n;
+        }
+        return eofCheck(start, i, end, FitsIO.BYTES_IN_DOUBLE);
+    }
+
+    @Override
+    public int read(float[] f) throws IOException {
+        return read(f, 0, f.length);
+    }
+
+    @Override
+    public int read(float[] f, int start, int length) throws IOException {
+        int i = start;
+        int end = start + length;
+        while (i < end && ensure(FitsIO.BYTES_IN_FLOAT)) {
+            int n = Math.min(end - i, this.window.remaining() / FitsIO.BYTES_IN_FLOAT);
+            this.window.asFloatBuffer().get(f, i, n);
+            skipInWindow(n * FitsIO.BYTES_IN_FLOAT);
+            i += n;
+        }
+        return eofCheck(start, i, end, FitsIO.BYTES_IN_FLOAT);
+    }
+
+    @Override
+    public int read(int[] data) throws IOException {
+        return read(data, 0, data.length);
+    }
+
+    @Override
+    public int read(int[] data, int start, int length) throws IOException {
+        int i = start;
+        int end = start + length;
+        while (i < end && ensure(FitsIO.BYTES_IN_INTEGER)) {
+            int n = Math.min(end - i, this.window.remaining() / FitsIO.BYTES_IN_INTEGER);
+            this.window.asIntBuffer().get(data, i, n);
+            skipInWindow(n * FitsIO.BYTES_IN_INTEGER);
+            i += n;
+        }
+        return eofCheck(start, i, end, FitsIO.BYTES_IN_INTEGER);
+    }
+
+    @Override
+    public int read(long[] l) throws IOException {
+        return read(l, 0, l.length);
+    }
+
+    @Override
+    public int read(long[] l, int start, int length) throws IOException {
+        int i = start;
+        int end = start + length;
+        while (i < end && ensure(FitsIO.BYTES_IN_LONG)) {
+            int n = Math.min(end - i, this.window.remaining() / FitsIO.BYTES_IN_LONG);
+            this.window.asLongBuffer().get(l, i, n);
+            skipInWindow(n * FitsIO.BYTES_IN_LONG);
+            i += n;
+        }
+        return eofCheck(start, i, end, FitsIO.BYTES_IN_LONG);
+    }
+
+    @Override
+    public int read(short[] s) throws IOException {
+        return read(s, 0, s.length);
+    }
+
+    @Override
+    public int read(short[] s, int start, int length) throws IOException {
+        int i = start;
+        int end = start + length;
+        while (i < end && ensure(FitsIO.BYTES_IN_SHORT)) {
+            int n = Math.min(end - i, this.window.remaining() / FitsIO.BYTES_IN_SHORT);
+            this.window.asShortBuffer().get(s, i, n);
+            skipInWindow(n * FitsIO.BYTES_IN_SHORT);
+            i += n;
+        }
+        return eofCheck(start, i, end, FitsIO.BYTES_IN_SHORT);
+    }
+
+    @Deprecated
+    @Override
+    public int readArray(Object o) throws IOException {
+        return (int) readLArray(o);
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() == 1;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        require(FitsIO.BYTES_IN_BYTE);
+        return this.window.get();
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        require(FitsIO.BYTES_IN_CHAR);
+        return this.window.getChar();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        require(FitsIO.BYTES_IN_DOUBLE);
+        return this.window.getDouble();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        require(FitsIO.BYTES_IN_FLOAT);
+        return this.window.getFloat();
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IOException("Attempt to read outside byte array");
+        }
+        if (read(b, off, len) < len) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        require(FitsIO.BYTES_IN_INTEGER);
+        return this.window.getInt();
+    }
+
+    @Override
+    public long readLArray(Object o) throws IOException {
+        if (o == null) {
+            return 0;
+        }
+        if (!o.getClass().isArray()) {
+            throw new IOException("Invalid object passed to MappedFile.readArray:" + o.getClass().getName());
+        }
+        int length = Array.getLength(o);
+        long count = 0;
+        // Is this a multidimensional array? If so process recursively.
+        if (o.getClass().getComponentType().isArray()) {
+            for (int i = 0; i < length; i++) {
+                count += readLArray(Array.get(o, i));
+            }
+            return count;
+        }
+        PrimitiveType<?> type = PrimitiveTypeHandler.valueOf(o.getClass().getComponentType());
+        if (type == PrimitiveTypes.BOOLEAN) {
+            count = read((boolean[]) o, 0, length);
+        } else if (type == PrimitiveTypes.BYTE) {
+            count = read((byte[]) o, 0, length);
+            if (count < length) {
+                throw new EOFException();
+            }
+        } else if (type == PrimitiveTypes.CHAR) {
+            count = read((char[]) o, 0, length);
+        } else if (type == PrimitiveTypes.SHORT) {
+            count = read((short[]) o, 0, length);
+        } else if (type == PrimitiveTypes.INT) {
+            count = read((int[]) o, 0, length);
+        } else if (type == PrimitiveTypes.LONG) {
+            count = read((long[]) o, 0, length);
+        } else if (type == PrimitiveTypes.FLOAT) {
+            count = read((float[]) o, 0, length);
+        } else if (type == PrimitiveTypes.DOUBLE) {
+            count = read((double[]) o, 0, length);
+        } else if (type == PrimitiveTypes.STRING || type == PrimitiveTypes.UNKNOWN) {
+            for (int i = 0; i < length; i++) {
+                count += readLArray(Array.get(o, i));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read a line of input, the same way {@link RandomAccessFile#readLine()}
+     * does.
+     * 
+     * @return the next line or null at the end of the file.
+     */
+    @Override
+    public String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0 && c != '\n') {
+            if (c == '\r') {
+                long current = getFilePointer();
+                if (read() != '\n') {
+                    seek(current);
+                }
+                break;
+            }
+            line.append((char) c);
+            c = read();
+        }
+        return line.toString();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        require(FitsIO.BYTES_IN_LONG);
+        return this.window.getLong();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        require(FitsIO.BYTES_IN_SHORT);
+        return this.window.getShort();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & FitsIO.BYTE_MASK;
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & FitsIO.SHORT_MASK;
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        seek(this.marker);
+    }
+
+    @Override
+    public void seek(long offsetFromStart) throws IOException {
+        if (offsetFromStart < 0) {
+            offsetFromStart = 0;
+        }
+        if (this.windowStart <= offsetFromStart && offsetFromStart <= this.windowStart + this.window.limit()) {
+            this.window.position((int) (offsetFromStart - this.windowStart));
+        } else {
+            // the next read will map a window here.
+            this.window = EMPTY;
+            this.windowStart = offsetFromStart;
+        }
+    }
+
+    @Override
+    public long skip(long offset) throws IOException {
+        long current = getFilePointer();
+        if (offset > 0 && current + offset > this.length) {
+            offset = Math.max(0, this.length - current);
+        } else if (current + offset < 0) {
+            offset = -current;
+        }
+        seek(current + offset);
+        return offset;
+    }
+
+    @Override
+    public void skipAllBytes(int toSkip) throws IOException {
+        skipAllBytes((long) toSkip);
+    }
+
+    @Override
+    public void skipAllBytes(long toSkip) throws IOException {
+        // Note that we allow negative skips...
+        if (skip(toSkip) < toSkip) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        skipAllBytes(n);
+        return n;
+    }
+
+    /**
+     * Make sure that at least the specified number of bytes is available in
+     * the current window, mapping a new window at the current position if
+     * needed.
+     * 
+     * @param needBytes
+     *            the number of bytes needed for the next read operation.
+     * @return false if the end of the file was reached before.
+     * @throws IOException
+     *             if the file could not be mapped
+     */
+    private boolean ensure(int needBytes) throws IOException {
+        if (this.window.remaining() >= needBytes) {
+            return true;
+        }
+        long position = getFilePointer();
+        if (position >= this.length) {
+            return false;
+        }
+        long size = Math.min(this.windowSize, this.length - position);
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.BIG_ENDIAN);
+        this.windowStart = position;
+        return size >= needBytes;
+    }
+
+    /**
+     * See if an exception should be thrown during an array read.
+     * 
+     * @param start
+     *            the start index
+     * @param index
+     *            the current index
+     * @param end
+     *            the index that should have been reached
+     * @param length
+     *            the element length
+     * @return the number of bytes read before the end of file.
+     * @throws EOFException
+     *             if no element could be read at all
+     */
+    private int eofCheck(int start, int index, int end, int length) throws EOFException {
+        if (start == index && index < end) {
+            throw new EOFException();
+        }
+        return (index - start) * length;
+    }
+
+    private void require(int needBytes) throws IOException {
+        if (!ensure(needBytes)) {
+            throw new EOFException();
+        }
+    }
+
+    private void skipInWindow(int bytes) {
+        this.window.position(this.window.position() + bytes);
+    }
+}
@@ -0,0 +1,292 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An input stream that reads the underlying stream in a background thread,
+ * so that the next blocks are already being fetched while the current one is
+ * consumed. This is useful for slow sources (network file systems, remote
+ * object stores) when the data is scanned sequentially, because the I/O then
+ * overlaps with header parsing and data decoding.
+ * <p>
+ * The background thread is started by the first read and ends at the end of
+ * the underlying stream, at the first error (which is re-thrown to the reader)
+ * or when this stream is closed. Streams that are not read to the end must be
+ * closed with {@link #close()}: until then the background thread waits for
+ * the blocks to be consumed and keeps the underlying stream open. As a last
+ * resort, a stream that is dropped without being closed is detected by the
+ * background thread once it has been garbage collected, and the underlying
+ * stream is closed then.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    /**
+     * A block of data read by the background thread.
+     */
+    private static final class Block {
+
+        private final byte[] data;
+
+        private int length;
+
+        private IOException error;
+
+        private Block(byte[] data) {
+            this.data = data;
+        }
+
+        private boolean isEnd() {
+            return this.length < 0 || this.error != null;
+        }
+    }
+
+    /**
+     * The background thread, it only holds a weak reference to the stream it
+     * reads for, so that a stream dropped without close can still be garbage
+     * collected.
+     */
+    private static final class Reader implements Runnable {
+
+        private final WeakReference<ReadAheadInputStream> owner;
+
+        private final InputStream in;
+
+        private final BlockingQueue<Block> filled;
+
+        private final BlockingQueue<Block> free;
+
+        private Reader(ReadAheadInputStream owner) {
+            this.owner = new WeakReference<ReadAheadInputStream>(owner);
+            this.in = owner.in;
+            this.filled = owner.filled;
+            this.free = owner.free;
+        }
+
+        /**
+         * @return true if nobody will consume the blocks anymore, because the
+         *         stream was closed or dropped.
+         */
+        private boolean isAbandoned() {
+            ReadAheadInputStream stream = this.owner.get();
+            return stream == null || stream.closed;
+        }
+
+        /**
+         * Fill free blocks until the end of the underlying stream, the first
+         * error or until the stream is abandoned.
+         */
+        @Override
+        public void run() {
+            try {
+                boolean end = false;
+                while (!end && !isAbandoned()) {
+                    Block block = this.free.poll(OWNER_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    if (block != null) {
+                        try {
+                            block.length = this.in.read(block.data, 0, block.data.length);
+                            // a zero length read would look like progress
+                            // forever.
+                            if (block.length == 0) {
+                                block.error = new EOFException("underlying stream returned no data");
+                            }
+                        } catch (IOException e) {
+                            block.error = e;
+                        }
+                        end = block.isEnd();
+                        this.filled.put(block);
+                    }
+                }
+                if (!end && this.owner.get() == null) {
+                    // dropped without close, release the underlying stream.
+                    SafeClose.close(this.in);
+                }
+            } catch (InterruptedException e) {
+                // closed, nothing more to read.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * how long the background thread waits for a free block before it checks
+     * whether the stream was dropped.
+     */
+    private static final long OWNER_CHECK_MILLIS = 1000L;
+
+    private final InputStream in;
+
+    /**
+     * blocks filled by the background thread, waiting to be consumed.
+     */
+    private final BlockingQueue<Block> filled;
+
+    /**
+     * consumed blocks that can be filled again.
+     */
+    private final BlockingQueue<Block> free;
+
+    private Thread reader;
+
+    private Block current;
+
+    private int offset;
+
+    private volatile boolean closed;
+
+    /**
+     * Create a read ahead stream.
+     * 
+     * @param in
+     *            the stream to read from.
+     * @param blockSize
+     *            the size of the blocks read from the underlying stream.
+     * @param depth
+     *            the number of blocks that may be read ahead of the one
+     *            currently consumed.
+     */
+    public ReadAheadInputStream(InputStream in, int blockSize, int depth) {
+        if (blockSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Invalid read ahead size " + blockSize + " x " + depth);
+        }
+        this.in = in;
+        this.filled = new ArrayBlockingQueue<Block>(depth + 1);
+        this.free = new ArrayBlockingQueue<Block>(depth + 1);
+        for (int index = 0; index <= depth; index++) {
+            this.free.add(new Block(new byte[blockSize]));
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (this.current == null || this.current.isEnd()) {
+            return 0;
+        }
+        return this.current.length - this.offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        if (this.reader != null) {
+            this.reader.interrupt();
+        }
+        this.in.close();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return this.current.data[this.offset++] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, this.current.length - this.offset);
+        System.arraycopy(this.current.data, this.offset, b, off, n);
+        this.offset += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && nextBlock()) {
+            int step = (int) Math.min(n - skipped, this.current.length - this.offset);
+            this.offset += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    /**
+     * Make sure that the current block has data left, waiting for the
+     * background thread if necessary.
+     * 
+     * @return false at the end of the stream
+     * @throws IOException
+     *             if the background read failed or the wait was interrupted.
+     */
+    private boolean nextBlock() throws IOException {
+        if (this.closed) {
+            throw new IOException("stream closed");
+        }
+        if (this.current != null) {
+            if (this.current.error != null) {
+                throw this.current.error;
+            }
+            if (this.current.length < 0) {
+                return false;
+            }
+            if (this.offset < this.current.length) {
+                return true;
+            }
+            this.free.add(this.current);
+            this.current = null;
+        }
+        if (this.reader == null) {
+            startReader();
+        }
+        try {
+            this.current = this.filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for read ahead");
+        }
+        this.offset = 0;
+        return nextBlock();
+    }
+
+    private void startReader() {
+        this.reader = new Thread(new Reader(this), "nom-tam-fits read ahead");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+}
@@ -38,6 +38,7 @@ import java.io.IOException;
 
 import nom.tam.util.BufferedDataInputStream;
 import nom.tam.util.BufferedDataOutputStream;
+import nom.tam.util.BufferedFile;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -74,26 +75,14 @@ public class FitsHeapTest {
     }
 
     @Test
-    public void testHeapPutManyGigabyte() {
-        FitsException actual = null;
+    public void testHeapManyGigabyte() {
+        // the storage is only allocated when it is used.
+        FitsHeap heap = new FitsHeap(3L * Integer.MAX_VALUE);
+        Assert.assertEquals(3L * Integer.MAX_VALUE, heap.getSize());
+        IllegalStateException actual = null;
         try {
-            // fake the gigabytes by filling the fits elements dwith
-            // duplicates;-)
-            long[][][][] data = new long[10][][][];
-            long[][][] data1 = new long[1024][][];
-            long[][] data2 = new long[1024][];
-            long[] data3 = new long[1024];
-            for (int index = 0; index < data.length; index++) {
-                data[index] = data1;
-                for (int index2 = 0; index2 < data[0].length; index2++) {
-                    data[index][index2] = data2;
-                    for (int index3 = 0; index3 < data[0][0].length; index3++) {
-                        data[index][index2][index3] = data3;
-                    }
-                }
-            }
-            new FitsHeap(100).putData(data);
-        } catch (FitsException e) {
+            heap.size();
+        } catch (IllegalStateException e) {
             actual = e;
         }
         Assert.assertNotNull(actual);
@@ -125,6 +114,227 @@ public class FitsHeapTest {
         Assert.assertTrue(actual.getCause()instanceof EOFException);
     }
 
+    @Test
+    public void testHeapRandomAccess() throws Exception {
+        FitsHeap heap = new FitsHeap(0);
+        long bytes = heap.putData(new byte[]{
+            1,
+            2,
+            3
+        });
+        long doubles = heap.putData(new double[]{
+            1.5,
+            -2.5
+        });
+        long complex = heap.putData(new float[][]{
+            {
+                1f,
+                2f
+            },
+            {
+                3f,
+                4f
+            }
+        });
+        long longs = heap.putData(new long[]{
+            Long.MAX_VALUE,
+            -1L
+        });
+        long shorts = heap.putData(new short[]{
+            -7
+        });
+        long booleans = heap.putData(new boolean[]{
+            true,
+            false
+        });
+        // read in reverse order, backwards in the heap
+        boolean[] actualBooleans = new boolean[2];
+        heap.getData(booleans, actualBooleans);
+        Assert.assertArrayEquals(new boolean[]{
+            true,
+            false
+        }, actualBooleans);
+        short[] actualShorts = new short[1];
+        heap.getData(shorts, actualShorts);
+        Assert.assertEquals(-7, actualShorts[0]);
+        long[] actualLongs = new long[2];
+        heap.getData(longs, actualLongs);
+        Assert.assertArrayEquals(new long[]{
+            Long.MAX_VALUE,
+            -1L
+        }, actualLongs);
+        float[][] actualComplex = new float[2][2];
+        heap.getData(complex, actualComplex);
+        Assert.assertArrayEquals(new float[]{
+            3f,
+            4f
+        }, actualComplex[1], 0f);
+        double[] actualDoubles = new double[2];
+        heap.getData(doubles, actualDoubles);
+        Assert.assertArrayEquals(new double[]{
+            1.5,
+            -2.5
+        }, actualDoubles, 0d);
+        byte[] actualBytes = new byte[3];
+        heap.getData(bytes, actualBytes);
+        Assert.assertArrayEquals(new byte[]{
+            1,
+            2,
+            3
+        }, actualBytes);
+
+        FitsException actual = null;
+        try {
+            heap.getData(booleans, new int[1]);
+        } catch (FitsException e) {
+            actual = e;
+        }
+        Assert.assertNotNull(actual);
+        Assert.assertTrue(actual.getMessage().contains("not within the heap"));
+    }
+
+    @Test
+    public void testHeapChunks() throws Exception {
+        FitsHeap heap = new FitsHeap(0);
+        heap.putData(new byte[FitsHeap.CHUNK_SIZE - 4]);
+        // this one crosses the border between the first and the second chunk
+        long doubles = heap.putData(new double[]{
+            1.5,
+            -2.5
+        });
+        long ints = heap.putData(new int[]{
+            42
+        });
+        Assert.assertEquals(FitsHeap.CHUNK_SIZE - 4, doubles);
+        Assert.assertEquals(FitsHeap.CHUNK_SIZE + 16, heap.getSize());
+        double[] actualDoubles = new double[2];
+        heap.getData(doubles, actualDoubles);
+        Assert.assertArrayEquals(new double[]{
+            1.5,
+            -2.5
+        }, actualDoubles, 0d);
+        int[] actualInts = new int[1];
+        heap.copy().getData(ints, actualInts);
+        Assert.assertEquals(42, actualInts[0]);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        heap.write(out);
+        out.flush();
+        Assert.assertEquals(heap.getSize(), bytes.size());
+        FitsHeap read = new FitsHeap(heap.getSize());
+        read.read(new BufferedDataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        read.getData(doubles, actualDoubles);
+        Assert.assertEquals(-2.5, actualDoubles[1], 0d);
+    }
+
+    @Test
+    public void testHeapPutRows() throws Exception {
+        FitsHeap heap = new FitsHeap(0);
+        heap.putData(new byte[FitsHeap.CHUNK_SIZE - 3]);
+        Object[] rows = new Object[]{
+            new short[]{
+                1,
+                2
+            },
+            new int[0],
+            new char[]{
+                'a',
+                'b'
+            },
+            new boolean[]{
+                true,
+                false,
+                true
+            },
+            new long[]{
+                -5L
+            }
+        };
+        long[] offsets = new long[rows.length];
+        heap.putData(rows, offsets);
+        Assert.assertArrayEquals(new long[]{
+            FitsHeap.CHUNK_SIZE - 3,
+            FitsHeap.CHUNK_SIZE + 1,
+            FitsHeap.CHUNK_SIZE + 1,
+            FitsHeap.CHUNK_SIZE + 5,
+            FitsHeap.CHUNK_SIZE + 8
+        }, offsets);
+        Assert.assertEquals(FitsHeap.CHUNK_SIZE + 16, heap.getSize());
+        short[] actualShorts = new short[2];
+        heap.getData(offsets[0], actualShorts);
+        Assert.assertArrayEquals(new short[]{
+            1,
+            2
+        }, actualShorts);
+        char[] actualChars = new char[2];
+        heap.getData(offsets[2], actualChars);
+        Assert.assertArrayEquals(new char[]{
+            'a',
+            'b'
+        }, actualChars);
+        boolean[] actualBooleans = new boolean[3];
+        heap.getData(offsets[3], actualBooleans);
+        Assert.assertArrayEquals(new boolean[]{
+            true,
+            false,
+            true
+        }, actualBooleans);
+        long[] actualLongs = new long[1];
+        heap.getData(offsets[4], actualLongs);
+        Assert.assertEquals(-5L, actualLongs[0]);
+
+        FitsException actual = null;
+        try {
+            heap.putData(new String[]{
+                "no"
+            });
+        } catch (FitsException e) {
+            actual = e;
+        }
+        Assert.assertNotNull(actual);
+        Assert.assertTrue(actual.getMessage().contains("Invalid type"));
+    }
+
+    @Test
+    public void testHeapDeferred() throws Exception {
+        BufferedFile file = new BufferedFile("target/testHeapDeferred.bin", "rw");
+        file.write(new byte[10]);
+        file.writeInt(17);
+        file.writeDouble(-3.5);
+        file.flush();
+        file.seek(2);
+
+        FitsHeap heap = new FitsHeap(12);
+        heap.defer(file, 10);
+        Assert.assertTrue(heap.isDeferred());
+        double[] actualDouble = new double[1];
+        heap.getData(4, actualDouble);
+        Assert.assertEquals(-3.5, actualDouble[0], 0d);
+        Assert.assertEquals(2, file.getFilePointer());
+
+        FitsException actual = null;
+        try {
+            heap.getData(8, new double[1]);
+        } catch (FitsException e) {
+            actual = e;
+        }
+        Assert.assertNotNull(actual);
+        Assert.assertTrue(actual.getMessage().contains("not within the heap"));
+
+        // adding data loads the heap first
+        long offset = heap.putData(new short[]{
+            5
+        });
+        Assert.assertFalse(heap.isDeferred());
+        Assert.assertEquals(12, offset);
+        int[] actualInt = new int[1];
+        heap.getData(0, actualInt);
+        Assert.assertEquals(17, actualInt[0]);
+        Assert.assertEquals(2, file.getFilePointer());
+        file.close();
+    }
+
     @Test
     public void testHeapWriteFailures() throws Exception {
         FitsException actual = null;
@@ -45,10 +45,24 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
@@ -59,8 +73,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import nom.tam.fits.BasicHDU;
+import nom.tam.fits.BinaryTable;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.FitsHeap;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.ImageData;
@@ -71,9 +88,13 @@ import nom.tam.fits.compression.algorithm.rice.RiceCompressOption;
 import nom.tam.fits.header.Compression;
 import nom.tam.fits.header.Standard;
 import nom.tam.fits.util.BlackBoxImages;
-import nom.tam.image.StandardImageTiler;
+import nom.tam.image.ImageTiler;
 import nom.tam.image.compression.hdu.CompressedImageHDU;
+import nom.tam.image.compression.hdu.CompressedImageWriter;
+import nom.tam.image.compression.tile.CompressedImageTiler;
+import nom.tam.image.compression.tile.DecompressedTileCache;
 import nom.tam.util.ArrayFuncs;
+import nom.tam.util.BufferedDataInputStream;
 import nom.tam.util.BufferedDataOutputStream;
 import nom.tam.util.SafeClose;
 
@@ -510,7 +531,38 @@ public class ReadWriteProvidedCompressedImageTest {
         doTile("readRiceAsImageHDU", data, image.getTiler(), 0, 0, 20, 20);
     }
 
-    private void doTile(String test, Object data, StandardImageTiler t, int x, int y, int nx, int ny) throws Exception {
+    @Test
+    public void readRiceDecompressTo() throws Exception {
+        String[] fileNames = {
+            "src/test/resources/nom/tam/image/provided/m13_rice.fits",
+            "src/test/resources/nom/tam/image/provided/m13real_rice.fits"
+        };
+        BufferedDataOutputStream bdos = new BufferedDataOutputStream(new FileOutputStream("target/decompress_to_m13.fits"));
+        try {
+            BasicHDU.getDummyHDU().write(bdos);
+            for (String fileName : fileNames) {
+                Fits f = new Fits(fileName);
+                try {
+                    ((CompressedImageHDU) f.getHDU(1)).decompressTo(bdos);
+                } finally {
+                    SafeClose.close(f);
+                }
+            }
+        } finally {
+            SafeClose.close(bdos);
+        }
+        Fits f = new Fits("target/decompress_to_m13.fits");
+        try {
+            Assert.assertArrayEquals(this.m13_data, (short[][]) f.getHDU(1).getKernel());
+            float[][] expected = (float[][]) readCompressedHdu(fileNames[1], 1).getKernel();
+            assertArrayEquals(expected, (float[][]) f.getHDU(2).getKernel(), 0f);
+            Assert.assertNull(f.getHDU(3));
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    private void doTile(String test, Object data, ImageTiler t, int x, int y, int nx, int ny) throws Exception {
         Class<?> baseClass = ArrayFuncs.getBaseClass(data);
         Object tile = Array.newInstance(baseClass, nx * ny);
         t.getTile(tile, new int[]{
@@ -951,6 +1003,462 @@ public class ReadWriteProvidedCompressedImageTest {
         }
     }
 
+    @Test
+    public void writeRowByRow() throws Exception {
+        BufferedDataOutputStream bdos = null;
+        try {
+            bdos = new BufferedDataOutputStream(new FileOutputStream("target/write_m13_row_by_row.fits.fz"));
+            BasicHDU.getDummyHDU().write(bdos);
+            CompressedImageWriter writer = new CompressedImageWriter(this.m13.getHeader(), 300, 40);
+            writer.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                    .setQuantAlgorithm((String) null)//
+                    .getCompressOption(RiceCompressOption.class)//
+                    /**/.setBlockSize(32);
+            for (int row = 0; row < this.m13_data.length; row += 7) {
+                writer.writeRows(Arrays.copyOfRange(this.m13_data, row, Math.min(row + 7, this.m13_data.length)));
+            }
+            writer.finish(bdos);
+            // the second image is read from the stream of the uncompressed
+            // file.
+            writer = new CompressedImageWriter(this.m13real.getHeader(), -1, 15);
+            writer.setCompressAlgorithm(Compression.ZCMPTYPE_HCOMPRESS_1)//
+                    .setQuantAlgorithm(Compression.ZQUANTIZ_SUBTRACTIVE_DITHER_2)//
+                    .getCompressOption(QuantizeOption.class)//
+                    /**/.setQlevel(1.0);
+            writer.getCompressOption(HCompressorOption.class).setScale(1);
+            BufferedDataInputStream in = new BufferedDataInputStream(new FileInputStream("src/test/resources/nom/tam/image/provided/m13real.fits"));
+            try {
+                new Header(in);
+                writer.writeRows(in, this.m13_data_real.length);
+            } finally {
+                SafeClose.close(in);
+            }
+            writer.finish(bdos);
+        } finally {
+            SafeClose.close(bdos);
+        }
+        Fits f = new Fits("target/write_m13_row_by_row.fits.fz");
+        try {
+            f.readHDU();// the primary
+            CompressedImageHDU hdu = (CompressedImageHDU) f.readHDU();
+            Assert.assertEquals(Compression.ZCMPTYPE_RICE_1, hdu.getHeader().getStringValue(Compression.ZCMPTYPE));
+            Assert.assertEquals(40, hdu.getHeader().getIntValue(Compression.ZTILEn.n(2)));
+            Assert.assertArrayEquals(this.m13_data, (short[][]) hdu.asImageHDU().getData().getData());
+            hdu = (CompressedImageHDU) f.readHDU();
+            assertArrayEquals(this.m13_data_real, (float[][]) hdu.asImageHDU().getData().getData(), 9f);
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    @Test(expected = FitsException.class)
+    public void writeRowByRowTooManyRows() throws Exception {
+        CompressedImageWriter writer = new CompressedImageWriter(this.m13.getHeader(), 300, 15);
+        writer.setCompressAlgorithm(Compression.ZCMPTYPE_GZIP_1);
+        writer.writeRows(this.m13_data);
+        writer.writeRows(new short[][]{
+            this.m13_data[0]
+        });
+    }
+
+    private void writeRegionTestFile() throws Exception {
+        Fits f = null;
+        try {
+            f = new Fits();
+            int[][] tiles = {
+                {
+                    300,
+                    15
+                },
+                {
+                    100,
+                    30
+                },
+                {
+                    70,
+                    1
+                }
+            };
+            for (int[] tile : tiles) {
+                CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(this.m13, tile);
+                compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                        .setQuantAlgorithm((String) null)//
+                        .getCompressOption(RiceCompressOption.class)//
+                        /**/.setBlockSize(32);
+                compressedHdu.compress();
+                f.addHDU(compressedHdu);
+            }
+            BufferedDataOutputStream bdos = null;
+            try {
+                bdos = new BufferedDataOutputStream(new FileOutputStream("target/region_m13.fits.fz"));
+                f.write(bdos);
+            } finally {
+                SafeClose.close(bdos);
+            }
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    @Test
+    public void readRegion() throws Exception {
+        writeRegionTestFile();
+        Fits f = null;
+        try {
+            f = new Fits("target/region_m13.fits.fz");
+            f.readHDU();// the primary
+            for (int index = 0; index < 3; index++) {
+                CompressedImageHDU hdu = (CompressedImageHDU) f.readHDU();
+                assertRegion(hdu, 37, 53, 80, 120);
+                assertRegion(hdu, 0, 0, 300, 300);
+                assertRegion(hdu, 299, 299, 1, 1);
+                assertRegion(hdu, 250, 10, 50, 3);
+                try {
+                    hdu.getUncompressedRegion(new int[]{
+                        250,
+                        10
+                    }, new int[]{
+                        51,
+                        3
+                    });
+                    Assert.fail("region outside of the image");
+                } catch (FitsException e) {
+                    Assert.assertTrue(e.getMessage().contains("not within"));
+                }
+            }
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    @Test
+    public void readWithTiler() throws Exception {
+        writeRegionTestFile();
+        Fits f = null;
+        try {
+            f = new Fits("target/region_m13.fits.fz");
+            f.readHDU();// the primary
+            for (int index = 0; index < 3; index++) {
+                CompressedImageHDU hdu = (CompressedImageHDU) f.readHDU();
+                CompressedImageTiler tiler = hdu.getTiler(2);
+                for (int repeat = 0; repeat < 2; repeat++) {
+                    doTile("compressed" + index, this.m13_data, tiler, 53, 37, 120, 80);
+                    doTile("compressed" + index, this.m13_data, tiler, 0, 290, 300, 10);
+                    doTile("compressed" + index, this.m13_data, tiler, 299, 299, 1, 1);
+                }
+                Assert.assertArrayEquals(this.m13_data, (short[][]) tiler.getCompleteImage());
+                try {
+                    tiler.getTile(new int[]{
+                        299,
+                        0
+                    }, new int[]{
+                        2,
+                        2
+                    });
+                    Assert.fail("tile outside of the image");
+                } catch (IOException e) {
+                    Assert.assertTrue(e.getMessage().contains("not within"));
+                }
+            }
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    @Test
+    public void readWithSharedTileCache() throws Exception {
+        writeRegionTestFile();
+        DecompressedTileCache cache = new DecompressedTileCache(1024 * 1024);
+        for (int open = 0; open < 2; open++) {
+            Fits f = null;
+            try {
+                f = new Fits("target/region_m13.fits.fz");
+                CompressedImageHDU hdu = (CompressedImageHDU) f.getHDU(2);
+                CompressedImageTiler tiler = hdu.getTiler(cache, "target/region_m13.fits.fz", 2);
+                doTile("shared", this.m13_data, tiler, 150, 40, 60, 50);
+            } finally {
+                SafeClose.close(f);
+            }
+        }
+        // 2 x 2 tiles of 100 x 30 are touched.
+        Assert.assertEquals(4, cache.getMisses());
+        Assert.assertEquals(4, cache.getHits());
+        Assert.assertEquals(4 * 100 * 30 * 2, cache.getSize());
+        Assert.assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void readWithTilerOnDemand() throws Exception {
+        writeRegionTestFile();
+        Fits f = null;
+        try {
+            f = new Fits("target/region_m13.fits.fz");
+            CompressedImageHDU hdu = (CompressedImageHDU) f.getHDU(2);
+            CompressedImageTiler tiler = hdu.getTiler(2);
+            doTile("onDemand", this.m13_data, tiler, 150, 40, 60, 50);
+            doTile("onDemand", this.m13_data, tiler, 0, 0, 300, 300);
+            // only the data of the tiles was read, not the table or its heap.
+            Assert.assertNull(getField(hdu.getData(), BinaryTable.class, "table"));
+            Assert.assertNull(getField(getField(hdu.getData(), BinaryTable.class, "heap"), FitsHeap.class, "chunks"));
+            Assert.assertArrayEquals(this.m13_data, (short[][]) hdu.asImageHDU().getData().getData());
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    @Test
+    public void readWithSharedTilerConcurrently() throws Exception {
+        writeRegionTestFile();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Fits f = null;
+        try {
+            f = new Fits("target/region_m13.fits.fz");
+            CompressedImageHDU hdu = (CompressedImageHDU) f.getHDU(2);
+            final CompressedImageTiler tiler = hdu.getTiler(3);
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int request = 0; request < 40; request++) {
+                final int x = request * 7 % 250;
+                final int y = request * 13 % 250;
+                results.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        short[] tile = (short[]) tiler.getTile(new int[]{
+                            y,
+                            x
+                        }, new int[]{
+                            50,
+                            50
+                        });
+                        for (int j = 0; j < 50; j++) {
+                            for (int i = 0; i < 50; i++) {
+                                Assert.assertEquals(ReadWriteProvidedCompressedImageTest.this.m13_data[y + j][x + i], tile[j * 50 + i]);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+            SafeClose.close(f);
+        }
+    }
+
+    private static Object getField(Object object, Class<?> clazz, String name) throws Exception {
+        Field field = clazz.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+
+    /**
+     * thread pool that counts the tiles it runs and the maximum number of tiles
+     * running at the same time. The counting happens within the task, so that
+     * a tile is done before the one waiting for it can continue.
+     */
+    private static class CountingThreadPool extends ThreadPoolExecutor {
+
+        private final AtomicInteger executed = new AtomicInteger();
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        CountingThreadPool() {
+            super(4, 4, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        }
+
+        @Override
+        public Future<?> submit(final Runnable task) {
+            return super.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    int now = CountingThreadPool.this.running.incrementAndGet();
+                    int max = CountingThreadPool.this.maxRunning.get();
+                    while (now > max && !CountingThreadPool.this.maxRunning.compareAndSet(max, now)) {
+                        max = CountingThreadPool.this.maxRunning.get();
+                    }
+                    CountingThreadPool.this.executed.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        CountingThreadPool.this.running.decrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void compressWithOwnThreadPool() throws Exception {
+        CountingThreadPool pool = new CountingThreadPool();
+        Fits f = null;
+        try {
+            try {
+                f = new Fits();
+                CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(this.m13, 300, 15)//
+                        .setThreadPool(pool)//
+                        .setMaxTilesInFlight(2);
+                compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                        .setQuantAlgorithm((String) null);
+                compressedHdu.compress();
+                f.addHDU(compressedHdu);
+                f.write(new File("target/write_m13_own_pool.fits.fz"));
+            } finally {
+                SafeClose.close(f);
+            }
+            // 300 / 15 = 20 tiles
+            Assert.assertEquals(20, pool.executed.get());
+            Assert.assertTrue(pool.maxRunning.get() <= 2);
+            pool.maxRunning.set(0);
+
+            FitsFactory.useThreadLocalSettings(true);
+            FitsFactory.setThreadPool(pool);
+            FitsFactory.setMaxTilesInFlight(1);
+            try {
+                f = new Fits("target/write_m13_own_pool.fits.fz");
+                CompressedImageHDU hdu = (CompressedImageHDU) f.getHDU(1);
+                Assert.assertArrayEquals(this.m13_data, (short[][]) hdu.asImageHDU().getData().getData());
+            } finally {
+                SafeClose.close(f);
+                FitsFactory.useThreadLocalSettings(false);
+            }
+            Assert.assertEquals(40, pool.executed.get());
+            Assert.assertEquals(1, pool.maxRunning.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void decompressWithSlowTile() throws Exception {
+        // 300 / 15 = 20 tiles, the first one waits until the others are done.
+        final CountDownLatch othersDone = new CountDownLatch(19);
+        final AtomicBoolean overtaken = new AtomicBoolean();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+
+            private final AtomicInteger submitted = new AtomicInteger();
+
+            @Override
+            public Future<?> submit(final Runnable task) {
+                final boolean first = this.submitted.getAndIncrement() == 0;
+                return super.submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (first) {
+                            try {
+                                overtaken.set(othersDone.await(10, TimeUnit.SECONDS));
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        task.run();
+                        if (!first) {
+                            othersDone.countDown();
+                        }
+                    }
+                });
+            }
+        };
+        Fits f = null;
+        try {
+            f = new Fits();
+            CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(this.m13, 300, 15);
+            compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                    .setQuantAlgorithm((String) null);
+            compressedHdu.compress();
+            f.addHDU(compressedHdu);
+            f.write(new File("target/write_m13_slow_tile.fits.fz"));
+        } finally {
+            SafeClose.close(f);
+        }
+        try {
+            f = new Fits("target/write_m13_slow_tile.fits.fz");
+            CompressedImageHDU hdu = ((CompressedImageHDU) f.getHDU(1))//
+                    .setThreadPool(pool)//
+                    .setMaxTilesInFlight(2);
+            Assert.assertArrayEquals(this.m13_data, (short[][]) hdu.asImageHDU().getData().getData());
+        } finally {
+            SafeClose.close(f);
+            pool.shutdown();
+        }
+        Assert.assertTrue("the slow tile blocked the others", overtaken.get());
+    }
+
+    @Test
+    public void readWithTilerAndNullPixelMask() throws Exception {
+        double[][] data = newTestImageWithSomeBlanks("ForTiler");
+        Fits f = null;
+        BufferedDataOutputStream bdos = null;
+        try {
+            f = new Fits();
+            bdos = new BufferedDataOutputStream(new FileOutputStream("target/testTilerWithNullPixelMask.fits.fz"));
+            ImageData imageData = new ImageData(data);
+            ImageHDU hdu = new ImageHDU(ImageHDU.manufactureHeader(imageData), imageData);
+            CompressedImageHDU compressedHdu = CompressedImageHDU.fromImageHDU(hdu, 25, 20);
+            compressedHdu.setCompressAlgorithm(Compression.ZCMPTYPE_RICE_1)//
+                    .setQuantAlgorithm(Compression.ZQUANTIZ_SUBTRACTIVE_DITHER_2)//
+                    .preserveNulls(Compression.ZCMPTYPE_RICE_1)//
+                    .getCompressOption(QuantizeOption.class)//
+                    /**/.setQlevel(1.0)/**/.setCheckNull(true);
+            compressedHdu.compress();
+            f.addHDU(compressedHdu);
+            f.write(bdos);
+        } finally {
+            SafeClose.close(bdos);
+            SafeClose.close(f);
+        }
+        double[][] expected;
+        try {
+            f = new Fits("target/testTilerWithNullPixelMask.fits.fz");
+            f.readHDU();
+            CompressedImageHDU hdu = (CompressedImageHDU) f.readHDU();
+            expected = (double[][]) hdu.asImageHDU().getData().getData();
+            CompressedImageTiler tiler = hdu.getTiler(1);
+            for (int repeat = 0; repeat < 2; repeat++) {
+                double[][] actual = (double[][]) tiler.getCompleteImage();
+                for (int index = 0; index < actual.length; index++) {
+                    assertArrayEquals(expected[index], actual[index], 0d, true);
+                }
+            }
+        } finally {
+            SafeClose.close(f);
+        }
+        // the null pixel masks are read with the tiles when the table is unread.
+        try {
+            f = new Fits("target/testTilerWithNullPixelMask.fits.fz");
+            CompressedImageHDU hdu = (CompressedImageHDU) f.getHDU(1);
+            CompressedImageTiler tiler = hdu.getTiler(1);
+            double[][] actual = (double[][]) tiler.getCompleteImage();
+            for (int index = 0; index < actual.length; index++) {
+                assertArrayEquals(expected[index], actual[index], 0d, true);
+            }
+        } finally {
+            SafeClose.close(f);
+        }
+    }
+
+    private void assertRegion(CompressedImageHDU hdu, int y, int x, int ny, int nx) throws Exception {
+        short[] region = ((ShortBuffer) hdu.getUncompressedRegion(new int[]{
+            y,
+            x
+        }, new int[]{
+            ny,
+            nx
+        })).array();
+        Assert.assertEquals(nx * ny, region.length);
+        for (int j = 0; j < ny; j++) {
+            for (int i = 0; i < nx; i++) {
+                Assert.assertEquals(this.m13_data[y + j][x + i], region[j * nx + i]);
+            }
+        }
+    }
+
     @Test
     public void writeRiceSpeciaIntOverflow() throws Exception {
         Fits f = null;
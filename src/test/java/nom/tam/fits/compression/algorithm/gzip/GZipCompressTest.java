@@ -122,6 +122,33 @@ public class GZipCompressTest {
         }.decompress(ByteBuffer.wrap(new byte[10]), ByteBuffer.wrap(new byte[100]));
     }
 
+    @Test
+    public void testReuseCompressor() throws Exception {
+        IntGZipCompressor compressor = new IntGZipCompressor();
+        int[] small = new int[10];
+        int[] large = new int[20000];
+        for (int index = 0; index < large.length; index++) {
+            large[index] = index;
+            if (index < small.length) {
+                small[index] = -index;
+            }
+        }
+        ByteBuffer compressedSmall = ByteBuffer.allocate(1000);
+        compressor.compress(IntBuffer.wrap(small), compressedSmall);
+        compressedSmall.rewind();
+        int[] decompressedSmall = new int[small.length];
+        compressor.decompress(compressedSmall, IntBuffer.wrap(decompressedSmall));
+        Assert.assertArrayEquals(small, decompressedSmall);
+
+        // the same instance must also handle a bigger tile after a smaller one
+        ByteBuffer compressedLarge = ByteBuffer.allocate(large.length * 4 + 1000);
+        compressor.compress(IntBuffer.wrap(large), compressedLarge);
+        compressedLarge.rewind();
+        int[] decompressedLarge = new int[large.length];
+        compressor.decompress(compressedLarge, IntBuffer.wrap(decompressedLarge));
+        Assert.assertArrayEquals(large, decompressedLarge);
+    }
+
     @Test(expected = BufferOverflowException.class)
     public void testByteGzipCompressFailures1() throws Exception {
         byte[] byteArray = new byte[100];
@@ -225,6 +225,100 @@ public class BinaryTableTest {
         assertEquals("dims2", types.length, btab.getNCols());
     }
 
+    @Test
+    public void readSelectedColumns() throws Exception {
+        Object[] data = new Object[]{
+            this.floats,
+            this.shorts,
+            this.strings,
+            this.bools,
+            this.complex,
+            this.vf,
+            this.doubles
+        };
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(data));
+        BufferedDataOutputStream bdos = new BufferedDataOutputStream(new FileOutputStream("target/btSelectedColumns.fits"));
+        f.write(bdos);
+        bdos.close();
+
+        f = new Fits("target/btSelectedColumns.fits");
+        BinaryTableHDU bhdu = (BinaryTableHDU) f.getHDU(1);
+        Object[] columns = bhdu.readColumns(6, 2, 3, 5, 0);
+        assertEquals(5, columns.length);
+        assertArrayEquals(this.doubles, (double[]) columns[0], 0d);
+        assertEquals(true, TestArrayFuncs.arrayEquals(this.strings, columns[1]));
+        assertEquals(true, TestArrayFuncs.arrayEquals(this.bools, columns[2]));
+        assertEquals(true, TestArrayFuncs.arrayEquals(this.vf, columns[3]));
+        assertEquals(true, TestArrayFuncs.arrayEquals(this.floats, columns[4]));
+        // the same after the whole table was read.
+        assertEquals(true, TestArrayFuncs.arrayEquals(this.complex, bhdu.getColumn(4)));
+        columns = bhdu.readColumns(1);
+        assertEquals(true, TestArrayFuncs.arrayEquals(this.shorts, columns[0]));
+        try {
+            bhdu.readColumns(7);
+            Assert.fail("no such column");
+        } catch (FitsException e) {
+            assertEquals("Invalid column 7", e.getMessage());
+        }
+        f.close();
+    }
+
+    @Test
+    public void readWithPrimitiveAccessors() throws Exception {
+        BinaryTable btab = new BinaryTable();
+        btab.addColumn(this.floats);
+        btab.addColumn(this.shorts);
+        btab.addColumn(this.longs);
+        btab.addColumn(this.doubles);
+        btab.addColumn(this.complex);
+        btab.addColumn(this.strings);
+        btab.addColumn(this.vf);
+
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(btab));
+        BufferedDataOutputStream bdos = new BufferedDataOutputStream(new FileOutputStream("target/btPrimitiveAccessors.fits"));
+        f.write(bdos);
+        bdos.close();
+
+        f = new Fits("target/btPrimitiveAccessors.fits");
+        btab = ((BinaryTableHDU) f.getHDU(1)).getData();
+        float[] floatRow = new float[16];
+        double[] doubleRow = new double[16];
+        for (int row = 0; row < NROWS; row++) {
+            assertEquals(16, btab.getFloats(row, 0, floatRow));
+            assertEquals(16, btab.getDoubles(row, 0, doubleRow));
+            for (int idx = 0; idx < 16; idx++) {
+                assertEquals(this.floats[row][idx / 4][idx % 4], floatRow[idx], 0f);
+                assertEquals(this.floats[row][idx / 4][idx % 4], doubleRow[idx], 0d);
+            }
+            assertEquals(3, btab.getFloats(row, 1, floatRow));
+            assertEquals(this.shorts[row][2], floatRow[2], 0f);
+            assertEquals(this.shorts[row][1], btab.getLong(row, 1, 1));
+            assertEquals(this.longs[row], btab.getLong(row, 2, 0));
+            assertEquals(this.doubles[row], btab.getDouble(row, 3, 0), 0d);
+            assertEquals(this.complex[row][1], btab.getDouble(row, 4, 1), 0d);
+        }
+        f.close();
+        try {
+            btab.getDouble(0, 0, 16);
+            Assert.fail("index outside of the element");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+        for (int col : new int[]{
+            5,
+            6
+        }) {
+            try {
+                btab.getDouble(0, col, 0);
+                Assert.fail("not a numeric column");
+            } catch (FitsException e) {
+                // expected
+            }
+        }
+    }
+
     @Test
     public void buildFromEmptyBinaryTable() throws Exception {
         BinaryTable tab = new BinaryTable();
@@ -1273,6 +1367,77 @@ public class BinaryTableTest {
         }
     }
 
+    @Test
+    public void testVarDeferredHeap() throws Exception {
+        Object[] data = new Object[]{
+            this.vf,
+            this.vd,
+            this.vbool,
+            this.vc
+        };
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(data));
+        BufferedDataOutputStream bdos = new BufferedDataOutputStream(new FileOutputStream("target/btDeferredHeap.fits"));
+        f.write(bdos);
+        bdos.close();
+
+        FitsFactory.setDeferredHeapReads(true);
+        try {
+            f = new Fits("target/btDeferredHeap.fits");
+            BinaryTableHDU bhdu = (BinaryTableHDU) f.getHDU(1);
+            for (int i = 0; i < data.length; i += 1) {
+                assertEquals("vardata" + i, true, TestArrayFuncs.arrayEquals(data[i], bhdu.getColumn(i)));
+            }
+            // changing a variable length element loads the heap.
+            float[] replaced = new float[]{
+                1f,
+                2f,
+                3f
+            };
+            bhdu.getData().setElement(2, 0, replaced);
+            bdos = new BufferedDataOutputStream(new FileOutputStream("target/btDeferredHeap2.fits"));
+            f.write(bdos);
+            bdos.close();
+            f.close();
+
+            f = new Fits("target/btDeferredHeap2.fits");
+            bhdu = (BinaryTableHDU) f.getHDU(1);
+            assertArrayEquals(replaced, (float[]) bhdu.getElement(2, 0), 0f);
+            assertEquals("vardata", true, TestArrayFuncs.arrayEquals(data[1], bhdu.getColumn(1)));
+            assertEquals(bhdu.getData().getHeapSize(), bhdu.getHeader().getIntValue("PCOUNT"));
+            assertEquals(bhdu.getData().getHeapLSize(), bhdu.getHeader().getLongValue("PCOUNT"));
+            f.close();
+        } finally {
+            FitsFactory.setDeferredHeapReads(false);
+        }
+    }
+
+    @Test
+    public void testCopyDeferredHeapFailure() throws Exception {
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(new Object[]{
+            this.vf
+        }));
+        BufferedDataOutputStream bdos = new BufferedDataOutputStream(new FileOutputStream("target/btDeferredHeapCopy.fits"));
+        f.write(bdos);
+        bdos.close();
+
+        FitsFactory.setDeferredHeapReads(true);
+        try {
+            f = new Fits("target/btDeferredHeapCopy.fits");
+            ColumnTable<?> table = ((BinaryTableHDU) f.getHDU(1)).getData().getData();
+            f.close();
+            try {
+                new BinaryTable(table);
+                Assert.fail("the heap can not be read from the closed file");
+            } catch (IllegalStateException e) {
+                assertNotNull(e.getCause());
+            }
+        } finally {
+            FitsFactory.setDeferredHeapReads(false);
+        }
+    }
+
     @Test
     public void testFitsHeap() throws Exception {
         Constructor<FitsHeap> declaredConstructor = FitsHeap.class.getDeclaredConstructor(int.class);
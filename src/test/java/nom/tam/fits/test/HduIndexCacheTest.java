@@ -0,0 +1,195 @@
+package nom.tam.fits.test;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.HduIndexCache;
+import nom.tam.fits.Header;
+import nom.tam.fits.HeaderCard;
+import nom.tam.fits.header.Standard;
+import nom.tam.util.BufferedFile;
+import nom.tam.util.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HduIndexCacheTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        this.file = new File("target/hduIndexCache.fits");
+        new File(this.file.getPath() + HduIndexCache.SUFFIX).delete();
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(new int[10][10]));
+        for (int i = 0; i < 20; i++) {
+            float[][] image = new float[3][4];
+            image[1][2] = i;
+            BasicHDU<?> hdu = Fits.makeHDU(image);
+            hdu.addValue(Standard.EXTNAME, "EXT" + i);
+            hdu.addValue("VALUE", i * 0.5, "a value");
+            hdu.addValue("FLAG", i % 2 == 0, "a flag");
+            hdu.getHeader().insertComment("comment " + i);
+            f.addHDU(hdu);
+        }
+        BufferedFile bf = new BufferedFile(this.file, "rw");
+        f.write(bf);
+        bf.close();
+        f.close();
+    }
+
+    @After
+    public void resetSettings() {
+        FitsFactory.setUseIndexCache(false);
+        FitsFactory.setIndexCacheDirectory(null);
+    }
+
+    @Test
+    public void testCacheCreatedAndUsed() throws Exception {
+        Fits plain = new Fits(this.file);
+        BasicHDU<?>[] expected = plain.read();
+        plain.close();
+
+        FitsFactory.setUseIndexCache(true);
+        File cacheFile = HduIndexCache.getCacheFile(this.file);
+        assertFalse(cacheFile.exists());
+        Fits f = new Fits(this.file);
+        assertTrue(cacheFile.exists());
+        assertEquals(21, f.getHduIndex().size());
+        assertHDUsEqual(expected, f.read());
+        f.close();
+
+        f = new Fits(this.file);
+        BasicHDU<?>[] restored = f.read();
+        assertHDUsEqual(expected, restored);
+        assertTrue(restored[7].getHeader().rewriteable());
+        assertEquals(7.f, ((float[][]) f.getHDU("EXT7", 1).getKernel())[1][2], 0f);
+        f.close();
+    }
+
+    @Test
+    public void testHeadersComeFromCache() throws Exception {
+        FitsFactory.setUseIndexCache(true);
+        new Fits(this.file).close();
+
+        // change a header in place, keeping length and modification time.
+        long lastModified = this.file.lastModified();
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        byte[] content = new byte[(int) raf.length()];
+        raf.readFully(content);
+        String text = new String(content, "US-ASCII");
+        int offset = text.indexOf("'EXT7 ");
+        raf.seek(offset + 1);
+        raf.write("ZZZ7".getBytes("US-ASCII"));
+        raf.close();
+        assertTrue(this.file.setLastModified(lastModified));
+
+        Fits f = new Fits(this.file);
+        assertEquals("EXT7", f.getHDU(8).getHeader().getStringValue(Standard.EXTNAME));
+        f.close();
+
+        FitsFactory.setUseIndexCache(false);
+        f = new Fits(this.file);
+        assertEquals("ZZZ7", f.getHDU(8).getHeader().getStringValue(Standard.EXTNAME));
+        f.close();
+    }
+
+    @Test
+    public void testStaleCacheIgnored() throws Exception {
+        FitsFactory.setUseIndexCache(true);
+        new Fits(this.file).close();
+        File cacheFile = HduIndexCache.getCacheFile(this.file);
+        long cacheModified = cacheFile.lastModified();
+
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(new int[5][5]));
+        BasicHDU<?> hdu = Fits.makeHDU(new int[2][2]);
+        hdu.addValue(Standard.EXTNAME, "OTHER");
+        f.addHDU(hdu);
+        this.file.delete();
+        BufferedFile bf = new BufferedFile(this.file, "rw");
+        f.write(bf);
+        bf.close();
+        assertTrue(this.file.setLastModified(cacheModified + 2000));
+
+        f = new Fits(this.file);
+        assertEquals(2, f.read().length);
+        assertEquals("OTHER", f.getHDU(1).getHeader().getStringValue(Standard.EXTNAME));
+        f.close();
+    }
+
+    @Test
+    public void testCacheDirectory() throws Exception {
+        File directory = new File("target/hduIndexCacheDir");
+        directory.mkdirs();
+        FitsFactory.setUseIndexCache(true);
+        FitsFactory.setIndexCacheDirectory(directory);
+        File cacheFile = HduIndexCache.getCacheFile(this.file);
+        cacheFile.delete();
+        assertEquals(directory, cacheFile.getParentFile());
+        Fits f = new Fits(this.file);
+        assertTrue(cacheFile.exists());
+        assertEquals(21, f.read().length);
+        f.close();
+        assertFalse(new File(this.file.getPath() + HduIndexCache.SUFFIX).exists());
+    }
+
+    private static void assertHDUsEqual(BasicHDU<?>[] expected, BasicHDU<?>[] actual) throws Exception {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(cards(expected[i].getHeader()), cards(actual[i].getHeader()));
+            assertEquals(expected[i].getHeader().getOriginalSize(), actual[i].getHeader().getOriginalSize());
+            assertEquals(expected[i].getHeader().getFileOffset(), actual[i].getHeader().getFileOffset());
+        }
+    }
+
+    private static String[] cards(Header header) {
+        String[] cards = new String[header.getNumberOfCards()];
+        Cursor<String, HeaderCard> iterator = header.iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            cards[i] = iterator.next().toString();
+        }
+        return cards;
+    }
+}
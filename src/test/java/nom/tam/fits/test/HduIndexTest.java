@@ -0,0 +1,298 @@
+package nom.tam.fits.test;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.BinaryTable;
+import nom.tam.fits.BinaryTableHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.HduIndex;
+import nom.tam.fits.ImageHDU;
+import nom.tam.fits.header.Standard;
+import nom.tam.util.AsciiFuncs;
+import nom.tam.util.BufferedFile;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class HduIndexTest {
+
+    private static final String FILE = "target/hduIndex.fits";
+
+    @BeforeClass
+    public static void createFile() throws Exception {
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(new int[10][10]));
+        for (int i = 0; i < 6; i++) {
+            int[][] image = new int[5 + i][7];
+            image[0][0] = i;
+            BasicHDU<?> hdu = Fits.makeHDU(image);
+            hdu.addValue(Standard.EXTNAME, i % 2 == 0 ? "EVEN" : "ODD");
+            hdu.addValue(Standard.EXTVER, i / 2 + 1);
+            f.addHDU(hdu);
+        }
+        BinaryTable table = BinaryTableHDU.encapsulate(new Object[]{
+            new double[]{
+                1,
+                2
+            },
+            new int[]{
+                3,
+                4
+            }
+        });
+        f.addHDU(new BinaryTableHDU(BinaryTableHDU.manufactureHeader(table), table));
+        BufferedFile bf = new BufferedFile(FILE, "rw");
+        f.write(bf);
+        bf.close();
+        f.close();
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        BufferedFile bf = new BufferedFile(FILE, "r");
+        HduIndex index = HduIndex.scan(bf, 0);
+        assertEquals(0, bf.getFilePointer());
+        assertEquals(8, index.size());
+        assertEquals(0, index.getHeaderOffset(0));
+        assertEquals(2880, index.getDataOffset(0));
+        assertEquals(400, index.getDataSize(0));
+        assertEquals(5760, index.getHeaderOffset(1));
+        assertEquals("IMAGE", index.getXtension(1));
+        assertEquals("BINTABLE", index.getXtension(7));
+        assertEquals("ODD", index.getExtname(4));
+        assertEquals(2, index.getExtver(4));
+        assertEquals(4, index.find("ODD", 2, 0));
+        assertEquals(-1, index.find("ODD", 2, 5));
+        assertEquals(bf.length(), index.getNextOffset(7));
+        bf.close();
+    }
+
+    @Test
+    public void testRandomAccess() throws Exception {
+        Fits f = new Fits(FILE);
+        BasicHDU<?> hdu = f.getHDU(5);
+        assertEquals(4, ((int[][]) hdu.getKernel())[0][0]);
+        assertEquals(6, f.getNumberOfHDUs());
+        BasicHDU<?> byName = f.getHDU("ODD", 2);
+        assertEquals(3, ((int[][]) byName.getKernel())[0][0]);
+        assertSame(hdu, f.getHDU("EVEN", 3));
+        assertNull(f.getHDU("ODD", 4));
+        assertNull(f.getHDU(8));
+
+        BasicHDU<?>[] all = f.read();
+        assertEquals(8, all.length);
+        assertSame(byName, all[4]);
+        assertSame(hdu, all[5]);
+        for (int i = 1; i < 7; i++) {
+            assertEquals(i - 1, ((int[][]) ((ImageHDU) all[i]).getKernel())[0][0]);
+        }
+        f.close();
+    }
+
+    @Test
+    public void testSkipAfterIndexedRead() throws Exception {
+        Fits f = new Fits(FILE);
+        BasicHDU<?> indexed = f.getHDU(1);
+        f.readHDU();
+        assertSame(indexed, f.readHDU());
+        f.skipHDU();
+        assertEquals(2, ((int[][]) f.readHDU().getKernel())[0][0]);
+        f.close();
+
+        f = new Fits(FILE);
+        f.getHDU(6);
+        f.readHDU();
+        // skip HDUs that are known by the index.
+        f.skipHDU(2);
+        assertEquals(2, ((int[][]) f.readHDU().getKernel())[0][0]);
+        f.close();
+    }
+
+    @Test
+    public void testAfterSequentialRead() throws Exception {
+        Fits f = new Fits(FILE);
+        f.readHDU();
+        f.skipHDU();
+        BasicHDU<?> hdu = f.getHDU("EVEN", 2);
+        assertNotNull(hdu);
+        assertEquals(3, f.getNumberOfHDUs());
+        assertEquals(2, ((int[][]) hdu.getKernel())[0][0]);
+        assertSame(hdu, f.getHDU(2));
+        assertEquals(1, ((int[][]) f.readHDU().getKernel())[0][0]);
+        assertSame(hdu, f.readHDU());
+        assertEquals(3, f.getNumberOfHDUs());
+        assertEquals(3, ((int[][]) f.readHDU().getKernel())[0][0]);
+        f.close();
+    }
+
+    @Test
+    public void testScanInvalidNaxis() throws Exception {
+        BufferedFile bf = new BufferedFile("target/hduIndexNaxis.fits", "rw");
+        bf.setLength(0);
+        writeHeader(bf, "SIMPLE  =                    T", "BITPIX  =                    8", "NAXIS   =                    0");
+        writeHeader(bf, "XTENSION= 'IMAGE   '", "BITPIX  =                    8", "NAXIS   =          99999999999");
+        try {
+            HduIndex.scan(bf, 0);
+            Assert.fail("NAXIS too large");
+        } catch (FitsException e) {
+            assertEquals("Invalid NAXIS value 99999999999", e.getMessage());
+        } finally {
+            bf.close();
+        }
+    }
+
+    private static void writeHeader(BufferedFile bf, String... cards) throws Exception {
+        byte[] block = new byte[2880];
+        Arrays.fill(block, (byte) ' ');
+        for (int card = 0; card < cards.length; card++) {
+            byte[] bytes = AsciiFuncs.getBytes(cards[card]);
+            System.arraycopy(bytes, 0, block, card * 80, bytes.length);
+        }
+        System.arraycopy(AsciiFuncs.getBytes("END"), 0, block, cards.length * 80, 3);
+        bf.write(block);
+    }
+
+    @Test
+    public void testAfterAddAndDelete() throws Exception {
+        Fits[] fits = {
+            new Fits(FILE),
+            new Fits(new FileInputStream(FILE))
+        };
+        // the random access file must number the HDUs like the stream.
+        for (Fits f : fits) {
+            f.getHDU(1);
+            f.deleteHDU(1);
+            BasicHDU<?> added = Fits.makeHDU(new int[][]{
+                {
+                    42
+                }
+            });
+            f.addHDU(added);
+            assertSame(added, f.getHDU(1));
+            assertEquals(1, ((int[][]) f.getHDU(2).getKernel())[0][0]);
+            BasicHDU<?> hdu = f.getHDU("EVEN", 2);
+            assertEquals(2, ((int[][]) hdu.getKernel())[0][0]);
+            assertSame(hdu, f.getHDU(3));
+            assertEquals(3, ((int[][]) f.getHDU(4).getKernel())[0][0]);
+            f.close();
+        }
+    }
+
+    @Test
+    public void testWriteAfterRandomAccess() throws Exception {
+        Fits f = new Fits(FILE);
+        assertEquals(3, ((int[][]) f.getHDU(4).getKernel())[0][0]);
+        BufferedFile bf = new BufferedFile("target/hduIndexCopy.fits", "rw");
+        f.write(bf);
+        bf.close();
+        f.close();
+        f = new Fits("target/hduIndexCopy.fits");
+        assertEquals(5, f.read().length);
+        assertEquals(3, ((int[][]) f.getHDU(4).getKernel())[0][0]);
+        f.close();
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        Fits f = new Fits(new FileInputStream(FILE));
+        assertNull(f.getHduIndex());
+        BasicHDU<?> hdu = f.getHDU("ODD", 3);
+        assertEquals(5, ((int[][]) hdu.getKernel())[0][0]);
+        assertEquals(7, f.getNumberOfHDUs());
+        f.close();
+    }
+
+    @Test
+    public void testParallelRead() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Fits f = new Fits(FILE);
+            f.readHDU();
+            BasicHDU<?> hdu = f.getHDU(4);
+            BasicHDU<?>[] all = f.readAll(executor);
+            assertEquals(8, all.length);
+            assertSame(hdu, all[4]);
+            for (int i = 1; i < 7; i++) {
+                assertEquals(i - 1, ((int[][]) ((ImageHDU) all[i]).getKernel())[0][0]);
+            }
+            assertEquals(2., ((double[]) ((BinaryTableHDU) all[7]).getColumn(0))[1], 0);
+            assertNull(f.readHDU());
+            assertEquals(8, f.read().length);
+            f.close();
+
+            f = new Fits(new FileInputStream(FILE));
+            assertEquals(8, f.readAll(executor).length);
+            f.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelReadWithCallerSettings() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        FitsFactory.useThreadLocalSettings(true);
+        try {
+            FitsFactory.setUseHierarch(true);
+            Fits f = new Fits();
+            f.addHDU(Fits.makeHDU(new int[2][2]));
+            BasicHDU<?> hdu = Fits.makeHDU(new int[3][3]);
+            hdu.addValue("HIERARCH.TEST.KEY", 42, "only readable with hierarch keys");
+            f.addHDU(hdu);
+            BufferedFile bf = new BufferedFile("target/hduIndexHierarch.fits", "rw");
+            f.write(bf);
+            bf.close();
+
+            f = new Fits("target/hduIndexHierarch.fits");
+            BasicHDU<?>[] all = f.readAll(executor);
+            assertEquals(42, all[1].getHeader().getIntValue("HIERARCH.TEST.KEY"));
+            f.close();
+        } finally {
+            FitsFactory.useThreadLocalSettings(false);
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package nom.tam.fits.test;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.util.Iterator;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.HduStream;
+import nom.tam.fits.header.Standard;
+import nom.tam.util.BufferedFile;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class HduStreamTest {
+
+    private static final String FILE = "target/hduStream.fits";
+
+    @BeforeClass
+    public static void createFile() throws Exception {
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(new int[10][10]));
+        for (int i = 0; i < 5; i++) {
+            int[][] image = new int[5 + i][7];
+            image[0][0] = i + 1;
+            f.addHDU(Fits.makeHDU(image));
+        }
+        BufferedFile bf = new BufferedFile(FILE, "rw");
+        f.write(bf);
+        bf.close();
+        f.close();
+    }
+
+    @Test
+    public void testStreamFromInputStream() throws Exception {
+        Fits f = new Fits(new FileInputStream(FILE));
+        int count = 0;
+        for (HduStream.Entry entry : f.stream()) {
+            assertEquals(count, entry.getNumber());
+            assertEquals(count == 0 ? 10 : 4 + count, entry.getHeader().getIntValue(Standard.NAXIS2));
+            if (count % 2 == 1) {
+                BasicHDU<?> hdu = entry.readHDU();
+                assertEquals(count, ((int[][]) hdu.getKernel())[0][0]);
+                assertFalse(entry.isDataAvailable());
+            }
+            count++;
+        }
+        assertEquals(6, count);
+        assertEquals(0, f.getNumberOfHDUs());
+        assertNull(f.readHDU());
+        f.close();
+    }
+
+    @Test
+    public void testStreamAfterRead() throws Exception {
+        Fits f = new Fits(FILE);
+        f.readHDU();
+        f.readHDU();
+        HduStream stream = f.stream();
+        HduStream.Entry entry = stream.next();
+        assertEquals(2, entry.getNumber());
+        HduStream.Entry next = stream.next();
+        assertFalse(entry.isDataAvailable());
+        assertEquals(3, ((int[][]) next.readHDU().getKernel())[0][0]);
+        assertEquals(4, ((int[][]) stream.next().readHDU().getKernel())[0][0]);
+        assertEquals(2, f.getNumberOfHDUs());
+        // the regular reading continues after the streamed HDUs.
+        assertEquals(5, ((int[][]) f.readHDU().getKernel())[0][0]);
+        assertNull(stream.next());
+        assertEquals(3, f.getNumberOfHDUs());
+        f.close();
+    }
+
+    @Test(expected = FitsException.class)
+    public void testDataReadOnce() throws Exception {
+        Fits f = new Fits(FILE);
+        HduStream.Entry entry = f.stream().next();
+        entry.readData();
+        entry.readData();
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        Fits f = new Fits(FILE);
+        HduStream stream = f.stream();
+        Iterator<HduStream.Entry> iterator = stream.iterator();
+        HduStream.Entry entry = iterator.next();
+        assertTrue(iterator.hasNext());
+        assertFalse(entry.isDataAvailable());
+        assertEquals(1, iterator.next().getNumber());
+        try {
+            stream.iterator();
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("once"));
+        }
+        f.close();
+    }
+}
@@ -52,6 +52,7 @@ import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.HeaderCardException;
 import nom.tam.fits.TruncatedFileException;
+import nom.tam.fits.utilities.FitsHeaderCardParser;
 import nom.tam.fits.header.hierarch.BlanksDotHierarchKeyFormatter;
 import nom.tam.fits.header.hierarch.StandardIHierarchKeyFormatter;
 import nom.tam.util.AsciiFuncs;
@@ -776,4 +777,26 @@ public class HeaderCardTest {
         assertEquals("HIERARCH.TIMESYS.BBBB.CCCC", card.getKey());
         assertEquals("HIERARCH TIMESYS BBBB CCCC='UTC' / All dates are in UTC time                    ", card.toString());
     }
+
+    @Test
+    public void testHandWrittenValueParsing() throws Exception {
+        HeaderCard hc = HeaderCard.create("TEST    =             1.50D-03 / d exponent");
+        assertEquals(Double.class, hc.valueType());
+        assertEquals(1.5e-3, hc.getValue(Double.class, null), 0);
+        assertEquals("1.50D-03", hc.getValue());
+        hc = HeaderCard.create("TEST    =           (1.0, 2.0) / complex");
+        assertNull(hc.valueType());
+        assertEquals(Double.valueOf(5.), hc.getValue(Double.class, 5.));
+        hc = HeaderCard.create("TEST    =                 1E+30");
+        assertEquals(BigInteger.class, hc.valueType());
+        hc = HeaderCard.create("TEST    =                   1.5abc");
+        assertNull(hc.valueType());
+        hc = HeaderCard.create("TEST    = 'it''s  ' / quoted 'comment'");
+        assertEquals("it's", hc.getValue());
+        assertEquals("quoted 'comment'", hc.getComment());
+        hc = HeaderCard.create("TEST    = ''");
+        assertEquals("", hc.getValue());
+        assertEquals(String.class, hc.valueType());
+        assertEquals("HIERARCH.ESO.INS.FILT1.NAME", FitsHeaderCardParser.parseCardKey("HIERARCH ESO INS.FILT1 name = 'x'"));
+    }
 }
@@ -119,6 +119,7 @@ public class HeaderTest {
     public void after() {
         FitsFactory.setLongStringsEnabled(longStringsEnabled);
         FitsFactory.setUseHierarch(useHierarch);
+        FitsFactory.setLazyHeaderParsing(false);
     }
 
     @Test
@@ -1249,4 +1250,90 @@ public class HeaderTest {
         assertEquals(new BigDecimal("0.0071"), hdr.getBigDecimalValue("BIGDEC"));
     }
 
+    @Test
+    public void testLazyHeaderParsing() throws Exception {
+        FitsFactory.setLongStringsEnabled(true);
+        Header hdr = new Fits("target/ht1.fits").getHDU(0).getHeader();
+        hdr.addValue("LONGSTRN", "OGIP 1.0", "Uses long strings");
+        hdr.addValue("LONG1", "0123456789012345678901234567890123456789012345678901234567890123456789&", "long");
+        hdr.addValue("QUOTE", "it's", "quoted");
+        hdr.addValue("DBL", 1.5e-20, "double");
+        hdr.insertComment("a comment");
+        BufferedFile bf = new BufferedFile("target/htLazy.hdr", "rw");
+        hdr.write(bf);
+        bf.close();
+
+        Header eager = readHeader("target/htLazy.hdr");
+        FitsFactory.setLazyHeaderParsing(true);
+        Header lazy = readHeader("target/htLazy.hdr");
+        assertEquals(eager.getNumberOfCards(), lazy.getNumberOfCards());
+        assertEquals(eager.getOriginalSize(), lazy.getOriginalSize());
+        assertEquals(300, lazy.getIntValue(NAXISn.n(1)));
+        assertEquals("it's", lazy.getStringValue("QUOTE"));
+        assertEquals("quoted", lazy.findCard("QUOTE").getComment());
+        assertEquals(1.5e-20, lazy.getDoubleValue("DBL"), 0);
+        Cursor<String, HeaderCard> eagerCards = eager.iterator();
+        Cursor<String, HeaderCard> lazyCards = lazy.iterator();
+        while (eagerCards.hasNext()) {
+            HeaderCard card = lazyCards.next();
+            assertEquals(eagerCards.next().toString(), card.toString());
+        }
+
+        Header dups = new Fits("src/test/resources/nom/tam/fits/test/test_dup.fits").readHDU().getHeader();
+        assertTrue(dups.hadDuplicates());
+        assertEquals(8640, dups.getOriginalSize());
+    }
+
+    @Test
+    public void testLazyHeaderParsingPaddedLongString() throws Exception {
+        FitsFactory.setLongStringsEnabled(true);
+        FitsFactory.setLazyHeaderParsing(true);
+        String card1 = "LONG    = 'abc&  '           / continued after padding";
+        String card2 = "CONTINUE  'def'";
+        String card3 = "NUM     = 1 / not a string&'";
+        BufferedDataInputStream input = new BufferedDataInputStream(new ByteArrayInputStream(AsciiFuncs.getBytes(//
+                card1 + blanks(80 - card1.length()) + card2 + blanks(80 - card2.length()) + card3 + blanks(80 - card3.length()))));
+        assertEquals("abcdef", new HeaderCard(input).getValue());
+        HeaderCard num = new HeaderCard(input);
+        assertEquals("NUM", num.getKey());
+        assertEquals(1, num.getValue(Integer.class, 0).intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLazyHeaderParsingInvalidValue() throws Exception {
+        String card = "BAD     = ab'c";
+        FitsFactory.setLazyHeaderParsing(true);
+        // the card fails where it is read, not when its value is used.
+        new HeaderCard(new BufferedDataInputStream(new ByteArrayInputStream(AsciiFuncs.getBytes(card + blanks(80 - card.length())))));
+    }
+
+    @Test
+    public void testLazyHeaderParsingRepairWhenRead() throws Exception {
+        String card = "BAD     = 'abc";
+        FitsFactory.setLazyHeaderParsing(true);
+        FitsFactory.setAllowHeaderRepairs(true);
+        HeaderCard headerCard;
+        try {
+            headerCard = new HeaderCard(new BufferedDataInputStream(new ByteArrayInputStream(AsciiFuncs.getBytes(card + blanks(80 - card.length())))));
+        } finally {
+            FitsFactory.setAllowHeaderRepairs(false);
+        }
+        assertEquals("abc", headerCard.getValue());
+        assertTrue(headerCard.isStringValue());
+    }
+
+    private static String blanks(int count) {
+        char[] blanks = new char[count];
+        Arrays.fill(blanks, ' ');
+        return new String(blanks);
+    }
+
+    private static Header readHeader(String file) throws Exception {
+        BufferedFile bf = new BufferedFile(file, "r");
+        try {
+            return new Header(bf);
+        } finally {
+            bf.close();
+        }
+    }
 }
@@ -298,6 +298,61 @@ public class ImageTest {
 
     }
 
+    @Test
+    public void testFlatImageData() throws Exception {
+        int[][][] expected = new int[3][4][5];
+        int[] flat = new int[3 * 4 * 5];
+        for (int index = 0; index < flat.length; index++) {
+            flat[index] = index;
+            expected[index / 20][index / 5 % 4][index % 5] = index;
+        }
+        ImageData imageData = new ImageData(flat, new int[]{
+            3,
+            4,
+            5
+        });
+        ImageHDU image = new ImageHDU(ImageHDU.manufactureHeader(imageData), imageData);
+        Assert.assertEquals(5, image.getHeader().getIntValue(Standard.NAXISn.n(1)));
+        Assert.assertEquals(3, image.getHeader().getIntValue(Standard.NAXISn.n(3)));
+        Assert.assertSame(flat, imageData.getBuffer().array());
+        Assert.assertArrayEquals(new int[]{
+            27,
+            28,
+            32,
+            33
+        }, (int[]) image.getTiler().getTile(new int[]{
+            1,
+            1,
+            2
+        }, new int[]{
+            1,
+            2,
+            2
+        }));
+
+        Fits f = new Fits();
+        f.addHDU(image);
+        BufferedFile bf = new BufferedFile("target/flatImage.fits", "rw");
+        f.write(bf);
+        bf.close();
+        Assert.assertSame(flat, imageData.getBuffer().array());
+
+        f = new Fits("target/flatImage.fits");
+        Assert.assertArrayEquals(expected, (int[][][]) f.getHDU(0).getKernel());
+        f.close();
+
+        Assert.assertArrayEquals(expected, (int[][][]) imageData.getData());
+        Assert.assertNull(imageData.getBuffer());
+    }
+
+    @Test(expected = FitsException.class)
+    public void testFlatImageDataWrongDimensions() throws Exception {
+        new ImageData(new int[10], new int[]{
+            3,
+            4
+        });
+    }
+
     @Test
     public void testSetFailedPrimaryHdu() throws FitsException {
         Fits f = new Fits();
@@ -40,12 +40,17 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 
+import nom.tam.fits.BasicHDU;
 import nom.tam.fits.Fits;
 import nom.tam.fits.FitsFactory;
 import nom.tam.fits.FitsException;
+import nom.tam.fits.ImageHDU;
+import nom.tam.fits.header.Compression;
+import nom.tam.fits.header.Standard;
 import nom.tam.fits.utilities.FitsCopy;
 import nom.tam.fits.utilities.FitsReader;
 import nom.tam.fits.utilities.Main;
+import nom.tam.image.compression.hdu.CompressedImageHDU;
 import nom.tam.util.BufferedFile;
 
 import org.junit.Assert;
@@ -171,11 +176,65 @@ public class TestMain {
                     "         short[5, 5]" + LS, new String(sysout.toByteArray()));
             Assert.assertEquals(new File("target/testMainRead.fits").length(),//
                     new File("target/test-copy.fits").length());
+            Fits copy = new Fits("target/test-copy.fits");
+            Assert.assertEquals(2, copy.read().length);
+            copy.close();
         } finally {
             System.setOut(out);
         }
     }
 
+    @Test
+    public void testCopyCompressAndDecompress() throws Exception {
+        int[][] image = new int[20][30];
+        for (int y = 0; y < image.length; y++) {
+            for (int x = 0; x < image[y].length; x++) {
+                image[y][x] = x * y - 100;
+            }
+        }
+        Fits f = new Fits();
+        f.addHDU(Fits.makeHDU(new short[5][5]));
+        f.addHDU(Fits.makeHDU(image));
+        BufferedFile file = new BufferedFile("target/testMainCopy.fits", "rw");
+        f.write(file);
+        file.close();
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            // only the second image, so a primary HDU has to be added.
+            Main.main(new String[]{
+                "copy",
+                "-hdu",
+                "1",
+                "-compress",
+                Compression.ZCMPTYPE_RICE_1,
+                "target/testMainCopy.fits",
+                "target/testMainCopy-compressed.fits"
+            });
+            Main.main(new String[]{
+                "copy",
+                "-decompress",
+                "target/testMainCopy-compressed.fits",
+                "target/testMainCopy-decompressed.fits"
+            });
+        } finally {
+            System.setOut(out);
+        }
+        Fits compressed = new Fits("target/testMainCopy-compressed.fits");
+        BasicHDU<?>[] hdus = compressed.read();
+        Assert.assertEquals(2, hdus.length);
+        Assert.assertEquals(0, hdus[0].getHeader().getIntValue(Standard.NAXIS));
+        Assert.assertArrayEquals(image, (int[][]) ((CompressedImageHDU) hdus[1]).asImageHDU().getKernel());
+        compressed.close();
+
+        Fits decompressed = new Fits("target/testMainCopy-decompressed.fits");
+        hdus = decompressed.read();
+        Assert.assertEquals(2, hdus.length);
+        Assert.assertTrue(hdus[1] instanceof ImageHDU);
+        Assert.assertArrayEquals(image, (int[][]) hdus[1].getKernel());
+        decompressed.close();
+    }
+
     @Test
     public void testFitsReader() throws Exception {
         Constructor<?>[] constrs = FitsReader.class.getDeclaredConstructors();
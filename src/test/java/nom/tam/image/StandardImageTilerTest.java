@@ -221,4 +221,162 @@ public class StandardImageTilerTest {
         Assert.assertArrayEquals(new int[25], tile);
     }
 
+    @Test
+    public void testPositionalReads() throws Exception {
+        final short[][] image = new short[40][30];
+        for (int y = 0; y < image.length; y++) {
+            for (int x = 0; x < image[y].length; x++) {
+                image[y][x] = (short) (y * 100 + x);
+            }
+        }
+        BufferedFile out = new BufferedFile("target/StandardImageTilerPositional", "rw");
+        out.writeInt(42);
+        out.writeArray(image);
+        out.close();
+        final BufferedFile in = new BufferedFile("target/StandardImageTilerPositional", "r");
+        try {
+            final StandardImageTiler positional = new StandardImageTiler(in, 4, new int[]{
+                40,
+                30
+            }, short.class) {
+
+                @Override
+                protected Object getMemoryImage() {
+                    return null;
+                }
+            };
+            Assert.assertFalse(positional.isPositionalReads());
+            positional.setPositionalReads(true);
+            Assert.assertTrue(positional.isPositionalReads());
+            in.seek(17);
+            Assert.assertArrayEquals(image, (short[][]) positional.getCompleteImage());
+
+            Thread[] threads = new Thread[4];
+            final Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t;
+                threads[t] = new Thread() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 200; i++) {
+                                int y = (i + offset) % 35;
+                                int x = (i * 3 + offset) % 25;
+                                short[] tile = (short[]) positional.getTile(new int[]{
+                                    y,
+                                    x
+                                }, new int[]{
+                                    5,
+                                    5
+                                });
+                                for (int j = 0; j < tile.length; j++) {
+                                    if (tile[j] != image[y + j / 5][x + j % 5]) {
+                                        throw new AssertionError("wrong tile value at " + y + "," + x);
+                                    }
+                                }
+                            }
+                        } catch (Throwable e) {
+                            synchronized (failure) {
+                                failure[0] = e;
+                            }
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertNull(failure[0]);
+            Assert.assertEquals(17, in.getFilePointer());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testPositionalCompleteImageConcurrently() throws Exception {
+        final int[][][] image = new int[3][50][40];
+        for (int z = 0; z < image.length; z++) {
+            for (int y = 0; y < image[z].length; y++) {
+                for (int x = 0; x < image[z][y].length; x++) {
+                    image[z][y][x] = z * 10000 + y * 100 + x;
+                }
+            }
+        }
+        BufferedFile out = new BufferedFile("target/StandardImageTilerComplete", "rw");
+        out.writeLong(42L);
+        out.writeArray(image);
+        out.close();
+        final BufferedFile in = new BufferedFile("target/StandardImageTilerComplete", "r");
+        try {
+            final StandardImageTiler positional = new StandardImageTiler(in, 8, new int[]{
+                3,
+                50,
+                40
+            }, int.class) {
+
+                @Override
+                protected Object getMemoryImage() {
+                    return null;
+                }
+            };
+            positional.setPositionalReads(true);
+            in.seek(5);
+
+            Thread[] threads = new Thread[4];
+            final Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t;
+                threads[t] = new Thread() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 50; i++) {
+                                if (offset % 2 == 0) {
+                                    Assert.assertArrayEquals(image, (int[][][]) positional.getCompleteImage());
+                                } else {
+                                    int y = (i + offset) % 45;
+                                    int[] tile = (int[]) positional.getTile(new int[]{
+                                        1,
+                                        y,
+                                        3
+                                    }, new int[]{
+                                        1,
+                                        5,
+                                        5
+                                    });
+                                    for (int j = 0; j < tile.length; j++) {
+                                        if (tile[j] != image[1][y + j / 5][3 + j % 5]) {
+                                            throw new AssertionError("wrong tile value at " + y);
+                                        }
+                                    }
+                                }
+                            }
+                        } catch (Throwable e) {
+                            synchronized (failure) {
+                                failure[0] = e;
+                            }
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertNull(failure[0]);
+            Assert.assertEquals(5, in.getFilePointer());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testPositionalReadsWithoutChannel() throws Exception {
+        tiler.setFile(null);
+        tiler.setPositionalReads(true);
+    }
 }
@@ -0,0 +1,80 @@
+package nom.tam.image.compression.tile;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class DecompressedTileCacheTest {
+
+    @Test
+    public void testByteSizeEviction() {
+        DecompressedTileCache cache = new DecompressedTileCache(100);
+        DecompressedTileCache.ImageTiles image = cache.forImage("a.fits", 1);
+        DecompressedTileCache.ImageTiles other = cache.forImage("a.fits", 2);
+        short[] tile0 = new short[20];
+        int[] tile1 = new int[10];
+        image.put(0, tile0);
+        image.put(1, tile1);
+        assertEquals(80, cache.getSize());
+        assertSame(tile0, image.get(0));
+        assertNull(other.get(0));
+        assertSame(tile0, cache.forImage("a.fits", 1).get(0));
+        // tile 1 is now the least recently used one.
+        other.put(0, new byte[30]);
+        assertEquals(2, cache.getTileCount());
+        assertEquals(70, cache.getSize());
+        assertNull(image.get(1));
+        assertSame(tile0, image.get(0));
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+
+        image.put(2, new double[20]);
+        assertEquals(0, cache.getTileCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(4, cache.getEvictions());
+
+        image.put(3, new float[5]);
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertNull(image.get(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoFile() {
+        new DecompressedTileCache(100).forImage(null, 0);
+    }
+}
@@ -39,6 +39,7 @@ import static nom.tam.fits.header.Compression.ZTILEn;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -52,7 +53,10 @@ import nom.tam.fits.HeaderCardException;
 import nom.tam.fits.compression.algorithm.api.ICompressOption;
 import nom.tam.fits.compression.algorithm.api.ICompressor;
 import nom.tam.fits.compression.algorithm.api.ICompressorControl;
+import nom.tam.fits.compression.algorithm.quant.QuantizeOption;
 import nom.tam.fits.compression.algorithm.rice.RiceCompressOption;
+import nom.tam.fits.compression.algorithm.rice.RiceCompressor.FloatRiceCompressor;
+import nom.tam.fits.compression.algorithm.rice.RiceQuantizeCompressOption;
 import nom.tam.fits.compression.provider.CompressorProvider;
 import nom.tam.fits.compression.provider.TileCompressorAlternativProvider;
 import nom.tam.fits.compression.provider.param.api.HeaderAccess;
@@ -174,6 +178,60 @@ public class TileCompressorProviderTest {
         Assert.assertNotNull(CompressorProvider.findCompressorControl(null, Compression.ZCMPTYPE_GZIP_2, int.class));
     }
 
+    @Test
+    public void testCompressorControlCache() throws Exception {
+        ICompressorControl control = CompressorProvider.findCompressorControl(null, Compression.ZCMPTYPE_RICE_1, int.class);
+        Assert.assertSame(control, CompressorProvider.findCompressorControl(null, Compression.ZCMPTYPE_RICE_1, int.class));
+        Assert.assertNotSame(control, CompressorProvider.findCompressorControl(null, Compression.ZCMPTYPE_RICE_1, short.class));
+        CompressorProvider.clearCache();
+        ICompressorControl reloaded = CompressorProvider.findCompressorControl(null, Compression.ZCMPTYPE_RICE_1, int.class);
+        Assert.assertNotSame(control, reloaded);
+        Assert.assertSame(reloaded, CompressorProvider.findCompressorControl(null, Compression.ZCMPTYPE_RICE_1, int.class));
+    }
+
+    @Test
+    public void testReusedCompressorFollowsTheTileOption() throws Exception {
+        ICompressorControl control = CompressorProvider.findCompressorControl(Compression.ZQUANTIZ_SUBTRACTIVE_DITHER_1, Compression.ZCMPTYPE_RICE_1, float.class);
+        int[][] tileSizes = {
+            {
+                10,
+                10
+            },
+            {
+                20,
+                5
+            },
+            {
+                7,
+                3
+            }
+        };
+        for (int tile = 0; tile < tileSizes.length; tile++) {
+            float[] pixels = new float[tileSizes[tile][0] * tileSizes[tile][1]];
+            for (int index = 0; index < pixels.length; index++) {
+                pixels[index] = (float) Math.sin(index * (tile + 1)) * 100f * (tile + 1);
+            }
+            ICompressOption option = control.option();
+            option.setTileWidth(tileSizes[tile][0]).setTileHeight(tileSizes[tile][1]);
+            option.unwrap(QuantizeOption.class).setSeed(tile + 1).setQlevel(4. * (tile + 1)).setDither(true);
+            ICompressOption freshOption = option.copy();
+
+            ByteBuffer reused = ByteBuffer.allocate(pixels.length * 8);
+            Assert.assertTrue(control.compress(FloatBuffer.wrap(pixels), reused, option));
+            ByteBuffer fresh = ByteBuffer.allocate(pixels.length * 8);
+            Assert.assertTrue(new FloatRiceCompressor(freshOption.unwrap(RiceQuantizeCompressOption.class)).compress(FloatBuffer.wrap(pixels), fresh));
+            reused.flip();
+            fresh.flip();
+            Assert.assertEquals(fresh, reused);
+
+            float[] decompressed = new float[pixels.length];
+            control.decompress(reused, FloatBuffer.wrap(decompressed), option);
+            float[] expected = new float[pixels.length];
+            new FloatRiceCompressor(freshOption.unwrap(RiceQuantizeCompressOption.class)).decompress(fresh, FloatBuffer.wrap(expected));
+            Assert.assertArrayEquals(expected, decompressed, 0f);
+        }
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testBadProviderCasesBadCompressConstruct() {
         ICompressorControl provider = new BrokenClass(null).getProvider();
@@ -0,0 +1,132 @@
+package nom.tam.manual.intergration;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import nom.tam.util.BufferedDataInputStream;
+import nom.tam.util.BufferedDataOutputStream;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Compares the bulk primitive array decoding and encoding of the buffered
+ * streams with decoding and encoding the same data element by element.
+ */
+@State(Scope.Benchmark)
+public class BufferDecoderBenchmark {
+
+    private static final int SIZE = 1024 * 1024;
+
+    private byte[] encoded;
+
+    private final int[] ints = new int[SIZE];
+
+    private final double[] doubles = new double[SIZE / 2];
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Main.main(new String[]{
+            BufferDecoderBenchmark.class.getSimpleName()
+        });
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        for (int index = 0; index < this.ints.length; index++) {
+            this.ints[index] = index * 31;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        out.write(this.ints);
+        out.close();
+        this.encoded = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int[] readIntsBulk() throws IOException {
+        BufferedDataInputStream in = new BufferedDataInputStream(new ByteArrayInputStream(this.encoded));
+        in.read(this.ints);
+        return this.ints;
+    }
+
+    @Benchmark
+    public int[] readIntsPerElement() throws IOException {
+        BufferedDataInputStream in = new BufferedDataInputStream(new ByteArrayInputStream(this.encoded));
+        for (int index = 0; index < this.ints.length; index++) {
+            this.ints[index] = in.readInt();
+        }
+        return this.ints;
+    }
+
+    @Benchmark
+    public double[] readDoublesBulk() throws IOException {
+        BufferedDataInputStream in = new BufferedDataInputStream(new ByteArrayInputStream(this.encoded));
+        in.read(this.doubles);
+        return this.doubles;
+    }
+
+    @Benchmark
+    public double[] readDoublesPerElement() throws IOException {
+        BufferedDataInputStream in = new BufferedDataInputStream(new ByteArrayInputStream(this.encoded));
+        for (int index = 0; index < this.doubles.length; index++) {
+            this.doubles[index] = in.readDouble();
+        }
+        return this.doubles;
+    }
+
+    @Benchmark
+    public int writeIntsBulk() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.encoded.length);
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        out.write(this.ints);
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int writeIntsPerElement() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.encoded.length);
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        for (int value : this.ints) {
+            out.writeInt(value);
+        }
+        out.flush();
+        return bytes.size();
+    }
+}
@@ -0,0 +1,255 @@
+package nom.tam.manual.intergration;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.HeaderCard;
+import nom.tam.fits.utilities.FitsHeaderCardParser;
+import nom.tam.util.AsciiFuncs;
+import nom.tam.util.Cursor;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Compares the hand written header card value parser with the regular
+ * expression based parsing it replaced, over the cards of the headers of the
+ * test files.
+ */
+@State(Scope.Benchmark)
+public class HeaderCardParserBenchmark {
+
+    private static final String[] FILES = {
+        "src/test/resources/nom/tam/fits/test/test.fits",
+        "src/test/resources/nom/tam/fits/test/test_dup.fits",
+        "src/test/resources/nom/tam/fits/test/test.fits.gz"
+    };
+
+    private static final Pattern STRING_PATTERN = Pattern.compile("'((?:[^']+(?=')|'')*)'(?!')");
+
+    private static final Pattern IEEE_REGEX = Pattern.compile("[+-]?(?=\\d*[.eE])(?=\\.?\\d)\\d*\\.?\\d*(?:[eE][+-]?\\d+)?");
+
+    private static final Pattern DBLSCI_REGEX = Pattern.compile("[+-]?(?=\\d*[.dD])(?=\\.?\\d)\\d*\\.?\\d*(?:[dD][+-]?\\d+)?");
+
+    private static final Pattern LONG_REGEX = Pattern.compile("[+-]?[0-9][0-9]*");
+
+    private String[] cards;
+
+    private HeaderCard[] headerCards;
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Main.main(new String[]{
+            HeaderCardParserBenchmark.class.getSimpleName()
+        });
+    }
+
+    @Setup
+    public void setup() throws IOException, FitsException {
+        List<HeaderCard> headerCards = new ArrayList<HeaderCard>();
+        for (String file : FILES) {
+            Fits fits = new Fits(file);
+            for (BasicHDU<?> hdu : fits.read()) {
+                Cursor<String, HeaderCard> iterator = hdu.getHeader().iterator();
+                while (iterator.hasNext()) {
+                    headerCards.add(iterator.next());
+                }
+            }
+            fits.close();
+        }
+        this.headerCards = headerCards.toArray(new HeaderCard[headerCards.size()]);
+        this.cards = new String[this.headerCards.length];
+        for (int index = 0; index < this.cards.length; index++) {
+            this.cards[index] = this.headerCards[index].toString();
+        }
+    }
+
+    @Benchmark
+    public int parseValues() {
+        int values = 0;
+        for (String card : this.cards) {
+            if (FitsHeaderCardParser.parseCardValue(card) != null) {
+                values++;
+            }
+        }
+        return values;
+    }
+
+    @Benchmark
+    public int parseValuesWithRegex() {
+        int values = 0;
+        for (String card : this.cards) {
+            if (parseCardValueWithRegex(card) != null) {
+                values++;
+            }
+        }
+        return values;
+    }
+
+    @Benchmark
+    public double classifyValues() {
+        double sum = 0;
+        for (HeaderCard card : this.headerCards) {
+            if (Double.class.equals(card.valueType())) {
+                sum += card.getValue(Double.class, 0.);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double classifyValuesWithRegex() {
+        double sum = 0;
+        for (HeaderCard card : this.headerCards) {
+            String value = card.getValue();
+            if (!card.isStringValue() && Double.class.equals(valueTypeWithRegex(value))) {
+                sum += new BigDecimal(value.replace('D', 'E')).doubleValue();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The value and comment of a card as parsed by the regular expression
+     * based parser.
+     */
+    private static final class RegexParsedValue {
+
+        private String value;
+
+        private String comment;
+
+        private RegexParsedValue(String value, String comment) {
+            this.value = value;
+            this.comment = comment;
+        }
+    }
+
+    /**
+     * The card value parsing as it was done before the hand written parser, a
+     * regular expression for quoted strings and a scan for the '=' and the
+     * '/' for all other values.
+     */
+    private static RegexParsedValue parseCardValueWithRegex(String card) {
+        RegexParsedValue value = parseStringValueWithRegex(card);
+        if (value == null) {
+            int indexOfEquals = card.indexOf('=');
+            if (indexOfEquals > 0) {
+                value = new RegexParsedValue(null, null);
+                int endOfValue = card.length() - 1;
+                int startOfComment = card.indexOf('/', indexOfEquals);
+                if (startOfComment > 0) {
+                    endOfValue = startOfComment - 1;
+                    value.comment = extractComment(card, startOfComment);
+                }
+                value.value = card.substring(indexOfEquals + 1, endOfValue + 1).trim();
+            }
+        }
+        return value;
+    }
+
+    private static RegexParsedValue parseStringValueWithRegex(String card) {
+        int indexOfQuote = card.indexOf('\'');
+        if (indexOfQuote >= 0) {
+            Matcher matcher = STRING_PATTERN.matcher(card);
+            if (matcher.find(indexOfQuote) && card.lastIndexOf('/', matcher.start()) < 0) {
+                return new RegexParsedValue(deleteQuotes(matcher.group(1)), extractComment(card, matcher.end()));
+            }
+        }
+        return null;
+    }
+
+    private static String deleteQuotes(String quotedString) {
+        int indexOfQuote = quotedString.indexOf('\'');
+        if (indexOfQuote < 0) {
+            int newLength = quotedString.length();
+            while (newLength > 0 && AsciiFuncs.isWhitespace(quotedString.charAt(newLength - 1))) {
+                newLength--;
+            }
+            return quotedString.substring(0, newLength);
+        }
+        int lastIndexOfQuote = 0;
+        StringBuffer sb = new StringBuffer(quotedString.length());
+        while (indexOfQuote >= 0) {
+            sb.append(quotedString, lastIndexOfQuote, indexOfQuote);
+            lastIndexOfQuote = indexOfQuote + 1;
+            indexOfQuote = quotedString.indexOf('\'', lastIndexOfQuote + 1);
+        }
+        sb.append(quotedString, lastIndexOfQuote, quotedString.length());
+        int newLength = sb.length();
+        while (newLength > 0 && AsciiFuncs.isWhitespace(sb.charAt(newLength - 1))) {
+            newLength--;
+        }
+        sb.setLength(newLength);
+        return sb.toString();
+    }
+
+    private static String extractComment(String card, int startPosition) {
+        int startOfComment = card.indexOf('/', startPosition) + 1;
+        if (startOfComment > 0 && card.length() > startOfComment) {
+            return card.substring(startOfComment).trim();
+        }
+        return null;
+    }
+
+    private static Class<?> valueTypeWithRegex(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if ("T".equals(trimmed) || "F".equals(trimmed)) {
+            return Boolean.class;
+        } else if (LONG_REGEX.matcher(trimmed).matches()) {
+            return Long.class;
+        } else if (IEEE_REGEX.matcher(trimmed).find() || DBLSCI_REGEX.matcher(trimmed).find()) {
+            String ieee = trimmed;
+            if (DBLSCI_REGEX.matcher(ieee).find()) {
+                ieee = ieee.replace('d', 'e').replace('D', 'E');
+            }
+            BigDecimal decimal = new BigDecimal(ieee);
+            return decimal.equals(BigDecimal.valueOf(Double.valueOf(ieee))) ? Double.class : BigDecimal.class;
+        }
+        return null;
+    }
+}
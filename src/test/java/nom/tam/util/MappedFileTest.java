@@ -0,0 +1,192 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsFactory;
+import nom.tam.fits.ImageHDU;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedFileTest {
+
+    @After
+    public void after() {
+        FitsFactory.setUseMappedFiles(false);
+    }
+
+    private File writeTestFile(String name) throws IOException {
+        File file = new File("target/" + name);
+        BufferedFile out = new BufferedFile(file, "rw");
+        try {
+            out.writeInt(42);
+            out.write(new short[]{
+                1,
+                -2,
+                3
+            });
+            out.write(new double[]{
+                1.5,
+                -2.5
+            });
+            out.write(new long[]{
+                Long.MAX_VALUE,
+                Long.MIN_VALUE
+            });
+            out.write(new float[]{
+                3.25f
+            });
+            out.writeBoolean(true);
+            out.write(new char[]{
+                'a',
+                'b'
+            });
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testReadAcrossWindows() throws IOException {
+        File file = writeTestFile("MappedFileReadAcrossWindows");
+        // a window of 8 bytes forces remapping in the middle of arrays.
+        MappedFile in = new MappedFile(file, 8);
+        try {
+            Assert.assertEquals(file.length(), in.length());
+            Assert.assertEquals(42, in.readInt());
+            short[] shorts = new short[3];
+            Assert.assertEquals(6, in.read(shorts));
+            Assert.assertArrayEquals(new short[]{
+                1,
+                -2,
+                3
+            }, shorts);
+            double[] doubles = new double[2];
+            Assert.assertEquals(16, in.read(doubles));
+            Assert.assertArrayEquals(new double[]{
+                1.5,
+                -2.5
+            }, doubles, 0.0);
+            long[] longs = new long[2];
+            Assert.assertEquals(16, in.read(longs));
+            Assert.assertEquals(Long.MAX_VALUE, longs[0]);
+            Assert.assertEquals(Long.MIN_VALUE, longs[1]);
+            Assert.assertEquals(3.25f, in.readFloat(), 0.0f);
+            Assert.assertTrue(in.readBoolean());
+            char[] chars = new char[3];
+            // only 2 chars left, so a partial array is returned
+            Assert.assertEquals(4, in.read(chars));
+            Assert.assertEquals('a', chars[0]);
+            Assert.assertEquals('b', chars[1]);
+            EOFException eofException = null;
+            try {
+                in.readShort();
+            } catch (EOFException e) {
+                eofException = e;
+            }
+            Assert.assertNotNull(eofException);
+            Assert.assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSeekAndMark() throws IOException {
+        File file = writeTestFile("MappedFileSeekAndMark");
+        MappedFile in = new MappedFile(file, 8);
+        try {
+            in.seek(4 + 6 + 16);
+            long[] longs = new long[1];
+            in.readLArray(longs);
+            Assert.assertEquals(Long.MAX_VALUE, longs[0]);
+            in.seek(0);
+            in.mark(10);
+            Assert.assertEquals(42, in.readInt());
+            in.reset();
+            Assert.assertEquals(0, in.getFilePointer());
+            Assert.assertEquals(4, in.skip(4));
+            Assert.assertEquals(-2, in.skip(-2));
+            Assert.assertEquals(2, in.getFilePointer());
+            Assert.assertEquals(file.length() - 2, in.skip(file.length()));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testFitsWithMappedFile() throws Exception {
+        int[][] data = new int[100][50];
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < data[i].length; j++) {
+                data[i][j] = i * 1000 + j;
+            }
+        }
+        Fits fits = new Fits();
+        fits.addHDU(Fits.makeHDU(data));
+        fits.write(new File("target/MappedFileImage.fits"));
+        fits.close();
+
+        FitsFactory.setUseMappedFiles(true);
+        fits = new Fits(new File("target/MappedFileImage.fits"));
+        try {
+            Assert.assertTrue(fits.getStream() instanceof MappedFile);
+            ImageHDU hdu = (ImageHDU) fits.getHDU(0);
+            int[] tile = (int[]) hdu.getTiler().getTile(new int[]{
+                10,
+                20
+            }, new int[]{
+                2,
+                3
+            });
+            Assert.assertArrayEquals(new int[]{
+                10020,
+                10021,
+                10022,
+                11020,
+                11021,
+                11022
+            }, tile);
+            Assert.assertArrayEquals(data[99], ((int[][]) hdu.getKernel())[99]);
+            Assert.assertFalse(hdu.getData().rewriteable());
+        } finally {
+            fits.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package nom.tam.util;
+
+/*
+ * #%L
+ * nom.tam FITS library
+ * %%
+ * Copyright (C) 2004 - 2015 nom-tam-fits
+ * %%
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+    private byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int index = 0; index < size; index++) {
+            data[index] = (byte) index;
+        }
+        return data;
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+        byte[] data = createData(10000);
+        ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 128, 3);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[100];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            Assert.assertArrayEquals(data, out.toByteArray());
+            Assert.assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        byte[] data = createData(1000);
+        ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 64, 2);
+        try {
+            Assert.assertEquals(0, in.read());
+            Assert.assertEquals(300, in.skip(300));
+            Assert.assertEquals(301 & 0xFF, in.read());
+            Assert.assertEquals(698, in.skip(1000));
+            Assert.assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testErrorIsPropagated() throws IOException {
+        InputStream broken = new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                throw new IOException("all is broken");
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(broken, 64, 2);
+        try {
+            in.read();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testDroppedStreamIsReleased() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        InputStream endless = new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                return 0;
+            }
+
+            @Override
+            public void close() throws IOException {
+                released.countDown();
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(endless, 64, 2);
+        Assert.assertEquals(0, in.read());
+        in = null;
+        for (int count = 0; count < 100 && released.getCount() > 0; count++) {
+            System.gc();
+            released.await(100, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertEquals(0, released.getCount());
+    }
+
+    @Test
+    public void testFitsWithReadAhead() throws Exception {
+        Fits fits = new Fits();
+        fits.addHDU(Fits.makeHDU(new int[100][100]));
+        fits.addHDU(Fits.makeHDU(new double[10][300]));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedDataOutputStream out = new BufferedDataOutputStream(bytes);
+        fits.write(out);
+        out.close();
+
+        fits = new Fits(new ByteArrayInputStream(bytes.toByteArray()), 4096, 4);
+        try {
+            BasicHDU<?>[] hdus = fits.read();
+            Assert.assertEquals(2, hdus.length);
+            Assert.assertArrayEquals(new int[]{
+                10,
+                300
+            }, hdus[1].getAxes());
+        } finally {
+            fits.close();
+        }
+    }
+}